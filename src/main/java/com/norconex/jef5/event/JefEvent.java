@@ -62,6 +62,10 @@ public class JefEvent extends Event {
     // one can keep going, the other one stops???????
     // this one replaces IJobErrorListener
     public static final String JOB_ERROR = "JOB_ERROR";
+    // A failed job will be attempted again, after a delay.
+    public static final String JOB_RETRYING = "JOB_RETRYING";
+    // A job ran longer than its timeout (or the suite one) and is stopped.
+    public static final String JOB_TIMED_OUT = "JOB_TIMED_OUT";
 
     private final JobStatus status;
 
@@ -24,6 +24,8 @@ public abstract class AbstractJob implements IJob {
 
     /** Job unique name. */
     private final String name;
+    private RetryPolicy retryPolicy;
+    private long timeout;
 
     /**
      * Creates a new job.
@@ -38,4 +40,35 @@ public abstract class AbstractJob implements IJob {
     public final String getId() {
         return name;
     }
+
+    @Override
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+    /**
+     * Sets how this job is retried when it fails.
+     * Default (<code>null</code>) uses the policy of the closest parent
+     * group having one, or the job suite default one.
+     * @param retryPolicy retry policy
+     * @since 5.0.0
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    @Override
+    public long getTimeout() {
+        return timeout;
+    }
+    /**
+     * Sets the maximum milliseconds this job can run, retries included.
+     * A job timing out is stopped and its thread is interrupted.
+     * It is resumed on next execution (when resuming).
+     * Default is zero (no timeout).
+     * @param timeout timeout or zero for none
+     * @since 5.0.0
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
 }
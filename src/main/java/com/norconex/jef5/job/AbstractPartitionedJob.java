@@ -0,0 +1,285 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.job;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.norconex.commons.lang.map.Properties;
+import com.norconex.jef5.JefException;
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusUpdater;
+import com.norconex.jef5.suite.JobSuite;
+
+/**
+ * <p>
+ * Job processing its input in partitions (e.g., ranges of records),
+ * run in parallel on the suite job executor (see
+ * {@link JobSuite#getJobExecutor()}). Implementors split the input
+ * by returning a partition count and process each partition in
+ * {@link #executePartition(int, JobSuite)}.
+ * </p>
+ * <p>
+ * Partitions done are recorded in a bitmap saved with the job status
+ * properties, under {@value #PROP_PARTITIONS_DONE} (Base64-encoded), along
+ * with the partition count under {@value #PROP_PARTITION_COUNT}.
+ * It is saved at most once a second while partitions run, and once
+ * they are all done, so a few partitions done just before a crash
+ * may be executed again.
+ * When the job is resumed or retried, only partitions not done are
+ * executed. The job progress is the ratio of partitions done.
+ * A failed partition does not prevent others from running,
+ * but the job fails once they are all done.
+ * </p>
+ * <p>
+ * Partition order is not guaranteed. Partitions must not depend on
+ * each other and should be of similar size.
+ * </p>
+ * @author Pascal Essiembre
+ * @since 5.0.0
+ */
+public abstract class AbstractPartitionedJob extends AbstractResumableJob {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(AbstractPartitionedJob.class);
+
+    public static final String PROP_PARTITION_COUNT = "partitions.count";
+    public static final String PROP_PARTITIONS_DONE = "partitions.done";
+
+    private static final long CHECKPOINT_INTERVAL = 1000;
+
+    /** Job unique id. */
+    private final String id;
+    private volatile boolean stopRequested;
+
+    /**
+     * Constructor.
+     * @param id job unique identifier
+     */
+    public AbstractPartitionedJob(String id) {
+        super();
+        this.id = id;
+    }
+
+    @Override
+    public final String getId() {
+        return id;
+    }
+
+    /**
+     * Gets the number of partitions the job input is split into.
+     * It must return the same value when a job is resumed, or all
+     * partitions are executed again.
+     * @param suite job suite
+     * @return partition count
+     */
+    protected abstract int getPartitionCount(JobSuite suite);
+
+    /**
+     * Processes a partition. Invoked concurrently for different
+     * partitions. Partitions should periodically check whether the job
+     * was stopped (see {@link #isStopRequested()}).
+     * @param partition partition index (from zero to partition count
+     *        minus one)
+     * @param suite job suite
+     */
+    protected abstract void executePartition(int partition, JobSuite suite);
+
+    // A suite resumed after a crash starts the job again, with the
+    // checkpoint of the previous execution.
+    @Override
+    protected void startExecution(
+            JobStatusUpdater statusUpdater, JobSuite suite) {
+        executePartitions(statusUpdater, suite);
+    }
+    @Override
+    protected void resumeExecution(
+            JobStatusUpdater statusUpdater, JobSuite suite) {
+        executePartitions(statusUpdater, suite);
+    }
+
+    /**
+     * Prevents partitions not yet started from starting. Implementors
+     * overriding this method to also stop running partitions should
+     * invoke it.
+     */
+    @Override
+    public void stop(JobStatus status, JobSuite suite) {
+        stopRequested = true;
+    }
+    /**
+     * Whether this job was asked to stop.
+     * @return <code>true</code> if stop was requested
+     */
+    protected boolean isStopRequested() {
+        return stopRequested;
+    }
+
+    private void executePartitions(
+            JobStatusUpdater statusUpdater, JobSuite suite) {
+        stopRequested = false;
+        int count = getPartitionCount(suite);
+        Checkpoint checkpoint = new Checkpoint(statusUpdater, count);
+        if (checkpoint.getDoneCount() > 0) {
+            LOG.info("{}: {} of {} partitions already done.",
+                    id, checkpoint.getDoneCount(), count);
+        }
+        List<Exception> failures =
+                Collections.synchronizedList(new ArrayList<>());
+        PartitionsAction action = new PartitionsAction(
+                0, count, checkpoint, failures, suite);
+        ForkJoinPool pool = suite.getJobExecutor();
+        try {
+            if (ForkJoinTask.getPool() == pool) {
+                action.invoke();
+            } else {
+                pool.invoke(action);
+            }
+        } finally {
+            // Progress is set even if no partition was done (e.g.,
+            // none to do, or all done before resuming).
+            checkpoint.save(failures.isEmpty());
+        }
+        if (!failures.isEmpty()) {
+            JefException e = new JefException(failures.size() + " of "
+                    + count + " partitions failed in job \"" + id + "\"",
+                    failures.get(0));
+            for (int i = 1; i < failures.size(); i++) {
+                e.addSuppressed(failures.get(i));
+            }
+            throw e;
+        }
+    }
+
+    private void executeOnePartition(int partition, Checkpoint checkpoint,
+            List<Exception> failures, JobSuite suite) {
+        if (stopRequested || checkpoint.isDone(partition)) {
+            return;
+        }
+        // The worker may be running something else when waiting.
+        String currentJobId = JobSuite.getRunningJobId();
+        JobSuite.setCurrentJobId(id);
+        try {
+            executePartition(partition, suite);
+            checkpoint.markDone(partition);
+        } catch (Exception e) {
+            LOG.error("Partition {} failed in job \"{}\".", partition, id, e);
+            failures.add(e);
+        } finally {
+            JobSuite.setCurrentJobId(currentJobId);
+        }
+    }
+
+    // Splits partitions in halves until single ones are left.
+    private class PartitionsAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+        private final transient Checkpoint checkpoint;
+        private final transient List<Exception> failures;
+        private final transient JobSuite suite;
+        PartitionsAction(int from, int to, Checkpoint checkpoint,
+                List<Exception> failures, JobSuite suite) {
+            this.from = from;
+            this.to = to;
+            this.checkpoint = checkpoint;
+            this.failures = failures;
+            this.suite = suite;
+        }
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (from < to) {
+                    executeOnePartition(from, checkpoint, failures, suite);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(
+                    new PartitionsAction(
+                            from, middle, checkpoint, failures, suite),
+                    new PartitionsAction(
+                            middle, to, checkpoint, failures, suite));
+        }
+    }
+
+    // Partitions done, saved to the job status periodically.
+    private static class Checkpoint {
+        private final JobStatusUpdater statusUpdater;
+        private final int count;
+        private final BitSet done;
+        private long lastSave;
+        private boolean unsaved;
+        Checkpoint(JobStatusUpdater statusUpdater, int count) {
+            this.statusUpdater = statusUpdater;
+            this.count = count;
+            String encoded = statusUpdater.getProperties().getString(
+                    PROP_PARTITIONS_DONE, null);
+            int previousCount = statusUpdater.getProperties().getInt(
+                    PROP_PARTITION_COUNT, count);
+            if (StringUtils.isBlank(encoded)) {
+                done = new BitSet(count);
+            } else if (previousCount != count) {
+                LOG.warn("Partition count changed from {} to {} for job "
+                        + "\"{}\". Executing all partitions again.",
+                        previousCount, count, statusUpdater.getJobId());
+                done = new BitSet(count);
+            } else {
+                done = BitSet.valueOf(Base64.getDecoder().decode(encoded));
+            }
+        }
+        synchronized boolean isDone(int partition) {
+            return done.get(partition);
+        }
+        synchronized int getDoneCount() {
+            return done.cardinality();
+        }
+        synchronized void markDone(int partition) {
+            done.set(partition);
+            unsaved = true;
+            if (System.currentTimeMillis() - lastSave
+                    >= CHECKPOINT_INTERVAL) {
+                save(false);
+            }
+        }
+        synchronized void save(boolean force) {
+            if (!unsaved && !force) {
+                return;
+            }
+            unsaved = false;
+            lastSave = System.currentTimeMillis();
+            String encoded =
+                    Base64.getEncoder().encodeToString(done.toByteArray());
+            Properties props = statusUpdater.getProperties();
+            // Not to be copied half-way by the status writer.
+            synchronized (props) {
+                props.set(PROP_PARTITION_COUNT, count);
+                props.set(PROP_PARTITIONS_DONE, encoded);
+            }
+            statusUpdater.setProgress(
+                    count == 0 ? 1d : (double) done.cardinality() / count);
+        }
+    }
+}
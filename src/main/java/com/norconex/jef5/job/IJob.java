@@ -84,6 +84,29 @@ public interface IJob {
      */
     void stop(final JobStatus status, final JobSuite suite);
 
+    /**
+     * Gets how this job is retried when it fails. For job groups, it is
+     * the policy of the jobs they contain not having their own
+     * (groups themselves are never retried). Default returns
+     * <code>null</code>, using the policy of the closest parent group
+     * having one, or the job suite default one.
+     * @return retry policy or <code>null</code>
+     * @since 5.0.0
+     */
+    default RetryPolicy getRetryPolicy() {
+        return null;
+    }
+
+    /**
+     * Gets the maximum milliseconds this job can run, retries included,
+     * before it is stopped. For job groups, the jobs they are running
+     * are stopped as well. Default returns zero (no timeout).
+     * @return timeout or zero for none
+     * @since 5.0.0
+     */
+    default long getTimeout() {
+        return 0;
+    }
 
     //TODO clean() ?
 
@@ -0,0 +1,180 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.job;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * <p>
+ * Limits how often something happens (e.g., jobs starting, or requests
+ * made to a remote system), using a token bucket. The bucket fills at
+ * a constant rate, up to a maximum number of permits (the burst).
+ * Acquiring permits takes them from the bucket, waiting for it to
+ * be filled enough if it is not.
+ * </p>
+ * <p>
+ * Permits are granted in the order they are asked for. A rate limiter
+ * is thread-safe and meant to be shared by all jobs it applies to.
+ * </p>
+ * @author Pascal Essiembre
+ * @since 5.0.0
+ */
+public class RateLimiter {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final double permitsPerSecond;
+    private final int burst;
+
+    // Negative when permits were granted ahead of time.
+    private double permits;
+    private long lastRefill;
+
+    /**
+     * Creates a rate limiter without bursts.
+     * @param permitsPerSecond permits granted per second
+     */
+    public RateLimiter(double permitsPerSecond) {
+        this(permitsPerSecond, 1);
+    }
+    /**
+     * Creates a rate limiter.
+     * @param permitsPerSecond permits granted per second
+     * @param burst maximum number of permits that can accumulate when
+     *        not used, and be granted at once
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        super();
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException(
+                    "Permits per second must be greater than zero.");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException(
+                    "Burst must be one or more.");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.permits = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Gets the number of permits granted per second.
+     * @return permits per second
+     */
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+    /**
+     * Gets the maximum number of permits that can accumulate when
+     * not used.
+     * @return burst
+     */
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * Acquires a permit, waiting if needed.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        acquire(1);
+    }
+    /**
+     * Acquires the given number of permits, waiting if needed.
+     * Permits are taken even if interrupted while waiting.
+     * @param permits number of permits
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire(int permits) throws InterruptedException {
+        long wait = reserve(permits);
+        if (wait <= 0) {
+            return;
+        }
+        long grantTime = System.nanoTime() + wait;
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            @Override
+            public boolean block() throws InterruptedException {
+                long remaining = grantTime - System.nanoTime();
+                if (remaining > 0) {
+                    TimeUnit.NANOSECONDS.sleep(remaining);
+                }
+                return true;
+            }
+            @Override
+            public boolean isReleasable() {
+                return System.nanoTime() - grantTime >= 0;
+            }
+        });
+    }
+
+    /**
+     * Acquires a permit if one is available right away.
+     * @return <code>true</code> if acquired
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+    /**
+     * Acquires the given number of permits if available right away.
+     * @param permits number of permits
+     * @return <code>true</code> if acquired
+     */
+    public synchronized boolean tryAcquire(int permits) {
+        refill();
+        if (this.permits >= permits) {
+            this.permits -= permits;
+            return true;
+        }
+        return false;
+    }
+
+    // Takes permits, possibly ahead of time. Returns nanoseconds to wait
+    // for them to be granted.
+    private synchronized long reserve(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException(
+                    "Permits to acquire must be one or more.");
+        }
+        refill();
+        permits -= count;
+        if (permits >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-permits / permitsPerSecond * NANOS_PER_SECOND);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        permits = Math.min(burst,
+                permits + (now - lastRefill) / NANOS_PER_SECOND
+                        * permitsPerSecond);
+        lastRefill = now;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("permitsPerSecond", permitsPerSecond)
+                .append("burst", burst)
+                .toString();
+    }
+}
@@ -0,0 +1,206 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.job;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * <p>
+ * How many times a failed job is attempted, and how long to wait
+ * between attempts. Delays grow exponentially from the initial delay
+ * up to the maximum delay. A random part of each delay (the jitter) is
+ * removed so jobs failing together (e.g., on the same unavailable
+ * resource) do not all retry at once.
+ * </p>
+ * <p>
+ * Only jobs ending in error are retried. Stopped jobs and job groups
+ * are not (a group policy applies to the jobs it contains instead).
+ * </p>
+ * @author Pascal Essiembre
+ * @since 5.0.0
+ */
+public class RetryPolicy {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_INITIAL_DELAY = 1000;
+    public static final double DEFAULT_MULTIPLIER = 2;
+    public static final long DEFAULT_MAX_DELAY = 60 * 1000;
+    public static final double DEFAULT_JITTER = 0.5;
+
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long initialDelay = DEFAULT_INITIAL_DELAY;
+    private double multiplier = DEFAULT_MULTIPLIER;
+    private long maxDelay = DEFAULT_MAX_DELAY;
+    private double jitter = DEFAULT_JITTER;
+
+    public RetryPolicy() {
+        super();
+    }
+    public RetryPolicy(int maxAttempts) {
+        super();
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Gets the maximum number of times a job is attempted, including
+     * the first attempt.
+     * @return maximum attempts
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+    /**
+     * Sets the maximum number of times a job is attempted, including
+     * the first attempt. One or less never retries. Default is 3.
+     * @param maxAttempts maximum attempts
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Gets milliseconds to wait before the first retry.
+     * @return initial delay
+     */
+    public long getInitialDelay() {
+        return initialDelay;
+    }
+    /**
+     * Sets milliseconds to wait before the first retry.
+     * Default is 1 second.
+     * @param initialDelay initial delay
+     */
+    public void setInitialDelay(long initialDelay) {
+        this.initialDelay = initialDelay;
+    }
+
+    /**
+     * Gets the factor applied to the delay after each retry.
+     * @return delay multiplier
+     */
+    public double getMultiplier() {
+        return multiplier;
+    }
+    /**
+     * Sets the factor applied to the delay after each retry.
+     * One keeps the same delay between all attempts. Default is 2.
+     * @param multiplier delay multiplier
+     */
+    public void setMultiplier(double multiplier) {
+        this.multiplier = multiplier;
+    }
+
+    /**
+     * Gets the maximum milliseconds to wait between two attempts.
+     * @return maximum delay
+     */
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+    /**
+     * Sets the maximum milliseconds to wait between two attempts.
+     * Default is 1 minute.
+     * @param maxDelay maximum delay
+     */
+    public void setMaxDelay(long maxDelay) {
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Gets the ratio of each delay that can randomly be removed.
+     * @return jitter, from 0 to 1
+     */
+    public double getJitter() {
+        return jitter;
+    }
+    /**
+     * Sets the ratio of each delay that can randomly be removed.
+     * Zero waits exactly the computed delay, while one waits anywhere
+     * between zero and the computed delay. Default is 0.5.
+     * @param jitter jitter, from 0 to 1
+     */
+    public void setJitter(double jitter) {
+        this.jitter = jitter;
+    }
+
+    /**
+     * Gets whether a job failing on the given attempt should be
+     * attempted again.
+     * @param attemptNo attempt that failed (first attempt is 1)
+     * @return <code>true</code> if the job should be retried
+     */
+    public boolean shouldRetry(int attemptNo) {
+        return attemptNo < maxAttempts;
+    }
+
+    /**
+     * Gets milliseconds to wait before the given retry, with jitter
+     * applied.
+     * @param retryNo retry number (first retry is 1)
+     * @return delay
+     */
+    public long getDelay(int retryNo) {
+        double delay = initialDelay
+                * Math.pow(multiplier, Math.max(0, retryNo - 1));
+        delay = Math.min(delay, maxDelay);
+        double ratio = Math.min(1d, Math.max(0d, jitter));
+        if (ratio > 0) {
+            delay -= delay * ratio * ThreadLocalRandom.current().nextDouble();
+        }
+        return Math.max(0, (long) delay);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof RetryPolicy)) {
+            return false;
+        }
+        RetryPolicy castOther = (RetryPolicy) other;
+        return new EqualsBuilder()
+                .append(maxAttempts, castOther.maxAttempts)
+                .append(initialDelay, castOther.initialDelay)
+                .append(multiplier, castOther.multiplier)
+                .append(maxDelay, castOther.maxDelay)
+                .append(jitter, castOther.jitter)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(maxAttempts)
+                .append(initialDelay)
+                .append(multiplier)
+                .append(maxDelay)
+                .append(jitter)
+                .toHashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("maxAttempts", maxAttempts)
+                .append("initialDelay", initialDelay)
+                .append("multiplier", multiplier)
+                .append("maxDelay", maxDelay)
+                .append("jitter", jitter)
+                .toString();
+    }
+}
@@ -21,6 +21,8 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 import com.norconex.jef5.job.IJob;
+import com.norconex.jef5.job.RateLimiter;
+import com.norconex.jef5.job.RetryPolicy;
 import com.norconex.jef5.status.JobStatus;
 import com.norconex.jef5.status.JobStatusUpdater;
 import com.norconex.jef5.suite.JobSuite;
@@ -41,6 +43,9 @@ public abstract class AbstractJobGroup implements IJobGroup {
     private final String id;
 
     private GroupStatusUpdater groupUpdater;
+    private RetryPolicy retryPolicy;
+    private long timeout;
+    private RateLimiter rateLimiter;
 
 
     /**
@@ -85,6 +90,54 @@ public abstract class AbstractJobGroup implements IJobGroup {
         return id;
     }
 
+    @Override
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+    /**
+     * Sets how jobs of this group are retried when they fail, unless
+     * they have their own policy. Also applies to jobs of nested groups
+     * not having a policy. The group itself is never retried.
+     * @param retryPolicy retry policy
+     * @since 5.0.0
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    @Override
+    public long getTimeout() {
+        return timeout;
+    }
+    /**
+     * Sets the maximum milliseconds this group can run. When timing out,
+     * the group and the jobs it is running are stopped, and the threads
+     * of those jobs are interrupted. Default is zero (no timeout).
+     * @param timeout timeout or zero for none
+     * @since 5.0.0
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+    /**
+     * Sets the rate limiter shared by the jobs of this group, nested
+     * ones included, to pace how often they start (e.g., not to have
+     * all jobs hit the same system at once). Jobs can also use it to pace
+     * their own work (see
+     * {@link JobSuite#acquirePermits(IJob, int)}).
+     * Default is <code>null</code> (no limit).
+     * @param rateLimiter rate limiter
+     * @since 5.0.0
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
     @Override
     public void execute(JobStatusUpdater statusUpdater, JobSuite suite) {
         groupUpdater = new GroupStatusUpdater(statusUpdater);
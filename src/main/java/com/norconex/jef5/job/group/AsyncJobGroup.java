@@ -14,21 +14,36 @@
  */
 package com.norconex.jef5.job.group;
 
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.norconex.jef5.JefException;
 import com.norconex.jef5.job.IJob;
+import com.norconex.jef5.status.JobState;
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.suite.JobRunResult;
 import com.norconex.jef5.suite.JobSuite;
+import com.norconex.jef5.suite.JobThreadMode;
 
 /**
  * Job responsible for running a group of jobs asynchronously.  All jobs
@@ -36,8 +51,29 @@ import com.norconex.jef5.suite.JobSuite;
  * group reflects the average progress of all its jobs.  This job group
  * is considered completed and will only return when all its jobs are
  * done executing.  An exception in one job will not stop the other jobs
- * in the group from running.  On the other hand, one or more exception will
- * result in this group to fail.
+ * in the group from running, unless a maximum number or ratio of failures
+ * is set (see {@link #setMaxFailures(int)}).  On the other hand, one or
+ * more exception will result in this group to fail.
+ * <p>
+ * Jobs are executed by the suite job executor (see
+ * {@link JobSuite#getJobExecutor()}), shared with other groups.
+ * The maximum number of threads of a group limits how many of its jobs
+ * run at once, while the suite maximum parallelism is how many jobs the
+ * executor aims to run at once overall (it can start more threads
+ * when jobs block). A group with more threads than the suite
+ * maximum parallelism runs no more jobs at once than the latter.
+ * Failed jobs waiting to be retried (see
+ * {@link com.norconex.jef5.job.RetryPolicy}) hold no thread: they are
+ * run again once due, when the group has a thread available.
+ * </p>
+ * <p>
+ * Jobs can instead run on virtual threads (Java 21+), either for all
+ * groups of a suite (see
+ * {@link com.norconex.jef5.suite.JobSuiteConfig#setThreadMode(JobThreadMode)})
+ * or for a specific group (see {@link #setThreadMode(JobThreadMode)}).
+ * The same limits then apply, enforced with permits, the suite maximum
+ * parallelism being a hard limit.
+ * </p>
  *
  * @author Pascal Essiembre
  */
@@ -48,6 +84,10 @@ public class AsyncJobGroup extends AbstractJobGroup {
             LoggerFactory.getLogger(AsyncJobGroup.class);
 
     private final int maxThread;
+    private JobThreadMode threadMode;
+    private JobOrdering ordering;
+    private int maxFailures;
+    private double maxFailureRatio;
 
     /**
      * Constructor.
@@ -92,29 +132,108 @@ public class AsyncJobGroup extends AbstractJobGroup {
         this.maxThread = maxThreads;
     }
 
+    /**
+     * Gets the maximum number of threads (jobs) executing at the same
+     * time.
+     * @return maximum number of threads
+     */
+    public int getMaxThreads() {
+        return maxThread;
+    }
+
+    /**
+     * Gets the kind of threads this group runs its jobs on.
+     * @return thread mode or <code>null</code> if using the suite one
+     */
+    public JobThreadMode getThreadMode() {
+        return threadMode;
+    }
+    /**
+     * Sets the kind of threads this group runs its jobs on.
+     * Default (<code>null</code>) uses the suite thread mode.
+     * @param threadMode thread mode
+     */
+    public void setThreadMode(JobThreadMode threadMode) {
+        this.threadMode = threadMode;
+    }
+
+    /**
+     * Gets the order in which jobs are started.
+     * @return job ordering or <code>null</code> for declared order
+     */
+    public JobOrdering getOrdering() {
+        return ordering;
+    }
+    /**
+     * Sets the order in which jobs are started, which matters when
+     * there are more jobs than threads. Default (<code>null</code>)
+     * starts jobs in declared order.
+     * @param ordering job ordering
+     */
+    public void setOrdering(JobOrdering ordering) {
+        this.ordering = ordering;
+    }
+
+    /**
+     * Gets the number of failed jobs after which this group stops
+     * its other jobs.
+     * @return maximum number of failures
+     */
+    public int getMaxFailures() {
+        return maxFailures;
+    }
+    /**
+     * Sets the number of failed jobs after which this group stops
+     * its other jobs (fail-fast). Jobs not yet started are not started
+     * and running ones are asked to stop, leaving them resumable.
+     * Zero or less (default) lets all jobs run no matter how many fail.
+     * @param maxFailures maximum number of failures
+     */
+    public void setMaxFailures(int maxFailures) {
+        this.maxFailures = maxFailures;
+    }
+
+    /**
+     * Gets the ratio of failed jobs (over all jobs of this group) after
+     * which this group stops its other jobs.
+     * @return maximum failure ratio
+     */
+    public double getMaxFailureRatio() {
+        return maxFailureRatio;
+    }
+    /**
+     * Sets the ratio of failed jobs (over all jobs of this group) after
+     * which this group stops its other jobs, from 0 to 1
+     * (e.g., 0.1 for 10%). See {@link #setMaxFailures(int)}.
+     * Zero or less (default) disables it.
+     * @param maxFailureRatio maximum failure ratio
+     */
+    public void setMaxFailureRatio(double maxFailureRatio) {
+        this.maxFailureRatio = maxFailureRatio;
+    }
+
     @Override
     public void executeGroup(final JobSuite suite) {
-        final Collection<IJob> failedJobs =
-                Collections.synchronizedCollection(new ArrayList<>());
-        List<IJob> jobs = getJobs();
-        int realMaxThread = Math.min(maxThread, jobs.size());
-        final CountDownLatch latch = new CountDownLatch(jobs.size());
-        ExecutorService pool = Executors.newFixedThreadPool(realMaxThread);
-        for (final IJob job : jobs) {
-            pool.execute(() -> runJob(job, suite, failedJobs, latch));
-        }
+        List<IJob> jobs = getOrderedJobs(suite);
+        JobTracker tracker = new JobTracker(suite);
+        int realMaxThread = Math.max(1, Math.min(maxThread, jobs.size()));
+        AtomicInteger nextJob = new AtomicInteger();
+        Supplier<IJob> source = () -> {
+            int index = nextJob.getAndIncrement();
+            return index < jobs.size() ? jobs.get(index) : null;
+        };
 
-        try {
-            latch.await();
-            pool.shutdown();
-        } catch (InterruptedException e) {
-             throw new JefException(e);
+        if (resolveThreadMode(suite) == JobThreadMode.VIRTUAL) {
+            executeOnVirtualThreads(tracker, source, realMaxThread);
+        } else {
+            executeOnPool(tracker, source, realMaxThread);
         }
         if (LOG.isDebugEnabled()) {
             LOG.debug("All threads finished for async group\""
                     + getId() + "\".");
         }
 
+        Collection<IJob> failedJobs = tracker.getFailedJobs();
         if (!failedJobs.isEmpty()) {
             throw new JefException(
                     failedJobs.size() + " out of " + jobs.size()
@@ -122,32 +241,425 @@ public class AsyncJobGroup extends AbstractJobGroup {
         }
     }
 
-    private void runJob(IJob job, JobSuite suite, Collection<IJob> failedJobs,
-            CountDownLatch latch) {
+    // Number of jobs the maximum failure ratio applies to.
+    /*default*/ long getJobCount() {
+        return getJobs().size();
+    }
+
+    /*default*/ JobThreadMode resolveThreadMode(JobSuite suite) {
+        JobThreadMode mode = threadMode != null
+                ? threadMode : suite.getThreadMode();
+        if (mode == JobThreadMode.VIRTUAL
+                && !JobSuite.isVirtualThreadSupported()) {
+            LOG.warn("Virtual threads require Java 21 or higher. Job "
+                    + "group \"{}\" uses platform threads instead.", getId());
+            mode = JobThreadMode.PLATFORM;
+        }
+        return mode;
+    }
+
+    // Runs jobs taken from the source (until it returns null) on the
+    // job executor.
+    /*default*/ void executeOnPool(
+            JobTracker tracker, Supplier<IJob> source, int realMaxThread) {
+        new PoolLanes(tracker, source, realMaxThread).execute();
+    }
+
+    // Runs lanes on the job executor and waits for them to be done.
+    /*default*/ static void invokeLanes(
+            ForkJoinPool pool, List<ForkJoinTask<?>> lanes) {
+        if (ForkJoinTask.getPool() == pool) {
+            // Nested group: the current worker runs lanes or helps
+            // with other work while waiting, instead of blocking.
+            ForkJoinTask.invokeAll(lanes);
+        } else {
+            pool.invoke(ForkJoinTask.adapt(
+                    () -> ForkJoinTask.invokeAll(lanes)));
+        }
+    }
+
+    // Runs jobs taken from the source (until it returns null), one
+    // virtual thread per job, limited by permits instead of a pool size.
+    // Permits are acquired before taking the next job.
+    /*default*/ void executeOnVirtualThreads(
+            JobTracker tracker, Supplier<IJob> source, int realMaxThread) {
+        ThreadFactory factory = JobSuite.getVirtualThreadFactory();
+        Semaphore groupPermits = new Semaphore(realMaxThread);
+        // Jobs not ended yet, including those to be retried
+        Phaser unfinished = new Phaser(1);
+        try {
+            while (true) {
+                groupPermits.acquire();
+                IJob job = tracker.isCancelled() ? null : source.get();
+                if (job == null) {
+                    groupPermits.release();
+                    break;
+                }
+                unfinished.register();
+                factory.newThread(() -> runOnVirtualThread(
+                        job, tracker, groupPermits, unfinished)).start();
+            }
+            unfinished.awaitAdvanceInterruptibly(unfinished.arrive());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JefException(e);
+        }
+    }
+
+    // Runs a job holding a group permit. A job to be retried gives back
+    // its permits and runs again on a new virtual thread when due.
+    private void runOnVirtualThread(IJob job, JobTracker tracker,
+            Semaphore groupPermits, Phaser unfinished) {
+        JobRunResult result = JobRunResult.FAILED;
+        try {
+            // Before taking a suite permit
+            tracker.suite.paceJob(this, job);
+            result = runJobWithPermit(job, tracker, () -> JobSuite
+                    .getVirtualThreadFactory().newThread(() -> {
+                        groupPermits.acquireUninterruptibly();
+                        runOnVirtualThread(
+                                job, tracker, groupPermits, unfinished);
+                    }).start());
+        } finally {
+            groupPermits.release();
+            if (result != JobRunResult.RETRY_SCHEDULED) {
+                unfinished.arriveAndDeregister();
+            }
+        }
+    }
+
+    /*default*/ List<IJob> getOrderedJobs(JobSuite suite) {
+        List<IJob> jobs = getJobs();
+        if (ordering != JobOrdering.LONGEST_FIRST) {
+            return jobs;
+        }
+        // Stable sort: unknown durations last, in declared order.
+        List<IJob> sorted = new ArrayList<>(jobs);
+        sorted.sort(Comparator.comparing(
+                job -> suite.getHistoricalDuration(job.getId()),
+                Comparator.nullsLast(Comparator.<Duration>reverseOrder())));
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Longest first order for async group \"{}\": {}",
+                    getId(), sorted.stream().map(
+                    IJob::getId).collect(Collectors.toList()));
+        }
+        return sorted;
+    }
+
+    // Runs a job once a suite permit is obtained, for jobs on virtual
+    // threads.
+    /*default*/ boolean runJobWithPermit(IJob job, JobTracker tracker) {
+        return runJobWithPermit(job, tracker, null)
+                == JobRunResult.SUCCEEDED;
+    }
+    /*default*/ JobRunResult runJobWithPermit(
+            IJob job, JobTracker tracker, Runnable retryHandler) {
+        // Groups only wait on their jobs and must not hold
+        // permits those jobs need.
+        boolean leaf = !(job instanceof IJobGroup);
+        Semaphore permits = tracker.suite.getJobPermits();
+        if (leaf) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.error("{} interrupted before running.", job.getId());
+                tracker.jobEnded(job, false);
+                return JobRunResult.FAILED;
+            }
+        }
+        try {
+            return runJob(job, tracker, retryHandler);
+        } finally {
+            if (leaf) {
+                permits.release();
+            }
+        }
+    }
+
+    /*default*/ boolean runJob(IJob job, JobTracker tracker) {
+        return runJob(job, tracker, null) == JobRunResult.SUCCEEDED;
+    }
+    // Runs a job, or runs it again when retried (see
+    // JobSuite#runJob(IJob, Runnable)). Jobs to be retried are still
+    // running for the tracker.
+    /*default*/ JobRunResult runJob(
+            IJob job, JobTracker tracker, Runnable retryHandler) {
+        boolean retry = tracker.isRunning(job);
+        if (tracker.isCancelled()) {
+            if (!retry) {
+                return JobRunResult.FAILED;
+            }
+            // Ended by the suite instead of being retried.
+            tracker.suite.getJobStatus(job).setStopRequested(true);
+        }
+        if (!tracker.jobStarted(job)) {
+            // Cancelled since checked
+            return JobRunResult.FAILED;
+        }
+        // A thread waiting on other jobs may be running this one, so we
+        // restore what it was doing once done.
+        String threadName = Thread.currentThread().getName();
+        String currentJobId = JobSuite.getRunningJobId();
         Thread.currentThread().setName(job.getId());
         JobSuite.setCurrentJobId(job.getId());
 
+        JobRunResult result = JobRunResult.FAILED;
+        boolean prepared = retry;
         try {
+            if (!retry) {
+                try {
+                    beforeJob(tracker.suite, job);
+                    prepared = true;
+                } catch (RuntimeException e) {
+                    LOG.error("Could not run job: " + job.getId(), e);
+                    return result;
+                }
+            }
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Thread from " + AsyncJobGroup.this.getId()
                     + " started and about to run: " + job.getId());
             }
-            if (!suite.runJob(job)) {
-                synchronized (failedJobs) {
-                    LOG.error(job.getId() + " failed.");
-                    failedJobs.add(job);
-                }
+            result = tracker.suite.runJob(job, retryHandler);
+            if (result == JobRunResult.FAILED) {
+                LOG.error(job.getId() + " failed.");
             } else if (LOG.isDebugEnabled()) {
-                LOG.debug(job.getId() + " succeeded.");
+                LOG.debug(job.getId() + (result == JobRunResult.SUCCEEDED
+                        ? " succeeded." : " will be retried."));
             }
-            JobSuite.setCurrentJobId(AsyncJobGroup.this.getId());
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Thread from " + AsyncJobGroup.this.getId()
                     + " finished to run: " + job.getId());
             }
         } finally {
-            latch.countDown();
+            if (result != JobRunResult.RETRY_SCHEDULED) {
+                tracker.jobEnded(job, result == JobRunResult.SUCCEEDED);
+                if (prepared) {
+                    afterJob(tracker.suite, job);
+                }
+            }
+            Thread.currentThread().setName(threadName);
+            JobSuite.setCurrentJobId(currentJobId);
+        }
+        return result;
+    }
+
+    /**
+     * Invoked before a job of this group is run for the first time.
+     * The job fails without running if an exception is thrown.
+     * Default does nothing.
+     * @param suite job suite
+     * @param job the job about to run
+     */
+    /*default*/ void beforeJob(JobSuite suite, IJob job) {
+        //NOOP
+    }
+    /**
+     * Invoked once a job of this group ended, after its last attempt,
+     * unless {@link #beforeJob(JobSuite, IJob)} failed.
+     * Default does nothing.
+     * @param suite job suite
+     * @param job the job that ended
+     */
+    /*default*/ void afterJob(JobSuite suite, IJob job) {
+        //NOOP
+    }
+
+    // Lanes running jobs on the job executor, each running the next job
+    // until there are none left, so no more than "maxLanes" jobs run at
+    // once. Lanes do not wait for jobs to be retried: those due are run
+    // first, by a new lane if all lanes ended.
+    private class PoolLanes implements ForkJoinPool.ManagedBlocker {
+        private final JobTracker tracker;
+        private final Supplier<IJob> source;
+        private final int maxLanes;
+        private final Deque<IJob> dueRetries = new ArrayDeque<>();
+        private int lanes;
+        private int scheduledRetries;
+
+        private PoolLanes(
+                JobTracker tracker, Supplier<IJob> source, int maxLanes) {
+            this.tracker = tracker;
+            this.source = source;
+            this.maxLanes = maxLanes;
+        }
+
+        private void execute() {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(maxLanes);
+            synchronized (this) {
+                lanes = maxLanes;
+            }
+            for (int i = 0; i < maxLanes; i++) {
+                tasks.add(ForkJoinTask.adapt(this::runLane));
+            }
+            invokeLanes(tracker.suite.getJobExecutor(), tasks);
+            try {
+                // Jobs still to be retried
+                ForkJoinPool.managedBlock(this);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JefException(e);
+            }
+        }
+
+        private void runLane() {
+            boolean ended = false;
+            try {
+                IJob job;
+                while ((job = nextJob()) != null) {
+                    IJob current = job;
+                    // Waiting lets the executor run other work meanwhile.
+                    tracker.suite.paceJob(AsyncJobGroup.this, current);
+                    if (runJob(current, tracker, () -> retryDue(current))
+                            == JobRunResult.RETRY_SCHEDULED) {
+                        retryScheduled();
+                    }
+                }
+                ended = true;
+            } finally {
+                if (!ended) {
+                    laneEnded();
+                }
+            }
+        }
+
+        // Ends the lane when there is no job to run.
+        private synchronized IJob nextJob() {
+            IJob job = dueRetries.poll();
+            if (job == null && !tracker.isCancelled()) {
+                job = source.get();
+            }
+            if (job == null) {
+                laneEnded();
+            }
+            return job;
+        }
+        private synchronized void laneEnded() {
+            lanes--;
+            notifyAll();
+        }
+
+        private synchronized void retryScheduled() {
+            scheduledRetries++;
+        }
+        // Invoked by the suite once a retry is due.
+        private synchronized void retryDue(IJob job) {
+            scheduledRetries--;
+            dueRetries.add(job);
+            if (lanes < maxLanes) {
+                lanes++;
+                tracker.suite.getJobExecutor().execute(this::runLane);
+            }
+        }
+
+        @Override
+        public synchronized boolean block() throws InterruptedException {
+            while (!isReleasable()) {
+                wait();
+            }
+            return true;
+        }
+        @Override
+        public synchronized boolean isReleasable() {
+            return lanes == 0 && scheduledRetries == 0;
+        }
+    }
+
+    /**
+     * Tracks running and failed jobs of a group execution, stopping
+     * them when too many failed or the group is asked to stop.
+     */
+    /*default*/ class JobTracker {
+        private final JobSuite suite;
+        private final Set<IJob> runningJobs = ConcurrentHashMap.newKeySet();
+        private final Collection<IJob> failedJobs =
+                Collections.synchronizedCollection(new ArrayList<>());
+        private volatile boolean cancelled;
+
+        /*default*/ JobTracker(JobSuite suite) {
+            super();
+            this.suite = suite;
+        }
+
+        /*default*/ Collection<IJob> getFailedJobs() {
+            return failedJobs;
         }
 
+        /**
+         * Whether jobs not yet started should no longer be started.
+         * @return <code>true</code> if cancelled
+         */
+        /*default*/ boolean isCancelled() {
+            if (cancelled) {
+                return true;
+            }
+            // Stopping a group (e.g., from a parent group) stops its jobs
+            JobStatus groupStatus = suite.getJobStatus(getId());
+            return groupStatus != null && groupStatus.isStopRequested();
+        }
+
+        /**
+         * Records a job is running, unless jobs not yet started were
+         * cancelled. Jobs recorded are stopped if cancelled later.
+         * @param job the job starting (or retried)
+         * @return <code>false</code> if the job must not start
+         */
+        /*default*/ synchronized boolean jobStarted(IJob job) {
+            if (cancelled && !runningJobs.contains(job)) {
+                return false;
+            }
+            runningJobs.add(job);
+            return true;
+        }
+        // Includes jobs waiting to be retried.
+        /*default*/ boolean isRunning(IJob job) {
+            return runningJobs.contains(job);
+        }
+        /*default*/ void jobEnded(IJob job, boolean success) {
+            runningJobs.remove(job);
+            if (success) {
+                return;
+            }
+            failedJobs.add(job);
+            int failures = failedJobs.size();
+            if ((maxFailures > 0 && failures >= maxFailures)
+                    || (maxFailureRatio > 0 && failures
+                            >= maxFailureRatio * getJobCount())) {
+                LOG.warn("{} failed job(s) in group \"{}\". Stopping its "
+                        + "other jobs.", failures, getId());
+                cancel();
+            }
+        }
+
+        /**
+         * Stops running jobs and prevents others from starting.
+         */
+        /*default*/ synchronized void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            for (IJob job : runningJobs) {
+                stopJob(job);
+            }
+        }
+
+        private void stopJob(IJob job) {
+            JobStatus status = suite.getJobStatus(job);
+            if (status != null && status.markStopping()) {
+                LOG.info("Stopping \"{}\".", job.getId());
+                job.stop(status, suite);
+            }
+            // Nested groups stop starting jobs, running ones are stopped.
+            if (job instanceof IJobGroup) {
+                for (IJob child : ((IJobGroup) job).getJobs()) {
+                    JobStatus childStatus = suite.getJobStatus(child);
+                    if (childStatus != null && childStatus.isState(
+                            JobState.RUNNING, JobState.STOPPING)) {
+                        stopJob(child);
+                    }
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,422 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.job.group;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.norconex.jef5.JefException;
+import com.norconex.jef5.job.IJob;
+import com.norconex.jef5.suite.JobRunResult;
+import com.norconex.jef5.suite.JobSuite;
+import com.norconex.jef5.suite.JobThreadMode;
+
+/**
+ * Job responsible for running a group of jobs in an order dictated by
+ * their dependencies (a directed acyclic graph).  A job starts as soon
+ * as all jobs it depends on have completed successfully, while no more
+ * than the maximum number of threads run at once.  When more jobs are
+ * ready to run than there are threads, those on the longest chain of
+ * dependent jobs (the critical path) start first.  With
+ * {@link JobOrdering#LONGEST_FIRST} ordering, chains are measured by
+ * how long their jobs took in previous executions rather than by how
+ * many jobs they have.  Jobs without
+ * dependencies between them run concurrently, like in an
+ * {@link AsyncJobGroup}.
+ * <p>
+ * A failed job prevents jobs depending on it, directly or not, from
+ * running.  Other jobs keep running, unless the maximum number or ratio
+ * of failures is reached (see {@link #setMaxFailures(int)}).  One or
+ * more failed jobs result in this group to fail.
+ * </p>
+ * <p>
+ * When resuming, jobs that already completed are skipped
+ * (see {@link JobSuite#runJob(IJob)}) and count as completed
+ * for jobs depending on them.
+ * </p>
+ *
+ * @author Pascal Essiembre
+ */
+public class DagJobGroup extends AsyncJobGroup {
+
+    /** Logger. */
+    private static final Logger LOG =
+            LoggerFactory.getLogger(DagJobGroup.class);
+
+    private final Map<String, Set<String>> dependencies = new HashMap<>();
+
+    /**
+     * Constructor.
+     * @param id unique identifier for this job group
+     * @param jobs jobs making up this group
+     */
+    public DagJobGroup(final String id, final IJob... jobs) {
+        this(id, jobs.length, jobs);
+    }
+    /**
+     * Constructor.
+     * @param id unique identifier for this job group
+     * @param jobs jobs making up this group
+     */
+    public DagJobGroup(String id, List<? extends IJob> jobs) {
+        this(id, jobs.size(), jobs);
+    }
+    /**
+     * Constructor.
+     * @param id unique identifier for this job group
+     * @param maxThreads maximum number of threads (jobs) executing at the
+     *        same time
+     * @param jobs jobs making up this group
+     */
+    public DagJobGroup(
+            final String id, int maxThreads, final IJob... jobs) {
+        this(id, maxThreads, Arrays.asList(jobs));
+    }
+    /**
+     * Constructor.
+     * @param id unique identifier for this job group
+     * @param maxThreads maximum number of threads (jobs) executing at the
+     *        same time
+     * @param jobs jobs making up this group
+     */
+    public DagJobGroup(
+            final String id, int maxThreads, final List<? extends IJob> jobs) {
+        super(id, maxThreads, jobs);
+    }
+
+    /**
+     * Declares that a job of this group can only start once other jobs
+     * of this group have completed successfully.
+     * @param jobId identifier of the dependent job
+     * @param prerequisiteIds identifiers of jobs it depends on
+     * @return this group
+     */
+    public DagJobGroup dependsOn(String jobId, String... prerequisiteIds) {
+        validateJobId(jobId);
+        for (String prerequisiteId : prerequisiteIds) {
+            validateJobId(prerequisiteId);
+            if (prerequisiteId.equals(jobId)) {
+                throw new IllegalArgumentException(
+                        "A job cannot depend on itself: " + jobId);
+            }
+        }
+        dependencies.computeIfAbsent(jobId, k -> new LinkedHashSet<>())
+                .addAll(Arrays.asList(prerequisiteIds));
+        return this;
+    }
+
+    /**
+     * Gets the identifiers of jobs a job depends on.
+     * @param jobId job identifier
+     * @return prerequisite job identifiers (never <code>null</code>)
+     */
+    public Set<String> getDependencies(String jobId) {
+        Set<String> ids = dependencies.get(jobId);
+        if (ids == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(ids);
+    }
+
+    private void validateJobId(String jobId) {
+        for (IJob job : getJobs()) {
+            if (job.getId().equals(jobId)) {
+                return;
+            }
+        }
+        throw new IllegalArgumentException("No job \"" + jobId
+                + "\" in DAG group \"" + getId() + "\".");
+    }
+
+    @Override
+    public void executeGroup(final JobSuite suite) {
+        List<IJob> jobs = getJobs();
+        DagExecution execution = new DagExecution(suite, jobs);
+
+        execution.startReadyJobs();
+        try {
+            ForkJoinPool.managedBlock(execution);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JefException(e);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("All jobs finished for DAG group \""
+                    + getId() + "\".");
+        }
+
+        Collection<IJob> failedJobs = execution.tracker.getFailedJobs();
+        if (!failedJobs.isEmpty() || execution.notRunCount > 0) {
+            throw new JefException(failedJobs.size()
+                    + " out of " + jobs.size() + " jobs failed ("
+                    + execution.notRunCount + " not run) in DAG group \""
+                    + getId() + "\"");
+        }
+    }
+
+    /**
+     * Gets the length of the longest chain of jobs each job is the start
+     * of, counting the job itself.  Jobs with the highest values are
+     * on the critical path.
+     * @param dependents indices of jobs depending on each job
+     * @param weights how much each job adds to a chain length
+     * @return critical path length of each job
+     */
+    /*default*/ long[] criticalPathLengths(
+            List<List<Integer>> dependents, long[] weights) {
+        int size = dependents.size();
+        // Topological order (Kahn) to detect cycles
+        int[] pending = new int[size];
+        for (List<Integer> deps : dependents) {
+            for (int d : deps) {
+                pending[d]++;
+            }
+        }
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int i = 0; i < size; i++) {
+            if (pending[i] == 0) {
+                queue.add(i);
+            }
+        }
+        List<Integer> order = new ArrayList<>(size);
+        while (!queue.isEmpty()) {
+            int i = queue.poll();
+            order.add(i);
+            for (int d : dependents.get(i)) {
+                if (--pending[d] == 0) {
+                    queue.add(d);
+                }
+            }
+        }
+        if (order.size() < size) {
+            List<String> cycleIds = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                if (pending[i] > 0) {
+                    cycleIds.add(getJobs().get(i).getId());
+                }
+            }
+            throw new JefException("Circular dependencies in DAG group \""
+                    + getId() + "\" between jobs: " + cycleIds);
+        }
+        long[] lengths = new long[size];
+        for (int o = size - 1; o >= 0; o--) {
+            int i = order.get(o);
+            long longest = 0;
+            for (int d : dependents.get(i)) {
+                longest = Math.max(longest, lengths[d]);
+            }
+            lengths[i] = longest + weights[i];
+        }
+        return lengths;
+    }
+
+    // Scheduling state of one group execution.
+    private class DagExecution implements ForkJoinPool.ManagedBlocker {
+        private final JobSuite suite;
+        private final List<IJob> jobs;
+        private final boolean virtual;
+        private final int maxRunning;
+        private final List<List<Integer>> dependents = new ArrayList<>();
+        private final int[] pending;
+        private final boolean[] started;
+        private final boolean[] abandoned;
+        private final PriorityQueue<Integer> ready;
+        private final Deque<Integer> dueRetries = new ArrayDeque<>();
+        private final JobTracker tracker;
+        private int running;
+        private int remaining;
+        private int notRunCount;
+
+        private DagExecution(JobSuite suite, List<IJob> jobs) {
+            this.suite = suite;
+            this.jobs = jobs;
+            this.virtual = resolveThreadMode(suite) == JobThreadMode.VIRTUAL;
+            this.maxRunning = Math.max(1, getMaxThreads());
+            this.remaining = jobs.size();
+            this.pending = new int[jobs.size()];
+            this.started = new boolean[jobs.size()];
+            this.abandoned = new boolean[jobs.size()];
+            this.tracker = new JobTracker(suite);
+
+            Map<String, Integer> indices = new HashMap<>();
+            for (int i = 0; i < jobs.size(); i++) {
+                indices.put(jobs.get(i).getId(), i);
+                dependents.add(new ArrayList<>());
+            }
+            for (int i = 0; i < jobs.size(); i++) {
+                for (String prerequisiteId :
+                        getDependencies(jobs.get(i).getId())) {
+                    dependents.get(indices.get(prerequisiteId)).add(i);
+                    pending[i]++;
+                }
+            }
+            long[] ones = new long[jobs.size()];
+            Arrays.fill(ones, 1);
+            long[] counts = criticalPathLengths(dependents, ones);
+            long[] times = counts;
+            if (getOrdering() == JobOrdering.LONGEST_FIRST) {
+                // Unknown durations add nothing to a chain.
+                long[] millis = new long[jobs.size()];
+                for (int i = 0; i < jobs.size(); i++) {
+                    Duration duration = suite.getHistoricalDuration(
+                            jobs.get(i).getId());
+                    millis[i] = duration != null ? duration.toMillis() : 0;
+                }
+                times = criticalPathLengths(dependents, millis);
+            }
+            long[] lengths = times;
+            // Longest chain first (in time, then in jobs), then in
+            // order of declaration
+            this.ready = new PriorityQueue<>((i1, i2) -> {
+                int result = Long.compare(lengths[i2], lengths[i1]);
+                if (result == 0) {
+                    result = Long.compare(counts[i2], counts[i1]);
+                }
+                return result != 0 ? result : Integer.compare(i1, i2);
+            });
+            for (int i = 0; i < jobs.size(); i++) {
+                if (pending[i] == 0) {
+                    ready.add(i);
+                }
+            }
+        }
+
+        private synchronized void startReadyJobs() {
+            // Retries run even once cancelled, so the suite ends them.
+            while (running < maxRunning && !dueRetries.isEmpty()) {
+                start(dueRetries.poll());
+            }
+            if (tracker.isCancelled()) {
+                abandonUnstarted();
+                return;
+            }
+            while (running < maxRunning && !ready.isEmpty()) {
+                int index = ready.poll();
+                started[index] = true;
+                start(index);
+            }
+        }
+        private void start(int index) {
+            running++;
+            Runnable task = () -> runAndRelease(index);
+            if (virtual) {
+                JobSuite.getVirtualThreadFactory().newThread(task).start();
+            } else {
+                suite.getJobExecutor().execute(task);
+            }
+        }
+
+        private void runAndRelease(int index) {
+            IJob job = jobs.get(index);
+            Runnable retryHandler = () -> retryDue(index);
+            JobRunResult result = JobRunResult.FAILED;
+            try {
+                // Before taking a suite permit
+                suite.paceJob(DagJobGroup.this, job);
+                if (virtual) {
+                    result = runJobWithPermit(job, tracker, retryHandler);
+                } else {
+                    result = runJob(job, tracker, retryHandler);
+                }
+            } finally {
+                if (result == JobRunResult.RETRY_SCHEDULED) {
+                    retryScheduled();
+                } else {
+                    jobEnded(index, result == JobRunResult.SUCCEEDED);
+                }
+            }
+        }
+
+        // The job is released until its retry is due.
+        private synchronized void retryScheduled() {
+            running--;
+            startReadyJobs();
+        }
+        private synchronized void retryDue(int index) {
+            dueRetries.add(index);
+            startReadyJobs();
+        }
+
+        private synchronized void jobEnded(int index, boolean success) {
+            running--;
+            remaining--;
+            if (success) {
+                for (int d : dependents.get(index)) {
+                    if (--pending[d] == 0 && !abandoned[d]) {
+                        ready.add(d);
+                    }
+                }
+            } else {
+                abandonDependents(index);
+            }
+            startReadyJobs();
+            if (remaining == 0) {
+                notifyAll();
+            }
+        }
+
+        private void abandonDependents(int index) {
+            for (int d : dependents.get(index)) {
+                if (!abandoned[d]) {
+                    abandoned[d] = true;
+                    remaining--;
+                    notRunCount++;
+                    LOG.error("\"{}\" not run since \"{}\" did not succeed.",
+                            jobs.get(d).getId(), jobs.get(index).getId());
+                    abandonDependents(d);
+                }
+            }
+        }
+
+        // Once cancelled, jobs not started yet are never started.
+        private void abandonUnstarted() {
+            ready.clear();
+            for (int i = 0; i < jobs.size(); i++) {
+                if (!started[i] && !abandoned[i]) {
+                    abandoned[i] = true;
+                    remaining--;
+                    notRunCount++;
+                }
+            }
+        }
+
+        @Override
+        public synchronized boolean block() throws InterruptedException {
+            while (remaining > 0) {
+                wait();
+            }
+            return true;
+        }
+        @Override
+        public synchronized boolean isReleasable() {
+            return remaining == 0;
+        }
+    }
+}
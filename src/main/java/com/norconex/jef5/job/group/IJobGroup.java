@@ -17,6 +17,7 @@ package com.norconex.jef5.job.group;
 import java.util.List;
 
 import com.norconex.jef5.job.IJob;
+import com.norconex.jef5.job.RateLimiter;
 import com.norconex.jef5.status.JobStatus;
 
 
@@ -36,4 +37,17 @@ public interface IJobGroup extends IJob {
 
 
     void groupProgressed(JobStatus childJobStatus);
+
+    /**
+     * Gets the rate limiter shared by the jobs of this group, nested
+     * ones included. Each job takes a permit before starting and can
+     * take more while executing (see
+     * {@link com.norconex.jef5.suite.JobSuite#acquirePermits(IJob, int)}).
+     * Default returns <code>null</code> (no limit).
+     * @return rate limiter or <code>null</code>
+     * @since 5.0.0
+     */
+    default RateLimiter getRateLimiter() {
+        return null;
+    }
 }
@@ -0,0 +1,37 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.job.group;
+
+/**
+ * Order in which a job group starts its jobs when it cannot start them
+ * all at once.
+ * @author Pascal Essiembre
+ */
+public enum JobOrdering {
+
+    /**
+     * Jobs start in the order they were given to the group.
+     */
+    DECLARED,
+    /**
+     * Jobs that took the longest in previous executions start first
+     * (see {@link com.norconex.jef5.suite.JobSuite#getHistoricalDuration(
+     * String)}), so a long job does not start last and delay the whole
+     * group. For job groups, it is the time the entire group took.
+     * Jobs never completed before start after the others, in declared
+     * order.
+     */
+    LONGEST_FIRST
+}
@@ -0,0 +1,163 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.job.group;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ManagedBlocker;
+
+/**
+ * Bounded queue of items passed from a pipeline stage to the next one.
+ * Producers wait when it is full and consumers wait when it is empty.
+ * Waiting is done through {@link ForkJoinPool#managedBlock(ManagedBlocker)}
+ * so the job executor can start other workers meanwhile.
+ * @author Pascal Essiembre
+ * @since 5.0.0
+ */
+/*default*/ class PipelineChannel {
+
+    private final ArrayDeque<Object> items;
+    private final int capacity;
+    private long addedCount;
+    private boolean closed;
+    private boolean cancelled;
+
+    private final ManagedBlocker notFull = new ManagedBlocker() {
+        @Override
+        public boolean isReleasable() {
+            synchronized (PipelineChannel.this) {
+                return cancelled || items.size() < capacity;
+            }
+        }
+        @Override
+        public boolean block() throws InterruptedException {
+            synchronized (PipelineChannel.this) {
+                while (!cancelled && items.size() >= capacity) {
+                    PipelineChannel.this.wait();
+                }
+            }
+            return true;
+        }
+    };
+    private final ManagedBlocker notEmpty = new ManagedBlocker() {
+        @Override
+        public boolean isReleasable() {
+            synchronized (PipelineChannel.this) {
+                return cancelled || closed || !items.isEmpty();
+            }
+        }
+        @Override
+        public boolean block() throws InterruptedException {
+            synchronized (PipelineChannel.this) {
+                while (!cancelled && !closed && items.isEmpty()) {
+                    PipelineChannel.this.wait();
+                }
+            }
+            return true;
+        }
+    };
+
+    /*default*/ PipelineChannel(int capacity) {
+        super();
+        this.capacity = Math.max(1, capacity);
+        this.items = new ArrayDeque<>(this.capacity);
+    }
+
+    /**
+     * Adds an item, waiting for room if full.
+     * @param item the item to add
+     * @return <code>false</code> if the channel was cancelled
+     * @throws InterruptedException if interrupted while waiting
+     */
+    /*default*/ boolean put(Object item) throws InterruptedException {
+        Objects.requireNonNull(item, "Pipeline items cannot be null.");
+        while (true) {
+            synchronized (this) {
+                if (cancelled) {
+                    return false;
+                }
+                if (closed) {
+                    throw new IllegalStateException(
+                            "Cannot add items to a closed pipeline channel.");
+                }
+                if (items.size() < capacity) {
+                    items.add(item);
+                    addedCount++;
+                    notifyAll();
+                    return true;
+                }
+            }
+            ForkJoinPool.managedBlock(notFull);
+        }
+    }
+
+    /**
+     * Takes the next item, waiting for one if empty.
+     * @return next item or <code>null</code> if the channel is closed
+     *         and empty, or cancelled
+     * @throws InterruptedException if interrupted while waiting
+     */
+    /*default*/ Object take() throws InterruptedException {
+        while (true) {
+            synchronized (this) {
+                if (cancelled) {
+                    return null;
+                }
+                Object item = items.poll();
+                if (item != null) {
+                    notifyAll();
+                    return item;
+                }
+                if (closed) {
+                    return null;
+                }
+            }
+            ForkJoinPool.managedBlock(notEmpty);
+        }
+    }
+
+    /**
+     * Indicates no more items will be added. Remaining items can still
+     * be taken.
+     */
+    /*default*/ synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+    /**
+     * Discards remaining items and releases waiting producers and
+     * consumers.
+     */
+    /*default*/ synchronized void cancel() {
+        cancelled = true;
+        items.clear();
+        notifyAll();
+    }
+
+    /*default*/ synchronized boolean isClosed() {
+        return closed;
+    }
+    /*default*/ synchronized boolean isCancelled() {
+        return cancelled;
+    }
+    /**
+     * Gets how many items were added so far.
+     * @return added item count
+     */
+    /*default*/ synchronized long getAddedCount() {
+        return addedCount;
+    }
+}
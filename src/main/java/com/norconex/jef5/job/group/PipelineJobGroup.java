@@ -0,0 +1,289 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.job.group;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.norconex.jef5.JefException;
+import com.norconex.jef5.job.IJob;
+import com.norconex.jef5.status.JobState;
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.suite.JobSuite;
+import com.norconex.jef5.suite.JobThreadMode;
+
+/**
+ * <p>
+ * Job group running its stages (see {@link PipelineStage}) at the same
+ * time, each stage processing items produced by the previous one as they
+ * come (e.g., extract, transform, load), instead of one after the other.
+ * Items of the first stage come from a source iterator.
+ * </p>
+ * <p>
+ * Items are passed in memory from a stage to the next through a bounded
+ * channel (see {@link #setChannelCapacity(int)}). A stage producing items
+ * faster than the next stage can process them waits when the channel
+ * is full, so memory usage does not grow with the number of items.
+ * Each stage has its own parallelism, status, and progress.
+ * The group progress is the average of its stage progress.
+ * </p>
+ * <p>
+ * A stage failing or being stopped stops the whole pipeline, and the
+ * group fails if a stage or the source failed. Items in channels are not
+ * kept between executions: a pipeline that did not complete is
+ * executed again from its first item when resumed, all stages included.
+ * </p>
+ * <p>
+ * Stages run on the suite job executor or on virtual threads, like
+ * {@link AsyncJobGroup}. Stage workers spend most of their time waiting
+ * on channels, so they are not counted against the suite maximum
+ * parallelism.
+ * </p>
+ * @author Pascal Essiembre
+ * @since 5.0.0
+ */
+public class PipelineJobGroup extends AsyncJobGroup {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(PipelineJobGroup.class);
+
+    public static final int DEFAULT_CHANNEL_CAPACITY = 1000;
+
+    private final Supplier<? extends Iterator<?>> source;
+    private int channelCapacity = DEFAULT_CHANNEL_CAPACITY;
+    private long expectedItemCount;
+    private volatile List<PipelineChannel> channels;
+
+    /**
+     * Constructor.
+     * @param id unique identifier for this job group
+     * @param source supplies a new iterator over the items of the first
+     *        stage, on each execution
+     * @param stages pipeline stages, in processing order
+     */
+    public PipelineJobGroup(String id, Supplier<? extends Iterator<?>> source,
+            PipelineStage<?, ?>... stages) {
+        this(id, source, Arrays.asList(stages));
+    }
+    /**
+     * Constructor.
+     * @param id unique identifier for this job group
+     * @param source supplies a new iterator over the items of the first
+     *        stage, on each execution
+     * @param stages pipeline stages, in processing order
+     */
+    public PipelineJobGroup(String id, Supplier<? extends Iterator<?>> source,
+            List<? extends PipelineStage<?, ?>> stages) {
+        super(id, stages.size(), stages);
+        if (stages.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "Pipeline job group must have at least one stage.");
+        }
+        this.source = Objects.requireNonNull(source, "source");
+    }
+
+    /**
+     * Gets the maximum number of items waiting to be processed by
+     * each stage.
+     * @return channel capacity
+     */
+    public int getChannelCapacity() {
+        return channelCapacity;
+    }
+    /**
+     * Sets the maximum number of items waiting to be processed by
+     * each stage. Default is {@value #DEFAULT_CHANNEL_CAPACITY}.
+     * @param channelCapacity channel capacity
+     */
+    public void setChannelCapacity(int channelCapacity) {
+        this.channelCapacity = channelCapacity;
+    }
+
+    /**
+     * Gets the number of items the source is expected to return.
+     * @return expected item count or zero if unknown
+     */
+    public long getExpectedItemCount() {
+        return expectedItemCount;
+    }
+    /**
+     * Sets the number of items the source is expected to return, to report
+     * stage progress before the previous stage is done. When unknown
+     * (zero), stage progress is only reported once the previous stage
+     * is done.
+     * @param expectedItemCount expected item count or zero if unknown
+     */
+    public void setExpectedItemCount(long expectedItemCount) {
+        this.expectedItemCount = expectedItemCount;
+    }
+
+    @Override
+    public void executeGroup(JobSuite suite) {
+        List<IJob> stages = getJobs();
+        resetCompletedStages(suite);
+
+        // Channel "i" is the input of stage "i".
+        List<PipelineChannel> stageInputs = new ArrayList<>(stages.size());
+        for (int i = 0; i < stages.size(); i++) {
+            stageInputs.add(new PipelineChannel(channelCapacity));
+        }
+        channels = stageInputs;
+        JobThreadMode mode = resolveThreadMode(suite);
+        for (int i = 0; i < stages.size(); i++) {
+            ((PipelineStage<?, ?>) stages.get(i)).bind(stageInputs.get(i),
+                    i + 1 < stages.size() ? stageInputs.get(i + 1) : null,
+                    mode, expectedItemCount);
+        }
+
+        JobTracker tracker = new JobTracker(suite);
+        List<Runnable> lanes = new ArrayList<>(stages.size() + 1);
+        List<RuntimeException> sourceFailure = new ArrayList<>(1);
+        lanes.add(() -> feed(stageInputs.get(0), tracker, sourceFailure));
+        for (int i = 0; i < stages.size(); i++) {
+            IJob stage = stages.get(i);
+            PipelineChannel output =
+                    i + 1 < stages.size() ? stageInputs.get(i + 1) : null;
+            lanes.add(() -> runStage(stage, output, tracker));
+        }
+        try {
+            if (mode == JobThreadMode.VIRTUAL) {
+                executeOnVirtualThreads(lanes);
+            } else {
+                List<ForkJoinTask<?>> tasks = new ArrayList<>(lanes.size());
+                lanes.forEach(lane -> tasks.add(ForkJoinTask.adapt(lane)));
+                invokeLanes(suite.getJobExecutor(), tasks);
+            }
+        } finally {
+            channels = null;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("All stages finished for pipeline group \""
+                    + getId() + "\".");
+        }
+
+        if (!sourceFailure.isEmpty()) {
+            throw new JefException("Source failed in pipeline group \""
+                    + getId() + "\"", sourceFailure.get(0));
+        }
+        Collection<IJob> failedJobs = tracker.getFailedJobs();
+        if (!failedJobs.isEmpty()) {
+            throw new JefException(
+                    failedJobs.size() + " out of " + stages.size()
+                  + " stages failed in pipeline group \"" + getId() + "\"");
+        }
+    }
+
+    // Completed stages would be skipped, leaving the next stages
+    // without items.
+    private void resetCompletedStages(JobSuite suite) {
+        for (IJob stage : getJobs()) {
+            JobStatus status = suite.getJobStatus(stage);
+            if (status != null && status.getState() == JobState.COMPLETED) {
+                LOG.info("Pipeline stage \"{}\" will be executed again "
+                        + "with the rest of the pipeline.", stage.getId());
+                status.setProgress(0d);
+                status.setRecordedState(JobState.UNCOMPLETED);
+            }
+        }
+    }
+
+    private void feed(PipelineChannel channel, JobTracker tracker,
+            List<RuntimeException> sourceFailure) {
+        try {
+            Iterator<?> items = source.get();
+            while (!tracker.isCancelled() && items.hasNext()) {
+                if (!channel.put(items.next())) {
+                    break;
+                }
+            }
+            // Not to have stages complete with only some of the items.
+            if (tracker.isCancelled()) {
+                cancelChannels();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sourceFailure.add(new JefException(e));
+            cancel(tracker);
+        } catch (RuntimeException e) {
+            LOG.error("Source failed in pipeline group \"{}\".", getId(), e);
+            sourceFailure.add(e);
+            cancel(tracker);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void runStage(
+            IJob stage, PipelineChannel output, JobTracker tracker) {
+        boolean success = false;
+        try {
+            success = runJob(stage, tracker);
+        } finally {
+            if (output != null) {
+                output.close();
+            }
+            if (!success) {
+                cancel(tracker);
+            }
+        }
+    }
+
+    private void executeOnVirtualThreads(List<Runnable> lanes) {
+        ThreadFactory factory = JobSuite.getVirtualThreadFactory();
+        List<Thread> threads = new ArrayList<>(lanes.size());
+        for (Runnable lane : lanes) {
+            Thread thread = factory.newThread(lane);
+            thread.start();
+            threads.add(thread);
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelChannels();
+            throw new JefException(e);
+        }
+    }
+
+    // Stops running stages and releases those waiting on channels.
+    private void cancel(JobTracker tracker) {
+        tracker.cancel();
+        cancelChannels();
+    }
+    private void cancelChannels() {
+        List<PipelineChannel> current = channels;
+        if (current != null) {
+            current.forEach(PipelineChannel::cancel);
+        }
+    }
+
+    @Override
+    public void stop(JobStatus status, JobSuite suite) {
+        super.stop(status, suite);
+        cancelChannels();
+    }
+}
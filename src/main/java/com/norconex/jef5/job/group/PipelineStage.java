@@ -0,0 +1,309 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.job.group;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.norconex.jef5.JefException;
+import com.norconex.jef5.job.IJob;
+import com.norconex.jef5.job.RetryPolicy;
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusUpdater;
+import com.norconex.jef5.suite.JobSuite;
+import com.norconex.jef5.suite.JobThreadMode;
+
+/**
+ * <p>
+ * Stage of a {@link PipelineJobGroup}, processing items received from
+ * the previous stage (or the pipeline source) and passing the items it
+ * produces to the next stage. Items are processed by as many workers
+ * as the stage parallelism, so implementors must be thread-safe.
+ * </p>
+ * <p>
+ * A stage is a job of its own, with its own status. Its progress is
+ * the ratio of items processed over the items the previous stage
+ * produced, once known, or else over the pipeline expected item count
+ * (see {@link PipelineJobGroup#setExpectedItemCount(long)}).
+ * Stages are never retried, as their input is not kept.
+ * A stage ending before all its items were processed, because the
+ * pipeline was stopped or another stage failed, ends as stopped
+ * instead of completed.
+ * </p>
+ * @author Pascal Essiembre
+ * @since 5.0.0
+ * @param <I> type of items received
+ * @param <O> type of items produced
+ */
+public abstract class PipelineStage<I, O> implements IJob {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(PipelineStage.class);
+
+    private static final RetryPolicy NO_RETRY = new RetryPolicy(1);
+    private static final long PROGRESS_UPDATE_INTERVAL = 1000;
+
+    private final String id;
+    private final int parallelism;
+    private long timeout;
+
+    // Set by the pipeline group before each execution.
+    private volatile PipelineChannel input;
+    private volatile PipelineChannel output;
+    private volatile JobThreadMode threadMode;
+    private volatile long expectedItemCount;
+
+    private volatile boolean stopRequested;
+    private final AtomicLong processedCount = new AtomicLong();
+    private volatile long lastProgressUpdate;
+
+    /**
+     * Constructor.
+     * @param id stage unique identifier
+     * @param parallelism number of items processed at the same time
+     */
+    public PipelineStage(String id, int parallelism) {
+        super();
+        this.id = id;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    @Override
+    public final String getId() {
+        return id;
+    }
+
+    /**
+     * Gets the number of items processed at the same time.
+     * @return parallelism
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public long getTimeout() {
+        return timeout;
+    }
+    /**
+     * Sets the maximum milliseconds this stage can run. A stage timing
+     * out stops the pipeline. Default is zero (no timeout).
+     * @param timeout timeout or zero for none
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public final RetryPolicy getRetryPolicy() {
+        return NO_RETRY;
+    }
+
+    /**
+     * Processes an item, passing produced items (if any) to the given
+     * output. Invoked concurrently when parallelism is more than one.
+     * Passing an item to the output waits while the next stage has too
+     * many items waiting. Items produced by the last stage are ignored.
+     * @param item item to process
+     * @param output receives items for the next stage
+     * @param suite job suite
+     */
+    protected abstract void process(
+            I item, Consumer<? super O> output, JobSuite suite);
+
+    /**
+     * Invoked once all items were processed, before the next stage is
+     * told there are no more items (e.g., to send what was batched).
+     * Not invoked when the pipeline is stopped or failed.
+     * Default does nothing.
+     * @param output receives items for the next stage
+     * @param suite job suite
+     */
+    protected void finish(Consumer<? super O> output, JobSuite suite) {
+        //NOOP
+    }
+
+    /*default*/ void bind(PipelineChannel input, PipelineChannel output,
+            JobThreadMode threadMode, long expectedItemCount) {
+        this.input = input;
+        this.output = output;
+        this.threadMode = threadMode;
+        this.expectedItemCount = expectedItemCount;
+    }
+
+    @Override
+    public void execute(JobStatusUpdater statusUpdater, JobSuite suite) {
+        if (input == null) {
+            throw new JefException("Pipeline stage \"" + id
+                    + "\" can only be executed by a pipeline job group.");
+        }
+        stopRequested = false;
+        processedCount.set(0);
+        lastProgressUpdate = System.currentTimeMillis();
+
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Consumer<O> emitter = this::emit;
+        Runnable worker = () -> work(statusUpdater, suite, emitter, failure);
+        if (threadMode == JobThreadMode.VIRTUAL) {
+            executeOnVirtualThreads(worker);
+        } else {
+            List<ForkJoinTask<?>> lanes = new ArrayList<>(parallelism);
+            for (int i = 0; i < parallelism; i++) {
+                lanes.add(ForkJoinTask.adapt(worker));
+            }
+            AsyncJobGroup.invokeLanes(suite.getJobExecutor(), lanes);
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        if (isCancelled()) {
+            LOG.info("Pipeline stage \"{}\" ended after {} items, "
+                    + "before processing all of them.",
+                    id, processedCount.get());
+            // Not to be reported as completed.
+            suite.getJobStatus(this).markStopping();
+            statusUpdater.setNote("Stopped after "
+                    + processedCount.get() + " items processed.");
+            return;
+        }
+        finish(emitter, suite);
+        statusUpdater.setProgress(1d);
+        statusUpdater.setNote(processedCount.get() + " items processed.");
+    }
+
+    private void executeOnVirtualThreads(Runnable worker) {
+        ThreadFactory factory = JobSuite.getVirtualThreadFactory();
+        List<Thread> threads = new ArrayList<>(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            Thread thread = factory.newThread(worker);
+            thread.start();
+            threads.add(thread);
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelChannels();
+            throw new JefException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void work(JobStatusUpdater statusUpdater, JobSuite suite,
+            Consumer<O> emitter, AtomicReference<RuntimeException> failure) {
+        String currentJobId = JobSuite.getRunningJobId();
+        JobSuite.setCurrentJobId(id);
+        try {
+            Object item;
+            while (!isCancelled() && (item = input.take()) != null) {
+                process((I) item, emitter, suite);
+                processedCount.incrementAndGet();
+                updateProgress(statusUpdater);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed(failure, new JefException(
+                    "Pipeline stage \"" + id + "\" interrupted.", e));
+        } catch (RuntimeException e) {
+            failed(failure, e);
+        } finally {
+            JobSuite.setCurrentJobId(currentJobId);
+        }
+    }
+
+    // Other workers of this stage and the adjacent stages stop as well.
+    private void failed(AtomicReference<RuntimeException> failure,
+            RuntimeException e) {
+        if (!failure.compareAndSet(null, e)) {
+            failure.get().addSuppressed(e);
+        }
+        cancelChannels();
+    }
+
+    private void emit(O item) {
+        if (output == null) {
+            return;
+        }
+        try {
+            output.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JefException(
+                    "Pipeline stage \"" + id + "\" interrupted.", e);
+        }
+    }
+
+    private boolean isCancelled() {
+        PipelineChannel out = output;
+        return stopRequested || input.isCancelled()
+                || (out != null && out.isCancelled());
+    }
+
+    private void updateProgress(JobStatusUpdater statusUpdater) {
+        long now = System.currentTimeMillis();
+        if (now - lastProgressUpdate < PROGRESS_UPDATE_INTERVAL) {
+            return;
+        }
+        synchronized (this) {
+            if (now - lastProgressUpdate < PROGRESS_UPDATE_INTERVAL) {
+                return;
+            }
+            lastProgressUpdate = now;
+            long processed = processedCount.get();
+            long total = input.isClosed()
+                    ? input.getAddedCount() : expectedItemCount;
+            if (total > 0) {
+                // Only complete once all items were processed.
+                statusUpdater.setProgress(Math.min(Math.nextDown(1d),
+                        (double) processed / total));
+                statusUpdater.setNote(processed + " of "
+                        + total + " items processed.");
+            } else {
+                statusUpdater.setNote(processed + " items processed.");
+            }
+        }
+    }
+
+    /**
+     * Stops this stage and the pipeline it is part of. Implementors
+     * overriding this method should invoke it.
+     */
+    @Override
+    public void stop(JobStatus status, JobSuite suite) {
+        stopRequested = true;
+        cancelChannels();
+    }
+    private void cancelChannels() {
+        PipelineChannel in = input;
+        PipelineChannel out = output;
+        if (in != null) {
+            in.cancel();
+        }
+        if (out != null) {
+            out.cancel();
+        }
+    }
+}
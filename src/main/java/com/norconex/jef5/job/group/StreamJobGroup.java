@@ -0,0 +1,216 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.job.group;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.norconex.jef5.JefException;
+import com.norconex.jef5.job.IJob;
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusUpdater;
+import com.norconex.jef5.suite.JobSuite;
+import com.norconex.jef5.suite.JobThreadMode;
+
+/**
+ * <p>
+ * Job group running jobs it obtains from an iterator as it goes, instead
+ * of being given all its jobs upfront. Meant for very large numbers of
+ * generated jobs (e.g., one job per customer or per data partition).
+ * Jobs are run asynchronously, the same way as {@link AsyncJobGroup}.
+ * </p>
+ * <p>
+ * A job is only taken from the iterator when it can start running, so no
+ * more jobs than the maximum number of threads exist at once, besides
+ * jobs waiting to be retried.
+ * Jobs are added to the suite when they start and removed once done
+ * (see {@link JobSuite#addJob(IJobGroup, IJob)}), with their in-memory
+ * status, so memory usage does not grow with the number of jobs.
+ * Their statuses remain in the suite status store.
+ * </p>
+ * <p>
+ * Since jobs are not known in advance:
+ * </p>
+ * <ul>
+ *   <li>each execution must get the same jobs from the iterator
+ *       (same ids) for a suite to be resumed, completed jobs then
+ *       being skipped;</li>
+ *   <li>jobs are not part of the suite index nor visited by
+ *       {@link JobSuite#accept(com.norconex.jef5.job.IJobVisitor)};</li>
+ *   <li>the group progress is the ratio of completed jobs over the
+ *       expected job count, if set (see
+ *       {@link #setExpectedJobCount(long)}), else it only reaches 100%
+ *       when done;</li>
+ *   <li>jobs are started in the iterator order, ignoring
+ *       {@link #setOrdering(JobOrdering)}.</li>
+ * </ul>
+ * @author Pascal Essiembre
+ * @since 5.0.0
+ */
+public class StreamJobGroup extends AsyncJobGroup {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(StreamJobGroup.class);
+
+    private final Supplier<? extends Iterator<? extends IJob>> jobSupplier;
+    private long expectedJobCount;
+    private JobStatusUpdater statusUpdater;
+    private volatile JobTracker tracker;
+    private final AtomicLong startedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param id unique identifier for this job group
+     * @param maxThreads maximum number of threads (jobs) executing at the
+     *        same time
+     * @param jobSupplier supplies a new iterator over the jobs to run,
+     *        on each execution (e.g., <code>() -> stream.iterator()</code>)
+     */
+    public StreamJobGroup(String id, int maxThreads,
+            Supplier<? extends Iterator<? extends IJob>> jobSupplier) {
+        super(id, maxThreads, Collections.emptyList());
+        this.jobSupplier = Objects.requireNonNull(jobSupplier, "jobSupplier");
+    }
+
+    /**
+     * Gets the number of jobs the iterator is expected to return.
+     * @return expected job count or zero if unknown
+     */
+    public long getExpectedJobCount() {
+        return expectedJobCount;
+    }
+    /**
+     * Sets the number of jobs the iterator is expected to return,
+     * to report the group progress and apply the maximum failure ratio
+     * (see {@link #setMaxFailureRatio(double)}). When unknown (zero),
+     * the failure ratio applies to the jobs started so far.
+     * @param expectedJobCount expected job count or zero if unknown
+     */
+    public void setExpectedJobCount(long expectedJobCount) {
+        this.expectedJobCount = expectedJobCount;
+    }
+
+    @Override
+    public void execute(JobStatusUpdater statusUpdater, JobSuite suite) {
+        this.statusUpdater = statusUpdater;
+        super.execute(statusUpdater, suite);
+    }
+
+    @Override
+    public void executeGroup(JobSuite suite) {
+        startedCount.set(0);
+        completedCount.set(0);
+        JobTracker jobTracker = new JobTracker(suite);
+        tracker = jobTracker;
+        Iterator<? extends IJob> jobs = jobSupplier.get();
+        // A job is only taken once it can run.
+        Supplier<IJob> source = () -> nextJob(jobs);
+        int realMaxThread = Math.max(1, getMaxThreads());
+        try {
+            if (resolveThreadMode(suite) == JobThreadMode.VIRTUAL) {
+                executeOnVirtualThreads(jobTracker, source, realMaxThread);
+            } else {
+                executeOnPool(jobTracker, source, realMaxThread);
+            }
+        } finally {
+            tracker = null;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("All jobs finished for stream group \""
+                    + getId() + "\".");
+        }
+
+        Collection<IJob> failedJobs = jobTracker.getFailedJobs();
+        if (!failedJobs.isEmpty()) {
+            throw new JefException(
+                    failedJobs.size() + " out of " + startedCount.get()
+                  + " jobs failed in stream group \"" + getId() + "\"");
+        }
+        // Total progress was unknown or different than expected.
+        if (!jobTracker.isCancelled()
+                && completedCount.get() == startedCount.get()
+                && statusUpdater != null) {
+            statusUpdater.setProgress(1.0d);
+        }
+    }
+
+    private IJob nextJob(Iterator<? extends IJob> jobs) {
+        synchronized (jobs) {
+            return jobs.hasNext() ? jobs.next() : null;
+        }
+    }
+
+    @Override
+    /*default*/ void beforeJob(JobSuite suite, IJob job) {
+        suite.addJob(this, job);
+        startedCount.incrementAndGet();
+    }
+    @Override
+    /*default*/ void afterJob(JobSuite suite, IJob job) {
+        try {
+            JobStatus status = suite.getJobStatus(job);
+            if (status != null && status.isCompleted()) {
+                completedCount.incrementAndGet();
+            }
+            updateProgress();
+        } finally {
+            suite.removeJob(job);
+        }
+    }
+
+    private synchronized void updateProgress() {
+        if (statusUpdater == null) {
+            return;
+        }
+        long completed = completedCount.get();
+        if (expectedJobCount > 0) {
+            statusUpdater.setProgress(
+                    Math.min(1.0d, (double) completed / expectedJobCount));
+            statusUpdater.setNote(completed + " of "
+                    + expectedJobCount + " jobs completed.");
+        } else {
+            statusUpdater.setNote(completed + " jobs completed.");
+        }
+    }
+
+    @Override
+    /*default*/ long getJobCount() {
+        return expectedJobCount > 0 ? expectedJobCount : startedCount.get();
+    }
+
+    // Progress is updated as jobs complete, not as they progress.
+    @Override
+    public void groupProgressed(JobStatus childJobStatus) {
+        //NOOP
+    }
+
+    @Override
+    public void stop(JobStatus status, JobSuite suite) {
+        super.stop(status, suite);
+        // Running jobs are only known from the current execution.
+        JobTracker jobTracker = tracker;
+        if (jobTracker != null) {
+            jobTracker.cancel();
+        }
+    }
+}
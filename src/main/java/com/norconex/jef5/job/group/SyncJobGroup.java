@@ -62,6 +62,11 @@ public class SyncJobGroup extends AbstractJobGroup {
         List<IJob> jobs = getJobs();
         String failedJob = null;
         for (IJob job : jobs) {
+            if (suite.getJobStatus(this).isStopRequested()) {
+                LOG.info("Synchronous group \"{}\" stopped before running "
+                        + "job \"{}\".", getId(), job.getId());
+                break;
+            }
             LOG.debug("Synchronous group \"{}\" about to run synchronous "
                     + "job \"{}\".", getId(), job.getId());
             if (!suite.runJob(job)) {
@@ -96,10 +96,14 @@ public class FileShutdownHook implements IShutdownHook {
         }
 
         try {
-            if (!JobSuiteStatus.getInstance(
-                    indexFile).getRootStatus().isRunning()) {
-                LOG.info("The job suite is not running.");
-                return false;
+            JobSuiteStatus suiteStatus = JobSuiteStatus.getInstance(indexFile);
+            try {
+                if (!suiteStatus.getRootStatus().isRunning()) {
+                    LOG.info("The job suite is not running.");
+                    return false;
+                }
+            } finally {
+                suiteStatus.close();
             }
         } catch (IOException e) {
             throw new ShutdownException(
@@ -126,6 +130,12 @@ public class FileShutdownHook implements IShutdownHook {
     private void stopSuite() {
         monitoring = false;
         LOG.info("STOP request received.");
+        // Jobs must be stopped even if statuses cannot be saved.
+        try {
+            suite.flushStatuses();
+        } catch (RuntimeException e) {
+            LOG.error("Could not save job statuses before stopping.", e);
+        }
 
         // Notify Suite Life Cycle listeners
         suite.getEventManager().fire(
@@ -141,9 +151,11 @@ public class FileShutdownHook implements IShutdownHook {
         });
     }
     private void stopJob(final IJob job, final JobStatus status) {
-        status.setStopRequested(true);
+        status.markStopping();
+        persistStopRequest(status);
         job.stop(status, suite);
-        while (status.isRunning()) {
+        while (status.getState().isOneOf(
+                JobState.RUNNING, JobState.STOPPING)) {
             Sleeper.sleepSeconds(STOP_WAIT_DELAY);
         }
         if (status.getState() == JobState.STOPPED) {
@@ -158,6 +170,16 @@ public class FileShutdownHook implements IShutdownHook {
         }
     }
 
+    // Makes the stop request visible to other processes right away.
+    private void persistStopRequest(JobStatus status) {
+        try {
+            suite.flushStatus(status);
+        } catch (RuntimeException e) {
+            LOG.error("Could not persist stop request for job: {}",
+                    status.getJobId(), e);
+        }
+    }
+
     private Path getStopFile(Path indexFile) {
         return Paths.get(StringUtils.removeEnd(
                 indexFile.toString(), ".index") + ".stop");
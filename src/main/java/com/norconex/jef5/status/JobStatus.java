@@ -14,10 +14,16 @@
  */
 package com.norconex.jef5.status;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.Supplier;
 
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
@@ -36,6 +42,9 @@ public class JobStatus extends JobStatusData {
     //TODO have status Comparable by JobDuration (startDate)
     private final String jobId;
     private final Set<JobStatusData> resumedAttempts = new TreeSet<>();
+    // Loads resumed attempts on first access, null once loaded.
+    private transient volatile Supplier<Set<JobStatusData>> attemptsLoader;
+    private transient int resumedAttemptCount;
 
     public JobStatus(String jobId, Set<JobStatusData> resumedAttempts) {
         this.jobId = jobId;
@@ -43,29 +52,99 @@ public class JobStatus extends JobStatusData {
             this.resumedAttempts.addAll(resumedAttempts);
         }
     }
+    /**
+     * Creates a job status whose resumed attempts are only loaded
+     * when first needed (e.g., {@link #getResumedAttempts()} or
+     * session duration methods), for stores where reading them is costly.
+     * @param jobId job id
+     * @param resumedAttemptCount how many resumed attempts there are
+     * @param attemptsLoader loads resumed attempts (not invoked
+     *        if there are none)
+     */
+    public JobStatus(String jobId, int resumedAttemptCount,
+            Supplier<Set<JobStatusData>> attemptsLoader) {
+        this.jobId = jobId;
+        if (resumedAttemptCount > 0) {
+            this.resumedAttemptCount = resumedAttemptCount;
+            this.attemptsLoader = attemptsLoader;
+        }
+    }
 
     public String getJobId() {
         return jobId;
     }
     public Set<JobStatusData> getResumedAttempts() {
+        loadAttempts();
         return resumedAttempts;
     }
 
     /**
      * Whether this status resumed from a previously
-     * failed or stopped job.
+     * failed or stopped job. Does not load resumed attempts.
      * @return <code>true</code> if the current job was resumed
      */
     public boolean isResumed() {
+        if (attemptsLoader != null) {
+            return resumedAttemptCount > 0;
+        }
         return !resumedAttempts.isEmpty();
     }
 
+    /**
+     * Adds a copy of the current attempt to resumed attempts, so a new
+     * attempt can be made (e.g., when retrying a failed job).
+     * The current status is left untouched.
+     * @return the attempt added
+     */
+    public JobStatusData archiveAttempt() {
+        JobStatusData attempt = new JobStatusData();
+        copyTo(attempt);
+        loadAttempts();
+        synchronized (resumedAttempts) {
+            resumedAttempts.add(attempt);
+        }
+        return attempt;
+    }
+
+    /**
+     * Gets a copy of this status as it is now, to be saved while the job
+     * keeps updating this one. Resumed attempts not yet loaded are
+     * only loaded if the copy needs them.
+     * @return status copy
+     */
+    public JobStatus snapshot() {
+        JobStatus copy;
+        Supplier<Set<JobStatusData>> loader = attemptsLoader;
+        if (loader != null) {
+            copy = new JobStatus(jobId, resumedAttemptCount, loader);
+        } else {
+            synchronized (resumedAttempts) {
+                copy = new JobStatus(jobId, resumedAttempts);
+            }
+        }
+        copyTo(copy);
+        return copy;
+    }
+
+    private void loadAttempts() {
+        Supplier<Set<JobStatusData>> loader = attemptsLoader;
+        if (loader != null) {
+            synchronized (resumedAttempts) {
+                if (attemptsLoader != null) {
+                    resumedAttempts.addAll(loader.get());
+                    attemptsLoader = null;
+                }
+            }
+        }
+    }
+
     /**
      * Gets the start time of the oldest resumed attempt,
      * or the current start time if there were no previous attempt.
      * @return status start time or <code>null</code> if never started
      */
     public Instant getSessionStartTime() {
+        loadAttempts();
         if (resumedAttempts.isEmpty()) {
             return getStartTime();
         }
@@ -90,6 +169,7 @@ public class JobStatus extends JobStatusData {
     // the cumulated time jobs have run as opposed to calendar-duration.
     public Duration getSessionEffectiveDuration() {
         Duration duration = getDuration();
+        loadAttempts();
         if (resumedAttempts.isEmpty()) {
             return duration;
         }
@@ -108,7 +188,8 @@ public class JobStatus extends JobStatusData {
         return new EqualsBuilder()
                 .appendSuper(super.equals(castOther))
                 .append(jobId, castOther.jobId)
-                .append(resumedAttempts, castOther.resumedAttempts)
+                .append(getResumedAttempts(),
+                        castOther.getResumedAttempts())
                 .isEquals();
     }
 
@@ -117,7 +198,7 @@ public class JobStatus extends JobStatusData {
         return new HashCodeBuilder()
                 .append(super.hashCode())
                 .append(jobId)
-                .append(resumedAttempts)
+                .append(getResumedAttempts())
                 .toHashCode();
     }
 
@@ -126,7 +207,12 @@ public class JobStatus extends JobStatusData {
         return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
                 .appendSuper(super.toString())
                 .append("name", jobId)
-                .append("resumedAttempts", resumedAttempts)
+                .append("resumedAttempts", getResumedAttempts())
                 .toString();
     }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        loadAttempts();
+        out.defaultWriteObject();
+    }
 }
@@ -18,6 +18,14 @@ import java.io.Serializable;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
@@ -35,13 +43,16 @@ public class JobStatusData
 
     private static final long serialVersionUID = 1L;
 
-    //TODO have this timeout here?  make it global and configurable? JobContext class?
-    /** Activity timeout. */
-    private static final long ACTIVITY_TIMEOUT = 10 * 1000;
+    private static final AtomicReferenceFieldUpdater<
+            JobStatusData, JobState> STATE = AtomicReferenceFieldUpdater
+                    .newUpdater(JobStatusData.class, JobState.class, "state");
+
+    /** Default activity timeout. */
+    public static final long DEFAULT_ACTIVITY_TIMEOUT = 10 * 1000;
 
     private double progress;
     private String note;
-    private final Properties properties = new Properties();
+    private final Properties properties = new StatusProperties();
     private Instant lastActivity;
     private boolean stopRequested;
 
@@ -49,6 +60,17 @@ public class JobStatusData
     //TODO is endTime required/useful, since lastActivity does it?
     private Instant endTime;
 
+    /** Recorded state, <code>null</code> if never recorded. */
+    private volatile JobState state;
+    /**
+     * Whether the recorded state is maintained by this JVM, in which
+     * case liveness does not need to be checked.
+     */
+    private transient volatile boolean live;
+
+    // Not status data, so not part of equality.
+    private long activityTimeout = DEFAULT_ACTIVITY_TIMEOUT;
+
     /**
      * Gets the end time.
      * @return end time or <code>null</code> if the job has not ended
@@ -80,26 +102,125 @@ public class JobStatusData
     }
 
     /**
-     * Gets the job execution state.
+     * <p>
+     * Gets the job execution state. The state is recorded as the job
+     * suite executes the job (see {@link #markRunning()},
+     * {@link #markStopping()}, {@link #markEnded()}), so obtaining it
+     * is cheap. Liveness is only checked for
+     * {@link JobState#RUNNING} or {@link JobState#STOPPING} states
+     * not maintained by this JVM (e.g., read from another process or
+     * from a previous execution), which are
+     * {@link JobState#ABORTED} if no longer active.
+     * </p>
+     * <p>
+     * Statuses without a recorded state (e.g., written by an older version)
+     * have their state derived from their times and progress.
+     * </p>
      * @return execution state
      */
     public JobState getState() {
-
-        // The order is important to establish state
-        if (isAborted())   { return JobState.ABORTED;   }
-        if (isStopped())   { return JobState.STOPPED;   }
-        if (isStopping())   { return JobState.STOPPING;   }
-        if (isCompleted()) { return JobState.COMPLETED; }
-        if (isPrematurlyEnded())  { return JobState.UNCOMPLETED;  }
-        if (isRunning())   { return JobState.RUNNING;   }
+        JobState recorded = state;
+        if (recorded == null) {
+            return deriveState();
+        }
+        if (!live && recorded.isOneOf(JobState.RUNNING, JobState.STOPPING)
+                && !isRunning()) {
+            return JobState.ABORTED;
+        }
+        return recorded;
+    }
+    // The order is important to establish state
+    private JobState deriveState() {
+        boolean running = isRunning();
+        boolean completed = isCompleted();
+        if (isStarted() && !running && endTime == null && !completed) {
+            return JobState.ABORTED;
+        }
+        if (stopRequested) {
+            return running ? JobState.STOPPING : JobState.STOPPED;
+        }
+        if (completed) {
+            return JobState.COMPLETED;
+        }
+        if (endTime != null) {
+            return JobState.UNCOMPLETED;
+        }
+        if (running) {
+            return JobState.RUNNING;
+        }
         return JobState.UNKNOWN;
     }
 
+    /**
+     * Gets the recorded state, as is, without checking liveness.
+     * Meant for status stores.
+     * @return recorded state or <code>null</code> if none was recorded
+     */
+    public JobState getRecordedState() {
+        return state;
+    }
+    /**
+     * Sets the recorded state, as is. Meant for status stores
+     * restoring a status. Use the <code>mark*</code> methods to
+     * change the state of an executing job.
+     * @param state recorded state
+     */
+    public void setRecordedState(JobState state) {
+        this.state = state;
+    }
+
+    /**
+     * Records the job is running in this JVM. Fails if it is
+     * already running here.
+     * @return <code>true</code> if the state changed
+     */
+    public boolean markRunning() {
+        JobState current;
+        do {
+            current = state;
+            if (live && current != null
+                    && current.isOneOf(JobState.RUNNING, JobState.STOPPING)) {
+                return false;
+            }
+        } while (!STATE.compareAndSet(this, current, JobState.RUNNING));
+        live = true;
+        return true;
+    }
+    /**
+     * Records the job stop was requested. Only a running job changes to
+     * {@link JobState#STOPPING}.
+     * @return <code>true</code> if the state changed
+     */
+    public boolean markStopping() {
+        stopRequested = true;
+        return STATE.compareAndSet(this, JobState.RUNNING, JobState.STOPPING);
+    }
+    /**
+     * Records the job ended, setting its final state:
+     * {@link JobState#STOPPED} if a stop was requested,
+     * {@link JobState#COMPLETED} if its progress reached 100%, or
+     * else {@link JobState#UNCOMPLETED}.
+     * @return the final state
+     */
+    public JobState markEnded() {
+        JobState endState;
+        if (stopRequested) {
+            endState = JobState.STOPPED;
+        } else if (isCompleted()) {
+            endState = JobState.COMPLETED;
+        } else {
+            endState = JobState.UNCOMPLETED;
+        }
+        state = endState;
+        live = false;
+        return endState;
+    }
+
     public boolean isStopped() {
-        return stopRequested && !isRunning();
+        return getState() == JobState.STOPPED;
     }
     public boolean isStopping() {
-        return stopRequested && isRunning();
+        return getState() == JobState.STOPPING;
     }
     public boolean isStopRequested() {
         return stopRequested;
@@ -147,9 +268,7 @@ public class JobStatusData
      * @since 1.1
      */
     public boolean isAborted() {
-        return isStarted() && !isRunning()
-                && getEndTime() == null
-                && !isCompleted();
+        return getState() == JobState.ABORTED;
     }
 
     /**
@@ -164,7 +283,26 @@ public class JobStatusData
             return false;
         }
         return ChronoUnit.MILLIS.between(
-                date, Instant.now()) < ACTIVITY_TIMEOUT;
+                date, Instant.now()) < activityTimeout;
+    }
+
+    /**
+     * Gets the number of milliseconds without activity after which
+     * a job is no longer considered running.
+     * @return activity timeout
+     */
+    public long getActivityTimeout() {
+        return activityTimeout;
+    }
+    /**
+     * Sets the number of milliseconds without activity after which
+     * a job is no longer considered running. Should be greater than
+     * the suite heartbeat interval. Statuses obtained from
+     * a job suite status get the suite activity timeout.
+     * @param activityTimeout activity timeout
+     */
+    public void setActivityTimeout(long activityTimeout) {
+        this.activityTimeout = activityTimeout;
     }
 
     /**
@@ -193,6 +331,13 @@ public class JobStatusData
         return note;
     }
 
+    /**
+     * Gets the job properties. Their values can be read and replaced by
+     * the job while this status gets saved, but value lists must not be
+     * modified in place. Jobs updating several properties together can
+     * synchronize on them for those to be saved all at once.
+     * @return properties
+     */
     public Properties getProperties() {
         return properties;
     }
@@ -204,6 +349,29 @@ public class JobStatusData
     public void setNote(String note) {
         this.note = note;
     }
+
+    /**
+     * Copies the data of this status to the given one, as it is now,
+     * even if modified at the same time (e.g., by a running job).
+     * @param target status receiving a copy of this status data
+     */
+    /*default*/ void copyTo(JobStatusData target) {
+        target.setProgress(progress);
+        target.setNote(note);
+        target.setStartTime(startTime);
+        target.setEndTime(endTime);
+        target.setLastActivity(lastActivity);
+        target.setStopRequested(stopRequested);
+        target.setRecordedState(state);
+        target.setActivityTimeout(activityTimeout);
+        Map<String, List<String>> props = new HashMap<>();
+        synchronized (properties) {
+            for (Entry<String, List<String>> entry : properties.entrySet()) {
+                props.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            }
+        }
+        target.getProperties().putAll(props);
+    }
     /**
      * Gets the null-safe duration between the execution start
      * and the end time, or last activity time if the end time is
@@ -262,6 +430,7 @@ public class JobStatusData
                 .append(stopRequested, castOther.stopRequested)
                 .append(startTime, castOther.startTime)
                 .append(endTime, castOther.endTime)
+                .append(state, castOther.state)
                 .isEquals();
     }
 
@@ -275,6 +444,7 @@ public class JobStatusData
                 .append(stopRequested)
                 .append(startTime)
                 .append(endTime)
+                .append(state)
                 .toHashCode();
     }
 
@@ -288,6 +458,92 @@ public class JobStatusData
                 .append("stopRequested", stopRequested)
                 .append("startTime", startTime)
                 .append("endTime", endTime)
+                .append("state", state)
                 .toString();
     }
+
+    // Properties locked on every access, so they can be copied
+    // while a job updates them.
+    private static class StatusProperties extends Properties {
+        private static final long serialVersionUID = 1L;
+        @Override
+        public synchronized List<String> get(Object key) {
+            return super.get(key);
+        }
+        @Override
+        public synchronized List<String> getOrDefault(
+                Object key, List<String> defaultValue) {
+            return super.getOrDefault(key, defaultValue);
+        }
+        @Override
+        public synchronized boolean containsKey(Object key) {
+            return super.containsKey(key);
+        }
+        @Override
+        public synchronized List<String> put(
+                String key, List<String> value) {
+            return super.put(key, value);
+        }
+        @Override
+        public synchronized void putAll(
+                Map<? extends String, ? extends List<String>> map) {
+            super.putAll(map);
+        }
+        @Override
+        public synchronized List<String> putIfAbsent(
+                String key, List<String> value) {
+            return super.putIfAbsent(key, value);
+        }
+        @Override
+        public synchronized List<String> remove(Object key) {
+            return super.remove(key);
+        }
+        @Override
+        public synchronized boolean remove(Object key, Object value) {
+            return super.remove(key, value);
+        }
+        @Override
+        public synchronized void clear() {
+            super.clear();
+        }
+        @Override
+        public synchronized List<String> replace(
+                String key, List<String> value) {
+            return super.replace(key, value);
+        }
+        @Override
+        public synchronized boolean replace(String key,
+                List<String> oldValue, List<String> newValue) {
+            return super.replace(key, oldValue, newValue);
+        }
+        @Override
+        public synchronized void replaceAll(BiFunction<? super String,
+                ? super List<String>, ? extends List<String>> function) {
+            super.replaceAll(function);
+        }
+        @Override
+        public synchronized List<String> computeIfAbsent(String key,
+                Function<? super String, ? extends List<String>> function) {
+            return super.computeIfAbsent(key, function);
+        }
+        @Override
+        public synchronized List<String> computeIfPresent(String key,
+                BiFunction<? super String, ? super List<String>,
+                        ? extends List<String>> function) {
+            return super.computeIfPresent(key, function);
+        }
+        @Override
+        public synchronized List<String> compute(String key,
+                BiFunction<? super String, ? super List<String>,
+                        ? extends List<String>> function) {
+            return super.compute(key, function);
+        }
+        @Override
+        public synchronized List<String> merge(
+                String key, List<String> value,
+                BiFunction<? super List<String>, ? super List<String>,
+                        ? extends List<String>> function) {
+            return super.merge(key, value, function);
+        }
+    }
 }
@@ -23,9 +23,16 @@ import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.stream.XMLStreamException;
 
@@ -40,7 +47,9 @@ import com.norconex.commons.lang.xml.XML;
 import com.norconex.jef5.JefException;
 import com.norconex.jef5.job.IJob;
 import com.norconex.jef5.job.group.IJobGroup;
+import com.norconex.jef5.status.store.IJobStatusStore;
 import com.norconex.jef5.suite.JobSuite;
+import com.norconex.jef5.suite.JobSuiteConfig;
 
 /**
  * Class responsible for a job suite index file.
@@ -65,7 +74,7 @@ public class JobSuiteStatus implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
-    private final JobSuiteStatusDAO dao;
+    private final IJobStatusStore store;
 
 //    private JobSuiteStatus(JobSuiteStatusDAO dao) {
 //        super();
@@ -77,26 +86,63 @@ public class JobSuiteStatus implements Serializable {
     private final TreeNode rootNode;
     private final Map<String, TreeNode> flatNodes = new ListOrderedMap<>();
 
+    /**
+     * Live status instances, one per job, when this suite status is the
+     * one of an executing suite.  They are the source of truth while
+     * jobs are running, the store being only used to persist them and
+     * to load them initially (e.g., on resume).  <code>null</code> when
+     * statuses are read from the store each time (e.g., from another JVM).
+     */
+    private final transient Map<String, JobStatus> liveStatuses;
+    /**
+     * Nodes of jobs added to an executing suite (see
+     * {@link #addJob(String, IJob)}), apart from the suite tree (and
+     * index), with the ids of jobs added to each parent.
+     * <code>null</code> when not the status of an executing suite.
+     */
+    private final transient Map<String, TreeNode> addedNodes;
+    private final transient Map<String, Set<String>> addedChildIds;
+
+    private long heartbeatInterval = JobSuiteConfig.DEFAULT_HEARTBEAT_INTERVAL;
+    private long activityTimeout = JobSuiteConfig.DEFAULT_ACTIVITY_TIMEOUT;
+
     private JobSuiteStatus(
             /*String suiteName, */
             TreeNode rootNode,
 //            Map<String, TreeNode> flattenNodes,
-            JobSuiteStatusDAO dao) {
+            IJobStatusStore store,
+            boolean live) {
 //        this.suiteName = suiteName;
         this.rootNode = rootNode;
-        this.dao = dao;
+        this.store = store;
+        this.liveStatuses = live ? new ConcurrentHashMap<>() : null;
+        this.addedNodes = live ? new ConcurrentHashMap<>() : null;
+        this.addedChildIds = live ? new ConcurrentHashMap<>() : null;
 //        this.flatNodes.putAll(flattenNodes);
 
         flattenNodes(rootNode, flatNodes);
     }
 
+    /**
+     * Gets the status of an executing job suite. Job statuses obtained
+     * from the returned instance are kept in memory and shared, so changes
+     * made to them by the suite are reflected immediately.  They are
+     * read from the suite status store the first time they are
+     * requested only.
+     * @param jobSuite job suite
+     * @return job suite status
+     * @throws IOException problem creating suite status
+     */
     public static JobSuiteStatus getInstance(JobSuite jobSuite) throws IOException {
         if (jobSuite == null) {
             return null;
         }
-        return new JobSuiteStatus(
+        JobSuiteStatus status = new JobSuiteStatus(
                 loadJobTree(null, jobSuite.getRootJob()),
-                jobSuite.getJobSuiteStatusDAO());
+                jobSuite.getJobStatusStore(), true);
+        status.heartbeatInterval = jobSuite.getHeartbeatInterval();
+        status.activityTimeout = jobSuite.getActivityTimeout();
+        return status;
     }
 
 //  //TODO move these writeXX methods to JobSessionFacade??
@@ -184,14 +230,14 @@ public class JobSuiteStatus implements Serializable {
 
         if (file.exists()) {
             XML xml = new XML(file);
-            JobSuiteStatusDAO dao = null;
 
             TreeNode tree = loadJobTree(null, xml.getXML("job"));
             if (tree == null) {
                 return null;
             }
-            dao = new JobSuiteStatusDAO(tree.jobId, suiteIndex.getParent());
-            return new JobSuiteStatus(tree, dao);
+            IJobStatusStore store =
+                    loadStore(xml, tree.jobId, suiteIndex.getParent());
+            return loadHeartbeat(xml, new JobSuiteStatus(tree, store, false));
         }
         return null;
     }
@@ -208,12 +254,47 @@ public class JobSuiteStatus implements Serializable {
             if (tree == null) {
                 return null;
             }
-            JobSuiteStatusDAO dao =
-                    new JobSuiteStatusDAO(tree.jobId, statusDir);
-            return new JobSuiteStatus(tree, dao);
+            IJobStatusStore store = loadStore(xml, tree.jobId, statusDir);
+            return loadHeartbeat(xml, new JobSuiteStatus(tree, store, false));
         }
     }
 
+    // Indices written before heartbeat settings were recorded get defaults.
+    private static JobSuiteStatus loadHeartbeat(
+            XML xml, JobSuiteStatus status) {
+        status.heartbeatInterval = xml.getLong(
+                "heartbeat/@interval", status.heartbeatInterval);
+        status.activityTimeout = xml.getLong(
+                "heartbeat/@activityTimeout", status.activityTimeout);
+        return status;
+    }
+
+    // Recreates the store used by the suite, defaulting to the DAO for
+    // indices written before stores were recorded.
+    private static IJobStatusStore loadStore(
+            XML xml, String suiteId, Path statusDir) throws IOException {
+        String storeClass = xml.getString("store/@class", null);
+        IJobStatusStore store;
+        if (storeClass == null) {
+            store = new JobSuiteStatusDAO();
+        } else {
+            try {
+                store = (IJobStatusStore)
+                        Class.forName(storeClass).newInstance();
+            } catch (ClassNotFoundException | InstantiationException
+                    | IllegalAccessException | ClassCastException e) {
+                throw new IOException(
+                        "Cannot create job status store: " + storeClass, e);
+            }
+            XML storeXML = xml.getXML("store");
+            if (storeXML != null) {
+                store.loadFromIndex(storeXML);
+            }
+        }
+        store.open(suiteId, statusDir);
+        return store;
+    }
+
 
 //    public String toXML() {
 //        return null;
@@ -237,7 +318,17 @@ public class JobSuiteStatus implements Serializable {
             EnhancedXMLStreamWriter w = new EnhancedXMLStreamWriter(writer);
             w.writeStartDocument("UTF-8", "1.0");
             w.writeStartElement("suite-index");
-            writeSuiteIndexJob(w, getRootId());
+            w.writeStartElement("store");
+            w.writeAttributeString("class", store.getClass().getName());
+            store.saveToIndex(w);
+            w.writeEndElement();
+            w.writeStartElement("heartbeat");
+            w.writeAttributeString(
+                    "interval", Long.toString(heartbeatInterval));
+            w.writeAttributeString(
+                    "activityTimeout", Long.toString(activityTimeout));
+            w.writeEndElement();
+            writeSuiteIndexJob(w, rootNode);
             w.writeEndElement();
             w.writeEndDocument();
             w.flush();
@@ -245,12 +336,13 @@ public class JobSuiteStatus implements Serializable {
             throw new IOException("Could not write suite status as XML.", e);
         }
     }
-    private void writeSuiteIndexJob(EnhancedXMLStreamWriter w, String jobId)
+    // Jobs added while running are not indexed.
+    private void writeSuiteIndexJob(EnhancedXMLStreamWriter w, TreeNode node)
             throws XMLStreamException  {
         w.writeStartElement("job");
-        w.writeAttributeString("id", jobId);
-        for (String childId : getChildIds(jobId)) {
-            writeSuiteIndexJob(w, childId);
+        w.writeAttributeString("id", node.jobId);
+        for (TreeNode child : node.children) {
+            writeSuiteIndexJob(w, child);
         }
         w.writeEndElement();
     }
@@ -320,6 +412,77 @@ public class JobSuiteStatus implements Serializable {
     }
 
 
+    /**
+     * Adds a job (and its children if a job group) to the status of an
+     * executing suite, as a child of the given parent job. Meant for
+     * job groups creating jobs as they run, so their statuses are
+     * obtained like any other. Added jobs are not part of the suite
+     * index, and they are only kept in memory until removed
+     * (see {@link #removeJob(String)}).
+     * @param parentId parent job id
+     * @param job job to add
+     * @throws JefException if a job of the same id is already part
+     *         of the suite
+     */
+    public void addJob(String parentId, IJob job) {
+        if (addedNodes == null) {
+            throw new IllegalStateException(
+                    "Jobs can only be added to an executing suite.");
+        }
+        Map<String, TreeNode> nodes = new HashMap<>();
+        try {
+            flattenNodes(loadJobTree(parentId, job), nodes);
+        } catch (IOException e) {
+            throw new JefException("Cannot add job: " + job.getId(), e);
+        }
+        synchronized (addedNodes) {
+            for (String id : nodes.keySet()) {
+                if (getNode(id) != null) {
+                    throw new JefException("Cannot add job. A job with "
+                            + "the same id is already part of the suite: "
+                            + id);
+                }
+            }
+            addedNodes.putAll(nodes);
+            addedChildIds.computeIfAbsent(parentId,
+                    id -> ConcurrentHashMap.newKeySet()).add(job.getId());
+        }
+    }
+    /**
+     * Removes a job added with {@link #addJob(String, IJob)}, along with
+     * its children and their in-memory statuses. Statuses remain
+     * in the status store.
+     * @param jobId id of the job to remove
+     */
+    public void removeJob(String jobId) {
+        if (addedNodes == null) {
+            return;
+        }
+        synchronized (addedNodes) {
+            TreeNode node = addedNodes.get(jobId);
+            if (node == null) {
+                return;
+            }
+            Map<String, TreeNode> nodes = new HashMap<>();
+            flattenNodes(node, nodes);
+            for (String id : nodes.keySet()) {
+                addedNodes.remove(id);
+                liveStatuses.remove(id);
+            }
+            addedChildIds.computeIfPresent(node.parentId, (id, childIds) -> {
+                childIds.remove(jobId);
+                return childIds.isEmpty() ? null : childIds;
+            });
+        }
+    }
+    private TreeNode getNode(String jobId) {
+        TreeNode node = flatNodes.get(jobId);
+        if (node == null && addedNodes != null) {
+            node = addedNodes.get(jobId);
+        }
+        return node;
+    }
+
     public JobStatus getRootStatus() {
         return read(rootNode.jobId);
     }
@@ -334,14 +497,116 @@ public class JobSuiteStatus implements Serializable {
         return read(jobId);
     }
     private JobStatus read(String jobId) {
+        if (jobId == null) {
+            return null;
+        }
+        if (liveStatuses != null) {
+            return liveStatuses.computeIfAbsent(jobId, this::readFromStore);
+        }
+        return readFromStore(jobId);
+    }
+    private JobStatus readFromStore(String jobId) {
         try {
-            return dao.read(jobId);
+            JobStatus status = store.read(jobId);
+            if (status != null) {
+                status.setActivityTimeout(activityTimeout);
+            }
+            return status;
         } catch (IOException e) {
             throw new JefException("Cannot read status information for job: "
                     + jobId, e);
         }
     }
 
+    /**
+     * Reads the statuses of all jobs from the store at once, using up to
+     * the given number of threads, so they are in memory before
+     * the suite starts executing (e.g., on resume).
+     * Concurrent reads mainly benefit slow or remote file systems.
+     * Only applies to the status of an executing suite
+     * (see {@link #getInstance(JobSuite)}), does nothing otherwise.
+     * @param threads maximum number of statuses read concurrently
+     */
+    public void preloadStatuses(int threads) {
+        if (liveStatuses == null) {
+            return;
+        }
+        List<String> jobIds = new ArrayList<>(flatNodes.size());
+        for (String jobId : flatNodes.keySet()) {
+            if (!liveStatuses.containsKey(jobId)) {
+                jobIds.add(jobId);
+            }
+        }
+        int realThreads = Math.min(threads, jobIds.size());
+        if (realThreads <= 1) {
+            jobIds.forEach(this::read);
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(realThreads, r -> {
+            Thread thread = new Thread(r, "JEF Status Loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(jobIds.size());
+            for (String jobId : jobIds) {
+                // Not reading within computeIfAbsent, to not lock other
+                // entries during I/O.
+                futures.add(pool.submit(() -> liveStatuses.putIfAbsent(
+                        jobId, readFromStore(jobId))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JefException(
+                    "Interrupted while loading job statuses.", e);
+        } catch (ExecutionException e) {
+            throw new JefException("Cannot load job statuses.", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets the minimum interval in milliseconds at which running jobs of
+     * the suite record they are still alive.
+     * @return heartbeat interval
+     */
+    public long getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+    /**
+     * Gets the number of milliseconds without activity after which
+     * jobs of the suite are no longer considered running. Applied to
+     * job statuses obtained from this instance.
+     * @return activity timeout
+     */
+    public long getActivityTimeout() {
+        return activityTimeout;
+    }
+
+    /**
+     * Gets the store statuses are read from.
+     * @return job status store
+     */
+    public IJobStatusStore getJobStatusStore() {
+        return store;
+    }
+
+    /**
+     * Closes the store statuses are read from. Does nothing for the
+     * status of an executing suite, which closes the store itself.
+     * @throws IOException problem closing the store
+     */
+    public void close() throws IOException {
+        if (liveStatuses == null) {
+            store.close();
+        }
+    }
+
     public List<JobStatus> getAllStatuses() {
         List<JobStatus> list = new ArrayList<>(flatNodes.size());
         for (TreeNode treeNode : flatNodes.values()) {
@@ -361,14 +626,10 @@ public class JobSuiteStatus implements Serializable {
         return getChildStatuses(jobStatus.getJobId());
     }
     public List<JobStatus> getChildStatuses(String jobId) {
-        TreeNode treeNode = flatNodes.get(jobId);
-        if (treeNode == null) {
-            return new ArrayList<>(0);
-        }
-        List<TreeNode> treeNodes = treeNode.children;
-        List<JobStatus> statuses = new ArrayList<>(treeNodes.size());
-        for (TreeNode childNode : treeNodes) {
-            statuses.add(read(childNode.jobId));
+        List<String> childIds = getChildIds(jobId);
+        List<JobStatus> statuses = new ArrayList<>(childIds.size());
+        for (String childId : childIds) {
+            statuses.add(read(childId));
         }
         return statuses;
     }
@@ -376,7 +637,7 @@ public class JobSuiteStatus implements Serializable {
         return getChildIds(jobStatus.getJobId());
     }
     public List<String> getChildIds(String jobId) {
-        TreeNode treeNode = flatNodes.get(jobId);
+        TreeNode treeNode = getNode(jobId);
         List<String> ids = new ArrayList<>();
         if (treeNode == null) {
             return ids;
@@ -385,6 +646,12 @@ public class JobSuiteStatus implements Serializable {
         for (TreeNode node : treeNode.children) {
             ids.add(node.jobId);
         }
+        if (addedChildIds != null) {
+            Set<String> addedIds = addedChildIds.get(jobId);
+            if (addedIds != null) {
+                ids.addAll(addedIds);
+            }
+        }
         return ids;
     }
 
@@ -392,7 +659,7 @@ public class JobSuiteStatus implements Serializable {
         return getParentStatus(jobStatus.getJobId());
     }
     public JobStatus getParentStatus(String jobId) {
-        TreeNode treeNode = flatNodes.get(jobId);
+        TreeNode treeNode = getNode(jobId);
         if (treeNode == null) {
             return null;
         }
@@ -402,7 +669,7 @@ public class JobSuiteStatus implements Serializable {
         return getParentId(jobStatus.getJobId());
     }
     public String getParentId(String jobId) {
-        TreeNode treeNode = flatNodes.get(jobId);
+        TreeNode treeNode = getNode(jobId);
         if (treeNode == null) {
             return null;
         }
@@ -500,15 +767,19 @@ public class JobSuiteStatus implements Serializable {
         }
         JobSuiteStatus castOther = (JobSuiteStatus) other;
         return new EqualsBuilder()
-                .append(dao, castOther.dao)
+                .append(store, castOther.store)
                 .append(flatNodes, castOther.flatNodes)
+                .append(heartbeatInterval, castOther.heartbeatInterval)
+                .append(activityTimeout, castOther.activityTimeout)
                 .isEquals();
     }
     @Override
     public int hashCode() {
         return new HashCodeBuilder()
-                .append(dao)
+                .append(store)
                 .append(flatNodes)
+                .append(heartbeatInterval)
+                .append(activityTimeout)
                 .toHashCode();
     }
 
@@ -14,21 +14,39 @@
  */
 package com.norconex.jef5.status;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
 import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.io.FileExistsException;
 import org.apache.commons.io.FileUtils;
@@ -42,6 +60,12 @@ import org.slf4j.LoggerFactory;
 
 import com.norconex.commons.lang.file.FileUtil;
 import com.norconex.commons.lang.map.Properties;
+import com.norconex.commons.lang.xml.EnhancedXMLStreamWriter;
+import com.norconex.commons.lang.xml.XML;
+import com.norconex.jef5.status.store.IJobStatusStore;
+import com.norconex.jef5.status.store.JobStatusCodec;
+import com.norconex.jef5.status.store.PeriodicSync;
+import com.norconex.jef5.status.store.StatusDurability;
 
 /**
  * <p>
@@ -50,6 +74,51 @@ import com.norconex.commons.lang.map.Properties;
  * status directory is explicitly set, it defaults to:
  * <code>&lt;user.home&gt;/Norconex/jef/workdir</code>
  * </p>
+ * <p>
+ * Statuses are written in a compact binary format
+ * (see {@link JobStatusCodec}). For troubleshooting, they can be written
+ * as human-readable text properties instead
+ * (see {@link #setTextFormat(boolean)}). Both formats can always be read.
+ * </p>
+ * <p>
+ * Statuses are written to a temporary file first, then renamed, so a
+ * status file is never left partially written.
+ * How they are forced to disk depends on the durability
+ * (see {@link #setDurability(StatusDurability)}):
+ * </p>
+ * <ul>
+ *   <li>{@link StatusDurability#PAGE_CACHE} (default): never forced.</li>
+ *   <li>{@link StatusDurability#BATCHED}: temporary files are forced
+ *       and renamed in batches, once per sync interval. Statuses only
+ *       become visible to other processes once renamed.</li>
+ *   <li>{@link StatusDurability#STRICT}: every status is forced to disk,
+ *       renamed, and the rename forced to disk before a write
+ *       returns.</li>
+ * </ul>
+ * <p>
+ * Previous attempts of a job (resumed after failing or being stopped)
+ * are kept in files with the attempt number appended
+ * (e.g., <code>myjob.job.1</code>). They are indexed from a single
+ * directory listing the first time a status is read and are
+ * only loaded when a job status needs them
+ * (see {@link JobStatus#getResumedAttempts()}).
+ * </p>
+ * <p>
+ * By default, all status files are stored directly under the status
+ * directory. Suites with a very large number of jobs can spread them
+ * across 256 sub-directories instead, based on a two-level hash of
+ * their file name (see {@link #setHashedLayout(boolean)}), to keep
+ * directory lookups fast. The layout is recorded in the suite index.
+ * Status directories created with a different layout can be
+ * converted with {@link #migrateLayout()}.
+ * </p>
+ * <p>
+ * Heartbeats for all running jobs (see {@link #touch(Collection)}) are
+ * recorded in a single <code>suite.heartbeat</code> file, rewritten
+ * on each heartbeat, instead of touching every job file. Job status
+ * last activity is the most recent of its file modification date and
+ * the last heartbeat listing it.
+ * </p>
  *
  * <h3>XML configuration usage:</h3>
  * <pre>
@@ -83,7 +152,8 @@ import com.norconex.commons.lang.map.Properties;
 //TODO read/write index file from here??
 
 public class JobSuiteStatusDAO
-        implements Serializable {// IJefEventListener, IXMLConfigurable {
+        implements IJobStatusStore, Serializable {
+        // IJefEventListener, IXMLConfigurable {
 
     private static final long serialVersionUID = 1L;
 
@@ -97,20 +167,131 @@ public class JobSuiteStatusDAO
 //    public static final String SESSION_SUBDIR = "session";
 //    public static final String SESSION_BACKUP_SUBDIR = "backups/session";
 
-    private final File statusDir;
+    /** Codec instances are not thread-safe and are reused per thread. */
+    private static final ThreadLocal<JobStatusCodec> CODEC =
+            ThreadLocal.withInitial(JobStatusCodec::new);
+    private static final String TMP_EXTENSION = ".tmp";
+    private static final String JOB_EXTENSION = ".job";
+    private static final String LAYOUT_HASHED = "hashed";
+    private static final String LAYOUT_FLAT = "flat";
+    /** Depth of job files under the status directory, hashed layout. */
+    private static final int HASHED_DEPTH = 3;
+    private static final String HEARTBEAT_FILE = "suite.heartbeat";
+    /** Minimum milliseconds between checks for a new heartbeat. */
+    private static final long HEARTBEAT_CHECK_INTERVAL = 1000;
+    private static final AtomicLong TMP_COUNTER = new AtomicLong();
+
+    private File statusDir;
 //    private final Path workdir;
-    private final String suiteId;
+    private String suiteId;
+    private boolean textFormat;
+    private boolean hashedLayout;
+    private StatusDurability durability = StatusDurability.PAGE_CACHE;
+    private long syncInterval = PeriodicSync.DEFAULT_SYNC_INTERVAL;
+
+    /** Temporary files waiting to be synced, keyed by status file. */
+    private transient Map<Path, Path> pendingRenames = new HashMap<>();
+    private transient volatile PeriodicSync periodicSync;
+    /** Resumed attempt counts, keyed by job file base name. */
+    private transient volatile Map<String, Integer> attemptIndex;
+    private transient volatile Heartbeat heartbeat;
 
+    public JobSuiteStatusDAO() {
+        super();
+    }
 //    public JobSuiteStatusDAO(/*Path workdir,*/ String suiteId) {
     public JobSuiteStatusDAO(String suiteId, Path statusDir) {
         super();
 //        this.workdir = workdir;
+        open(suiteId, statusDir);
+    }
+
+    @Override
+    public final void open(String suiteId, Path statusDir) {
         Objects.requireNonNull(suiteId, "suiteId");
         Objects.requireNonNull(statusDir, "statusDir");
 
         this.suiteId = suiteId;
         this.statusDir = statusDir.toFile();
+        this.attemptIndex = null;
+        this.heartbeat = null;
     }
+
+    /**
+     * Deletes temporary files of writes that never got renamed
+     * (e.g., the JVM died before a batched sync), other than
+     * those pending in this store.
+     */
+    @Override
+    public void recover() {
+        if (!statusDir.exists()) {
+            return;
+        }
+        List<Path> staleFiles;
+        try (Stream<Path> paths =
+                Files.walk(statusDir.toPath(), HASHED_DEPTH)) {
+            staleFiles = paths.filter(p -> isTempFileName(
+                    p.getFileName().toString()))
+                    .collect(Collectors.toList());
+        } catch (IOException | UncheckedIOException e) {
+            LOG.warn("Could not look for stale temporary files in: {}",
+                    statusDir, e);
+            return;
+        }
+        synchronized (pendingRenames) {
+            staleFiles.removeAll(pendingRenames.values());
+        }
+        for (Path file : staleFiles) {
+            LOG.debug("Deleting stale temporary status file: {}", file);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOG.warn("Could not delete stale temporary status file: {}",
+                        file, e);
+            }
+        }
+    }
+    @Override
+    public void close() throws IOException {
+        // Files are not kept open, only pending renames need flushing.
+        if (periodicSync != null) {
+            periodicSync.stop();
+            syncPending();
+        }
+    }
+    @Override
+    public StatusDurability getDurability() {
+        return durability;
+    }
+    /**
+     * Sets how status files are forced to disk. Default is
+     * {@link StatusDurability#PAGE_CACHE}.
+     * @param durability status durability
+     */
+    public void setDurability(StatusDurability durability) {
+        Objects.requireNonNull(durability, "durability");
+        if (durability == StatusDurability.EPHEMERAL) {
+            throw new IllegalArgumentException(
+                    "File-based status store cannot be ephemeral.");
+        }
+        this.durability = durability;
+    }
+    /**
+     * Gets milliseconds between batched syncs.
+     * @return sync interval
+     */
+    public long getSyncInterval() {
+        return syncInterval;
+    }
+    /**
+     * Sets milliseconds between batched syncs. Only applies to
+     * {@link StatusDurability#BATCHED} durability.
+     * @param syncInterval sync interval
+     */
+    public void setSyncInterval(long syncInterval) {
+        this.syncInterval = syncInterval;
+    }
+
 //    public Path getWorkdir() {
 //        return workdir;
 //    }
@@ -120,6 +301,104 @@ public class JobSuiteStatusDAO
     public Path getStatusDir() {
         return statusDir.toPath();
     }
+
+    /**
+     * Whether statuses are written as text properties instead of
+     * the default binary format.
+     * @return <code>true</code> if writing text
+     */
+    public boolean isTextFormat() {
+        return textFormat;
+    }
+    /**
+     * Sets whether to write statuses as text properties instead of
+     * the default binary format. Text is slower to write and read,
+     * but makes it easy to inspect status files when troubleshooting.
+     * @param textFormat <code>true</code> to write text
+     */
+    public void setTextFormat(boolean textFormat) {
+        this.textFormat = textFormat;
+    }
+
+    /**
+     * Whether status files are spread across hashed sub-directories.
+     * @return <code>true</code> if using the hashed layout
+     */
+    public boolean isHashedLayout() {
+        return hashedLayout;
+    }
+    /**
+     * Sets whether to spread status files across two levels of hashed
+     * sub-directories (16 each) instead of storing them all directly
+     * under the status directory. Recommended for suites of more than
+     * a few thousand jobs, where large directories slow down
+     * file lookups, backups, and deletions.
+     * Changing the layout of an existing status directory requires
+     * a migration (see {@link #migrateLayout()}).
+     * @param hashedLayout <code>true</code> to use the hashed layout
+     */
+    public void setHashedLayout(boolean hashedLayout) {
+        this.hashedLayout = hashedLayout;
+        this.attemptIndex = null;
+    }
+
+    @Override
+    public void saveToIndex(EnhancedXMLStreamWriter writer)
+            throws XMLStreamException {
+        writer.writeAttributeString(
+                "layout", hashedLayout ? LAYOUT_HASHED : LAYOUT_FLAT);
+    }
+    @Override
+    public void loadFromIndex(XML xml) {
+        setHashedLayout(LAYOUT_HASHED.equals(
+                xml.getString("@layout", LAYOUT_FLAT)));
+    }
+
+    /**
+     * Moves existing status files (including previous attempts) to where
+     * the current layout expects them, removing hashed sub-directories
+     * left empty. Useful when changing the layout of a suite that
+     * needs to be resumed. Pending writes are synced first.
+     * Should not be invoked while jobs are running.
+     * @return how many files were moved
+     * @throws IOException problem moving status files
+     */
+    public synchronized int migrateLayout() throws IOException {
+        close();
+        if (!statusDir.exists()) {
+            return 0;
+        }
+        int count = 0;
+        for (Path file : listJobFiles()) {
+            String name = file.getFileName().toString();
+            Path target = resolveJobDir(toBaseName(name)).resolve(name);
+            if (!target.equals(file)) {
+                Files.createDirectories(target.getParent());
+                Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+                count++;
+            }
+        }
+        if (!hashedLayout) {
+            // Deepest first, so parents are empty when reached.
+            List<Path> dirs;
+            try (Stream<Path> paths = Files.walk(
+                    statusDir.toPath(), HASHED_DEPTH - 1)) {
+                dirs = paths.filter(p -> !p.equals(statusDir.toPath())
+                        && Files.isDirectory(p)
+                        && isHashedDirName(p.getFileName().toString()))
+                        .sorted(Collections.reverseOrder())
+                        .collect(Collectors.toList());
+            }
+            for (Path dir : dirs) {
+                // Only deletes empty directories.
+                dir.toFile().delete();
+            }
+        }
+        attemptIndex = null;
+        LOG.info("Moved {} status files to {} layout in: {}", count,
+                hashedLayout ? LAYOUT_HASHED : LAYOUT_FLAT, statusDir);
+        return count;
+    }
 //    public Path getSessionDir() {
 //        return getSessionDir(workdir, suiteId);
 //    }
@@ -153,57 +432,264 @@ public class JobSuiteStatusDAO
 
 
 
+    @Override
     public final void write(final JobStatus js) throws IOException {
+        Path file = resolveJobFile(js.getJobId());
+        LOG.trace("Writing status file: {}", file);
+        Files.createDirectories(file.getParent());
+        ByteBuffer content;
+        if (textFormat) {
+            content = toText(js.getJobId(), js);
+        } else {
+            content = CODEC.get().begin().putHeader().putData(js).end();
+        }
+
+        Path tmpFile = writeTempFile(
+                file, content, durability == StatusDurability.STRICT);
+
+        if (durability == StatusDurability.BATCHED) {
+            Path supersededFile;
+            synchronized (pendingRenames) {
+                supersededFile = pendingRenames.put(file, tmpFile);
+            }
+            if (supersededFile != null) {
+                Files.deleteIfExists(supersededFile);
+            }
+            periodicSync().markDirty();
+            return;
+        }
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        if (durability == StatusDurability.STRICT) {
+            PeriodicSync.forceDirectory(file.getParent());
+        }
+    }
 
-        //The JobStatusData should not be written/read here??? so rename arg to JobStatus?
+    /**
+     * Writes a previous attempt to its own file, next to the job file.
+     * Attempts are always written synchronously.
+     * @param jobId job unique identifier
+     * @param attemptNo attempt number, starting at 1 for the oldest
+     * @param attempt attempt status
+     * @throws IOException problem writing the attempt
+     */
+    @Override
+    public final void writeAttempt(String jobId, int attemptNo,
+            JobStatusData attempt) throws IOException {
+        Path file = resolveJobFile(jobId, attemptNo);
+        LOG.trace("Writing attempt status file: {}", file);
+        Files.createDirectories(file.getParent());
+        ByteBuffer content;
+        if (textFormat) {
+            content = toText(jobId, attempt);
+        } else {
+            content = CODEC.get().begin().putHeader().putData(attempt).end();
+        }
+        boolean strict = durability == StatusDurability.STRICT;
+        Path tmpFile = writeTempFile(file, content, strict);
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        if (strict) {
+            PeriodicSync.forceDirectory(file.getParent());
+        }
+        Map<String, Integer> index = attemptIndex;
+        if (index != null) {
+            index.merge(FileUtil.toSafeFileName(jobId), attemptNo, Math::max);
+        }
+    }
+
+    // Unique temp file so concurrent/pending writes do not collide.
+    private Path writeTempFile(Path file, ByteBuffer content, boolean force)
+            throws IOException {
+        Path tmpFile = file.resolveSibling(file.getFileName() + "."
+                + TMP_COUNTER.incrementAndGet() + TMP_EXTENSION);
+        try (FileChannel channel = FileChannel.open(tmpFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            if (force) {
+                channel.force(true);
+            }
+        }
+        return tmpFile;
+    }
+
+    // Forces and renames pending temporary files, in a single batch.
+    private synchronized void syncPending() throws IOException {
+        Map<Path, Path> batch;
+        synchronized (pendingRenames) {
+            if (pendingRenames.isEmpty()) {
+                return;
+            }
+            batch = new HashMap<>(pendingRenames);
+            pendingRenames.clear();
+        }
+        for (Path tmpFile : batch.values()) {
+            try (FileChannel channel = FileChannel.open(
+                    tmpFile, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        Set<Path> dirs = new HashSet<>();
+        for (Entry<Path, Path> entry : batch.entrySet()) {
+            Files.move(entry.getValue(), entry.getKey(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            dirs.add(entry.getKey().getParent());
+        }
+        for (Path dir : dirs) {
+            PeriodicSync.forceDirectory(dir);
+        }
+    }
+    private PeriodicSync periodicSync() {
+        if (periodicSync == null) {
+            synchronized (pendingRenames) {
+                if (periodicSync == null) {
+                    periodicSync = new PeriodicSync(
+                            "JEF Status Sync", syncInterval, this::syncPending);
+                }
+            }
+        }
+        return periodicSync;
+    }
 
+    private ByteBuffer toText(final String jobId, final JobStatusData js)
+            throws IOException {
         Properties config = new Properties();
-        config.set("jobId", js.getJobId());
+        config.set("jobId", jobId);
         config.set("progress", js.getProgress());
         config.set("note", js.getNote());
         config.set("startTime", js.getStartTime());
         config.set("endTime", js.getEndTime());
 
-        //TODO store different status for stopping and stopped?
-        if (js.isStopping() || js.isStopped()) {
+        if (js.isStopRequested()) {
             config.set("stopRequested", true);
         }
+        if (js.getRecordedState() != null) {
+            config.set("state", js.getRecordedState().name());
+        }
         Properties props = js.getProperties();
         for (Entry<String, List<String>> entry : props.entrySet()) {
             config.put("." + entry.getKey(), entry.getValue());
         }
-        Path file = resolveJobFile(js.getJobId());
-        LOG.trace("Writing status file: {}", file);
-
-
         StringWriter sw = new StringWriter();
         config.storeToProperties(sw);
-
-        Files.createDirectories(file.getParent());
-        try (BufferedWriter w = Files.newBufferedWriter(file)) {
-            w.write(sw.toString());
-        }
+        return StandardCharsets.UTF_8.encode(sw.toString());
     }
 
+    @Override
     public final JobStatus read(final String jobId) throws IOException {
 
         if (jobId == null) {
             return null;
         }
 
-        Set<JobStatusData> attempts = new TreeSet<>();
-        Path file = null;
-        int attemptNo = 1;
-        while ((file = resolveJobFile(jobId, attemptNo++)).toFile().exists()) {
-            JobStatusData data = new JobStatusData();
-            read(data, file);
-            attempts.add(data);
-        }
-        JobStatus jobStatus = new JobStatus(jobId, attempts);
+        int attemptCount = getAttemptIndex().getOrDefault(
+                FileUtil.toSafeFileName(jobId), 0);
+        JobStatus jobStatus = new JobStatus(
+                jobId, attemptCount, () -> readAttempts(jobId, attemptCount));
         read(jobStatus, resolveJobFile(jobId));
+
+        Heartbeat beat = readHeartbeat();
+        if (beat.jobIds.contains(jobId) && (jobStatus.getLastActivity() == null
+                || beat.time.isAfter(jobStatus.getLastActivity()))) {
+            jobStatus.setLastActivity(beat.time);
+        }
         return jobStatus;
     }
 
+    private Set<JobStatusData> readAttempts(String jobId, int attemptCount) {
+        Set<JobStatusData> attempts = new TreeSet<>();
+        try {
+            for (int attemptNo = 1; attemptNo <= attemptCount; attemptNo++) {
+                Path file = resolveJobFile(jobId, attemptNo);
+                if (file.toFile().exists()) {
+                    JobStatusData data = new JobStatusData();
+                    read(data, file);
+                    attempts.add(data);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(
+                    "Could not read previous attempts of job: " + jobId, e);
+        }
+        return attempts;
+    }
+
+    // Lists attempt files once, instead of probing files on every read.
+    // Concurrent readers (e.g., preloading statuses) wait for the first
+    // one to build the index.
+    private Map<String, Integer> getAttemptIndex() throws IOException {
+        Map<String, Integer> index = attemptIndex;
+        if (index != null) {
+            return index;
+        }
+        synchronized (this) {
+            index = attemptIndex;
+            if (index != null) {
+                return index;
+            }
+            return buildAttemptIndex();
+        }
+    }
+    private Map<String, Integer> buildAttemptIndex() throws IOException {
+        if (!statusDir.exists()) {
+            // Nothing written yet, check again next time.
+            return Collections.emptyMap();
+        }
+        Map<String, Integer> index = new ConcurrentHashMap<>();
+        for (Path file : listJobFiles()) {
+            String name = file.getFileName().toString();
+            String baseName = toBaseName(name);
+            String suffix = name.substring(
+                    baseName.length() + JOB_EXTENSION.length());
+            if (!suffix.isEmpty()) {
+                index.merge(baseName,
+                        Integer.valueOf(suffix.substring(1)), Math::max);
+            }
+        }
+        attemptIndex = index;
+        return index;
+    }
+
+    // Status files of current and previous attempts, in any layout.
+    // Temporary files are skipped.
+    private List<Path> listJobFiles() throws IOException {
+        try (Stream<Path> paths =
+                Files.walk(statusDir.toPath(), HASHED_DEPTH)) {
+            return paths.filter(p -> isJobFileName(
+                    p.getFileName().toString()) && Files.isRegularFile(p))
+                    .collect(Collectors.toList());
+        }
+    }
+    private static boolean isJobFileName(String name) {
+        int extIndex = name.lastIndexOf(JOB_EXTENSION);
+        if (extIndex < 1) {
+            return false;
+        }
+        String suffix = name.substring(extIndex + JOB_EXTENSION.length());
+        return suffix.isEmpty() || (suffix.charAt(0) == '.'
+                && StringUtils.isNumeric(suffix.substring(1)));
+    }
+    // Temporary files are named after their target file, a counter
+    // value, and the temporary extension.
+    private static boolean isTempFileName(String name) {
+        if (!name.endsWith(TMP_EXTENSION)) {
+            return false;
+        }
+        String counter = StringUtils.substringAfterLast(
+                StringUtils.removeEnd(name, TMP_EXTENSION), ".");
+        return StringUtils.isNumeric(counter);
+    }
+    private static String toBaseName(String jobFileName) {
+        return jobFileName.substring(0, jobFileName.lastIndexOf(JOB_EXTENSION));
+    }
+    private static boolean isHashedDirName(String name) {
+        return name.length() == 1 && Character.digit(name.charAt(0), 16) != -1;
+    }
+
     private final void read(final JobStatusData jsd, final Path file)
             throws IOException {
 
@@ -219,12 +705,19 @@ public class JobSuiteStatusDAO
             return;
         }
 
-        Properties config = new Properties();
-
-        try (BufferedReader r = Files.newBufferedReader(file)) {
-            config.loadFromProperties(r);
+        JobStatusCodec codec = CODEC.get();
+        ByteBuffer content;
+        try (FileChannel channel =
+                FileChannel.open(file, StandardOpenOption.READ)) {
+            content = codec.readFrom(channel);
+        }
+        if (JobStatusCodec.isEncoded(content)) {
+            codec.decode(content, jsd);
+        } else {
+            readText(jsd, StandardCharsets.UTF_8.decode(content).toString());
         }
 
+        // The file modification time is the last activity (see touch).
         Instant lastModified = Files.getLastModifiedTime(file).toInstant();
 //        LocalDateTime lastModified = LocalDateTime.from(
 //                Files.getLastModifiedTime(file).toInstant().atZone(ZoneId.of("UTC")));
@@ -232,27 +725,53 @@ public class JobSuiteStatusDAO
         LOG.trace("{} last activity: {}", file.toAbsolutePath(), lastModified);
 
         jsd.setLastActivity(lastModified);
+    }
+
+    // Reads statuses written with the text format (or older versions).
+    private void readText(final JobStatusData jsd, final String text)
+            throws IOException {
+        Properties config = new Properties();
+        try (StringReader r = new StringReader(text)) {
+            config.loadFromProperties(r);
+        }
         jsd.setProgress(config.getDouble("progress", 0d));
         jsd.setNote(config.getString("note", null));
         jsd.setStartTime(config.getInstant("startTime"));
         jsd.setEndTime(config.getInstant("endTime"));
         jsd.setStopRequested(config.getBoolean("stopRequested", false));
+        String state = config.getString("state", null);
+        if (state != null) {
+            jsd.setRecordedState(JobState.valueOf(state));
+        }
 
         Properties props = jsd.getProperties();
         for (String key : config.keySet()) {
             if (key.startsWith(".")) {
-                props.put(StringUtils.removeStart(".", key), props.get(key));
+                props.put(StringUtils.removeStart(key, "."), config.get(key));
             }
         }
     }
 
+    @Override
     public final void delete() throws IOException {
+        if (periodicSync != null) {
+            periodicSync.stop();
+        }
+        synchronized (pendingRenames) {
+            pendingRenames.clear();
+        }
+        attemptIndex = null;
+        heartbeat = null;
         FileUtils.deleteDirectory(statusDir);
     }
 
     //TODO have built-in methods to load backed-up sessions?
+    @Override
     public final void backup(Path backupDir) throws IOException {
         Objects.requireNonNull(backupDir, "backupDir");
+        close();
+        attemptIndex = null;
+        heartbeat = null;
         LOG.debug("Moving {} to {}", statusDir, backupDir);
         try {
             FileUtils.moveDirectory(statusDir, backupDir.toFile());
@@ -262,6 +781,7 @@ public class JobSuiteStatusDAO
         }
     }
 
+    @Override
     public Instant touch(String jobId) throws IOException {
         Path file = resolveJobFile(jobId);
 
@@ -273,6 +793,67 @@ public class JobSuiteStatusDAO
         Files.setLastModifiedTime(file, FileTime.from(now));
         return now;
     }
+    /**
+     * Records all given jobs are alive with a single write, to a suite
+     * heartbeat file listing them. Job files are left untouched.
+     * Heartbeats are never forced to disk.
+     * @param jobIds job unique identifiers
+     * @return the last activity time recorded
+     * @throws IOException problem writing heartbeat
+     */
+    @Override
+    public Instant touch(Collection<String> jobIds) throws IOException {
+        Instant now = Instant.now();
+        JobStatusCodec codec = CODEC.get();
+        codec.begin().putHeader().putInstant(now).putInt(jobIds.size());
+        for (String jobId : jobIds) {
+            codec.putString(jobId);
+        }
+        Path file = statusDir.toPath().resolve(HEARTBEAT_FILE);
+        Files.createDirectories(file.getParent());
+        Path tmpFile = writeTempFile(file, codec.end(), false);
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return now;
+    }
+
+    // Last heartbeat, re-read only when modified.
+    private Heartbeat readHeartbeat() throws IOException {
+        Heartbeat beat = heartbeat;
+        long now = System.currentTimeMillis();
+        if (beat != null && now - beat.checked < HEARTBEAT_CHECK_INTERVAL) {
+            return beat;
+        }
+        Path file = statusDir.toPath().resolve(HEARTBEAT_FILE);
+        FileTime modified;
+        try {
+            modified = Files.getLastModifiedTime(file);
+        } catch (NoSuchFileException e) {
+            modified = null;
+        }
+        if (modified == null) {
+            beat = new Heartbeat(null, now, null, Collections.emptySet());
+        } else if (beat != null && modified.equals(beat.modified)) {
+            beat = new Heartbeat(modified, now, beat.time, beat.jobIds);
+        } else {
+            JobStatusCodec codec = CODEC.get();
+            ByteBuffer content;
+            try (FileChannel channel =
+                    FileChannel.open(file, StandardOpenOption.READ)) {
+                content = codec.readFrom(channel);
+            }
+            codec.getHeader(content);
+            Instant time = codec.getInstant(content);
+            int count = content.getInt();
+            Set<String> jobIds = new HashSet<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                jobIds.add(codec.getString(content));
+            }
+            beat = new Heartbeat(modified, now, time, jobIds);
+        }
+        heartbeat = beat;
+        return beat;
+    }
 
 
     private Path resolveJobFile(final String jobId) {
@@ -284,8 +865,22 @@ public class JobSuiteStatusDAO
         if (attemptNo > 0) {
             suffix = "." + Integer.toString(attemptNo);
         }
-        return statusDir.toPath().resolve(
-                FileUtil.toSafeFileName(jobId) + ".job" + suffix);
+        String baseName = FileUtil.toSafeFileName(jobId);
+        return resolveJobDir(baseName).resolve(
+                baseName + JOB_EXTENSION + suffix);
+    }
+    private Path resolveJobDir(String baseName) {
+        Path dir = statusDir.toPath();
+        if (hashedLayout) {
+            // Spreads similar names (e.g., "job1", "job2") evenly.
+            int hash = baseName.hashCode() * 0x9E3779B9;
+            dir = dir.resolve(toHexDigit(hash >>> 28))
+                    .resolve(toHexDigit(hash >>> 24));
+        }
+        return dir;
+    }
+    private static String toHexDigit(int value) {
+        return Character.toString(Character.forDigit(value & 0xF, 16));
     }
 //    private Path resolveDataDir() {
 //        return storeDir.resolve(Paths.get(FileUtil.toSafeFileName(suiteId)));
@@ -341,6 +936,28 @@ public class JobSuiteStatusDAO
 //        }
 //    }
 
+    private static class Heartbeat {
+        private final FileTime modified;
+        /** When the heartbeat file was last checked for changes. */
+        private final long checked;
+        private final Instant time;
+        private final Set<String> jobIds;
+        public Heartbeat(FileTime modified, long checked,
+                Instant time, Set<String> jobIds) {
+            super();
+            this.modified = modified;
+            this.checked = checked;
+            this.time = time;
+            this.jobIds = jobIds;
+        }
+    }
+
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        pendingRenames = new HashMap<>();
+    }
+
     @Override
     public boolean equals(final Object other) {
         if (!(other instanceof JobSuiteStatusDAO)) {
@@ -350,6 +967,10 @@ public class JobSuiteStatusDAO
         return new EqualsBuilder()
                 .append(statusDir, castOther.statusDir)
                 .append(suiteId, castOther.suiteId)
+                .append(hashedLayout, castOther.hashedLayout)
+                .append(textFormat, castOther.textFormat)
+                .append(durability, castOther.durability)
+                .append(syncInterval, castOther.syncInterval)
                 .isEquals();
     }
 
@@ -358,6 +979,10 @@ public class JobSuiteStatusDAO
         return new HashCodeBuilder()
                 .append(statusDir)
                 .append(suiteId)
+                .append(hashedLayout)
+                .append(textFormat)
+                .append(durability)
+                .append(syncInterval)
                 .toHashCode();
     }
 
@@ -366,6 +991,10 @@ public class JobSuiteStatusDAO
         return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
                 .append("statusDir", statusDir)
                 .append("suiteId", suiteId)
+                .append("hashedLayout", hashedLayout)
+                .append("textFormat", textFormat)
+                .append("durability", durability)
+                .append("syncInterval", syncInterval)
                 .toString();
     }
 
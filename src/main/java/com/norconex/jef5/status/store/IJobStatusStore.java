@@ -0,0 +1,160 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status.store;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collection;
+
+import javax.xml.stream.XMLStreamException;
+
+import com.norconex.commons.lang.xml.EnhancedXMLStreamWriter;
+import com.norconex.commons.lang.xml.XML;
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusData;
+
+/**
+ * Persists and retrieves the statuses of jobs making up a job suite.
+ * Implementations must have a public no-argument constructor so they
+ * can be recreated from a suite index file (e.g., when a suite status is
+ * read from a different JVM).
+ * @author Pascal Essiembre
+ */
+public interface IJobStatusStore {
+
+    /**
+     * Prepares this store for reading/writing statuses of the given suite.
+     * Files are not necessarily created until something gets written.
+     * @param suiteId job suite unique identifier (root job id)
+     * @param statusDir directory where suite statuses are stored
+     * @throws IOException problem opening the store
+     */
+    void open(String suiteId, Path statusDir) throws IOException;
+    /**
+     * Releases resources held by this store.  A closed store is reopened
+     * on next usage.
+     * @throws IOException problem closing the store
+     */
+    void close() throws IOException;
+
+    /**
+     * Gets how well statuses written to this store survive failures.
+     * The job suite adapts how it writes statuses accordingly
+     * (e.g., ephemeral stores are never backed up).
+     * @return durability guarantee
+     */
+    StatusDurability getDurability();
+
+    /**
+     * Writes the given job status.
+     * @param status job status
+     * @throws IOException problem writing status
+     */
+    void write(JobStatus status) throws IOException;
+    /**
+     * Reads the status of a job.  A job never written returns
+     * an empty status (never <code>null</code> unless the job id is).
+     * @param jobId job unique identifier
+     * @return job status
+     * @throws IOException problem reading status
+     */
+    JobStatus read(String jobId) throws IOException;
+    /**
+     * Writes a previous attempt of a job (e.g., a failed attempt before
+     * the job is retried), so it is part of resumed attempts when the job
+     * status is read back (see {@link JobStatus#getResumedAttempts()}).
+     * Default does nothing, for stores already writing resumed attempts
+     * with the job status.
+     * @param jobId job unique identifier
+     * @param attemptNo attempt number, starting at 1 for the oldest
+     * @param attempt attempt status
+     * @throws IOException problem writing the attempt
+     * @since 5.0.0
+     */
+    default void writeAttempt(
+            String jobId, int attemptNo, JobStatusData attempt)
+            throws IOException {
+        //NOOP
+    }
+    /**
+     * Records a job is still alive.
+     * @param jobId job unique identifier
+     * @return the last activity time recorded
+     * @throws IOException problem recording activity
+     */
+    Instant touch(String jobId) throws IOException;
+    /**
+     * Records several jobs are still alive, all at once (e.g., all
+     * running jobs on each heartbeat). Default implementation touches
+     * each job individually. Stores are encouraged to record them with
+     * as few writes as possible.
+     * @param jobIds job unique identifiers
+     * @return the last activity time recorded
+     * @throws IOException problem recording activity
+     */
+    default Instant touch(Collection<String> jobIds) throws IOException {
+        Instant now = Instant.now();
+        for (String jobId : jobIds) {
+            now = touch(jobId);
+        }
+        return now;
+    }
+
+    /**
+     * Cleans up what a previous execution may have left behind
+     * (e.g., a process killed while writing). Only invoked by an
+     * executing suite, once no other execution can write to this store.
+     * Default does nothing.
+     * @throws IOException problem recovering the store
+     * @since 5.0.0
+     */
+    default void recover() throws IOException {
+        //NOOP
+    }
+
+    /**
+     * Deletes all statuses of the suite.
+     * @throws IOException problem deleting statuses
+     */
+    void delete() throws IOException;
+    /**
+     * Moves all statuses of the suite to the given backup directory.
+     * @param backupDir backup directory
+     * @throws IOException problem backing up statuses
+     */
+    void backup(Path backupDir) throws IOException;
+
+    /**
+     * Saves settings readers need to read back statuses (e.g.,
+     * a file layout) to the suite index, as attributes or children of
+     * the index <code>store</code> element. Default does nothing.
+     * @param writer index writer, positioned inside the store element
+     * @throws XMLStreamException problem writing settings
+     */
+    default void saveToIndex(EnhancedXMLStreamWriter writer)
+            throws XMLStreamException {
+        //NOOP
+    }
+    /**
+     * Loads settings saved with
+     * {@link #saveToIndex(EnhancedXMLStreamWriter)}, before this store
+     * is opened. Default does nothing.
+     * @param xml the suite index <code>store</code> element
+     */
+    default void loadFromIndex(XML xml) {
+        //NOOP
+    }
+}
@@ -0,0 +1,342 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+
+import com.norconex.commons.lang.map.Properties;
+import com.norconex.jef5.status.JobState;
+import com.norconex.jef5.status.JobStatusData;
+
+/**
+ * <p>
+ * Binary encoding of job status data. Values are written to
+ * (and read from) a buffer reused across calls, so encoding a status
+ * does not allocate memory once the buffer has grown to fit.
+ * Encoded statuses start with a magic number and a format version
+ * (see {@link #putHeader()}), so future versions can still read them.
+ * </p>
+ * <p>
+ * Status stores may also use the lower-level <code>put*</code> and
+ * <code>get*</code> methods to encode their own records.
+ * Instances are not thread-safe.
+ * </p>
+ * <p>
+ * Encoding (version 1, big-endian):
+ * </p>
+ * <pre>
+ * header:     int magic (0x4A454653, "JEFS"), byte version
+ * status:     byte flags (bit 0: stop requested, bits 1-4: recorded
+ *             state ordinal + 1, 0 if none), double progress,
+ *             long start time, long end time, long last activity
+ *             (epoch milliseconds, Long.MIN_VALUE if none),
+ *             string note, properties
+ * string:     int length (-1 if null), UTF-8 bytes
+ * properties: int count, then for each: string key, int value count,
+ *             string values
+ * </pre>
+ * @author Pascal Essiembre
+ */
+public class JobStatusCodec {
+
+    public static final int MAGIC = 0x4A454653;
+    public static final byte VERSION = 1;
+
+    private static final byte FLAG_STOP_REQUESTED = 1;
+    private static final int STATE_SHIFT = 1;
+    private static final int STATE_MASK = 0x0F;
+    private static final JobState[] STATES = JobState.values();
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final int DEFAULT_BUFFER_SIZE = 512;
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+    private byte[] stringBytes = new byte[DEFAULT_BUFFER_SIZE];
+
+    public JobStatusCodec() {
+        super();
+    }
+
+    /**
+     * Encodes job status data, preceded with a header.
+     * @param data job status data
+     * @return encoded status, valid until this codec is used again
+     */
+    public ByteBuffer encode(JobStatusData data) {
+        return begin().putHeader().putData(data).end();
+    }
+
+    /**
+     * Decodes job status data encoded with {@link #encode(JobStatusData)}.
+     * @param in encoded status
+     * @param target job status data to populate
+     * @throws IOException not an encoded status or unsupported version
+     */
+    public void decode(ByteBuffer in, JobStatusData target)
+            throws IOException {
+        getHeader(in);
+        getData(in, target);
+    }
+
+    /**
+     * Whether the given buffer starts with an encoded status header.
+     * The buffer position is not modified.
+     * @param in buffer to check
+     * @return <code>true</code> if the buffer holds an encoded status
+     */
+    public static boolean isEncoded(ByteBuffer in) {
+        return in.remaining() >= 5 && in.getInt(in.position()) == MAGIC;
+    }
+
+    //--- Writing --------------------------------------------------------------
+
+    /**
+     * Clears the reusable buffer to start encoding new values.
+     * @return this codec
+     */
+    public JobStatusCodec begin() {
+        buffer.clear();
+        return this;
+    }
+    /**
+     * Gets encoded values since the last {@link #begin()}.
+     * @return encoded values, valid until this codec is used again
+     */
+    public ByteBuffer end() {
+        buffer.flip();
+        return buffer;
+    }
+
+    public JobStatusCodec putHeader() {
+        ensure(5);
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        return this;
+    }
+    public JobStatusCodec putData(JobStatusData data) {
+        ensure(37);
+        buffer.put((byte) toFlags(data));
+        buffer.putDouble(data.getProgress());
+        buffer.putLong(toMillis(data.getStartTime()));
+        buffer.putLong(toMillis(data.getEndTime()));
+        buffer.putLong(toMillis(data.getLastActivity()));
+        putString(data.getNote());
+        putProperties(data.getProperties());
+        return this;
+    }
+    public JobStatusCodec putProperties(Properties props) {
+        putInt(props.size());
+        for (Entry<String, List<String>> entry : props.entrySet()) {
+            putString(entry.getKey());
+            List<String> values = entry.getValue();
+            putInt(values.size());
+            for (String value : values) {
+                putString(value);
+            }
+        }
+        return this;
+    }
+    public JobStatusCodec putString(String value) {
+        if (value == null) {
+            return putInt(-1);
+        }
+        ensure(4 + value.length());
+        int lengthPosition = buffer.position();
+        buffer.putInt(0);
+        int start = buffer.position();
+        CharBuffer chars = CharBuffer.wrap(value);
+        encoder.reset();
+        while (encoder.encode(chars, buffer, true).isOverflow()) {
+            ensure(Math.max(4, chars.remaining() * 3));
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            ensure(4);
+        }
+        buffer.putInt(lengthPosition, buffer.position() - start);
+        return this;
+    }
+    public JobStatusCodec putInt(int value) {
+        ensure(4);
+        buffer.putInt(value);
+        return this;
+    }
+    public JobStatusCodec putLong(long value) {
+        ensure(8);
+        buffer.putLong(value);
+        return this;
+    }
+    public JobStatusCodec putByte(byte value) {
+        ensure(1);
+        buffer.put(value);
+        return this;
+    }
+    public JobStatusCodec putInstant(Instant value) {
+        return putLong(toMillis(value));
+    }
+
+    /**
+     * Writes encoded values (since the last {@link #begin()}) to a channel,
+     * at its current position.
+     * @param channel file channel
+     * @throws IOException could not write to channel
+     */
+    public void writeTo(FileChannel channel) throws IOException {
+        ByteBuffer buf = end();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    //--- Reading --------------------------------------------------------------
+
+    /**
+     * Reads a channel from its current position to its end into this
+     * codec reusable buffer.
+     * @param channel file channel
+     * @return the read bytes, valid until this codec is used again
+     * @throws IOException could not read channel
+     */
+    public ByteBuffer readFrom(FileChannel channel) throws IOException {
+        begin();
+        ensure((int) Math.min(Integer.MAX_VALUE - 8,
+                channel.size() - channel.position()));
+        while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+            // keep reading
+        }
+        return end();
+    }
+
+    public void getHeader(ByteBuffer in) throws IOException {
+        if (!isEncoded(in)) {
+            throw new IOException("Not an encoded job status.");
+        }
+        in.getInt();
+        byte version = in.get();
+        if (version > VERSION) {
+            throw new IOException("Unsupported job status encoding version "
+                    + "(upgrade JEF to read it): " + version);
+        }
+    }
+    public void getData(ByteBuffer in, JobStatusData target) {
+        byte flags = in.get();
+        target.setStopRequested((flags & FLAG_STOP_REQUESTED) != 0);
+        target.setRecordedState(toState(flags));
+        target.setProgress(in.getDouble());
+        target.setStartTime(getInstant(in));
+        target.setEndTime(getInstant(in));
+        target.setLastActivity(getInstant(in));
+        target.setNote(getString(in));
+        Properties props = target.getProperties();
+        props.clear();
+        getProperties(in, props);
+    }
+    public void getProperties(ByteBuffer in, Properties target) {
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            String key = getString(in);
+            int valueCount = in.getInt();
+            List<String> values = new ArrayList<>(valueCount);
+            for (int j = 0; j < valueCount; j++) {
+                values.add(getString(in));
+            }
+            target.put(key, values);
+        }
+    }
+    public String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(),
+                    length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            if (stringBytes.length < length) {
+                stringBytes = new byte[Math.max(length, stringBytes.length * 2)];
+            }
+            in.get(stringBytes, 0, length);
+            value = new String(stringBytes, 0, length, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+    public Instant getInstant(ByteBuffer in) {
+        return toInstant(in.getLong());
+    }
+
+    //--- Misc. ----------------------------------------------------------------
+
+    // Grows the buffer if it cannot hold the given number of extra bytes.
+    private void ensure(int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        int capacity = Math.max(buffer.capacity() * 2,
+                buffer.position() + bytes);
+        ByteBuffer newBuffer = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        newBuffer.put(buffer);
+        buffer = newBuffer;
+    }
+
+    /**
+     * Packs the stop request and recorded state of a status into
+     * flags (see class documentation). Stores keeping flags on their own
+     * can use it too.
+     * @param data job status data
+     * @return flags
+     */
+    public static int toFlags(JobStatusData data) {
+        int flags = data.isStopRequested() ? FLAG_STOP_REQUESTED : 0;
+        JobState state = data.getRecordedState();
+        if (state != null) {
+            flags |= (state.ordinal() + 1) << STATE_SHIFT;
+        }
+        return flags;
+    }
+    /**
+     * Gets the recorded state from flags created with
+     * {@link #toFlags(JobStatusData)}.
+     * @param flags flags
+     * @return recorded state, or <code>null</code> if none
+     */
+    public static JobState toState(int flags) {
+        int value = (flags >> STATE_SHIFT) & STATE_MASK;
+        if (value == 0 || value > STATES.length) {
+            return null;
+        }
+        return STATES[value - 1];
+    }
+
+    private static long toMillis(Instant instant) {
+        return instant == null ? NO_TIME : instant.toEpochMilli();
+    }
+    private static Instant toInstant(long millis) {
+        return millis == NO_TIME ? null : Instant.ofEpochMilli(millis);
+    }
+}
@@ -0,0 +1,149 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status.store;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forces status writes to disk in batches, for stores offering
+ * {@link StatusDurability#BATCHED} durability. Stores mark themselves
+ * dirty after writing and a background thread invokes their sync action
+ * at most once per interval, so many writes share a single sync
+ * (group commit).
+ * @author Pascal Essiembre
+ */
+public class PeriodicSync {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(PeriodicSync.class);
+
+    public static final long DEFAULT_SYNC_INTERVAL = 1000;
+
+    /**
+     * Action making pending writes durable.
+     */
+    @FunctionalInterface
+    public interface SyncAction {
+        void sync() throws IOException;
+    }
+
+    private final String name;
+    private final SyncAction action;
+    private final long interval;
+
+    /** Current sync thread, <code>null</code> when stopped. */
+    private volatile Thread thread;
+    private volatile boolean dirty;
+
+    /**
+     * Creates a periodic sync.
+     * @param name name of the sync thread
+     * @param interval milliseconds between syncs
+     * @param action sync action, expected to be thread-safe
+     */
+    public PeriodicSync(String name, long interval, SyncAction action) {
+        super();
+        this.name = name;
+        this.interval = interval;
+        this.action = action;
+    }
+
+    /**
+     * Flags writes pending sync. The sync thread is started if not
+     * already running.
+     */
+    public void markDirty() {
+        dirty = true;
+        if (thread == null) {
+            start();
+        }
+    }
+
+    /**
+     * Invokes the sync action now if there are writes pending sync.
+     * @throws IOException problem syncing
+     */
+    public void syncNow() throws IOException {
+        if (dirty) {
+            dirty = false;
+            action.sync();
+        }
+    }
+
+    /**
+     * Stops the sync thread without waiting for it or syncing pending
+     * writes. Stores are expected to do a last sync themselves
+     * (e.g., on close). The thread is restarted on next write.
+     */
+    public synchronized void stop() {
+        thread = null;
+        // Not interrupting: it would close file channels being synced.
+        notifyAll();
+    }
+
+    private synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this::syncPeriodically, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void syncPeriodically() {
+        // A stopped thread may still be waiting when a new one starts.
+        while (thread == Thread.currentThread()) {
+            synchronized (this) {
+                try {
+                    wait(interval);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (thread != Thread.currentThread()) {
+                return;
+            }
+            try {
+                syncNow();
+            } catch (IOException e) {
+                // Try again next round.
+                dirty = true;
+                LOG.error("Could not sync job statuses to disk.", e);
+            }
+        }
+    }
+
+    /**
+     * Forces a directory entries (e.g., file renames) to disk. Not all
+     * platforms support it (e.g., Windows), in which case this method
+     * does nothing.
+     * @param dir the directory to force to disk
+     */
+    public static void forceDirectory(Path dir) {
+        try (FileChannel channel =
+                FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            LOG.trace("Could not force directory to disk: {}", dir, e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status.store;
+
+/**
+ * How well job statuses written to a status store survive failures.
+ * Constants are listed from weakest to strongest guarantee.
+ * @author Pascal Essiembre
+ */
+public enum StatusDurability {
+
+    /**
+     * Statuses are kept in memory only and are lost when the JVM exits.
+     * They cannot be read from another process and a suite cannot be
+     * resumed.
+     */
+    EPHEMERAL,
+    /**
+     * Statuses are handed to the operating system without waiting for
+     * them to reach the disk. They survive the JVM crashing, but
+     * recent ones may be lost if the operating system crashes.
+     */
+    PAGE_CACHE,
+    /**
+     * Statuses are forced to disk periodically, in batches. At most
+     * one sync interval of updates may be lost if the operating system
+     * crashes.
+     */
+    BATCHED,
+    /**
+     * Every status is forced to disk before a write returns.
+     */
+    STRICT;
+
+    public boolean isOneOf(StatusDurability... durabilities) {
+        for (StatusDurability durability : durabilities) {
+            if (durability == this) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,703 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status.store.impl;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileExistsException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusData;
+import com.norconex.jef5.status.store.IJobStatusStore;
+import com.norconex.jef5.status.store.JobStatusCodec;
+import com.norconex.jef5.status.store.PeriodicSync;
+import com.norconex.jef5.status.store.StatusDurability;
+
+/**
+ * <p>
+ * Status store appending every status change as a compact binary record
+ * to a suite journal file (<code>status.journal</code>), under the
+ * suite status directory. Nothing is ever rewritten in place, which is
+ * much cheaper than rewriting status files, especially on network file
+ * systems.
+ * </p>
+ * <p>
+ * When the journal grows beyond the compaction threshold, the latest
+ * status of each job is written to a snapshot file
+ * (<code>status.snapshot</code>) and the journal is emptied.
+ * Statuses are restored (e.g., when resuming a suite) by replaying
+ * the snapshot followed by the journal. Since records always hold a
+ * complete status, replaying a record more than once is harmless
+ * (e.g., if the process died in the middle of a compaction).
+ * </p>
+ * <p>
+ * Journal records since the last compaction also make up a timeline
+ * of every progress update made to a job
+ * (see {@link #readTimeline(String)}).
+ * </p>
+ * @author Pascal Essiembre
+ */
+public class JournalJobStatusStore implements IJobStatusStore {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(JournalJobStatusStore.class);
+
+    public static final String JOURNAL_FILENAME = "status.journal";
+    public static final String SNAPSHOT_FILENAME = "status.snapshot";
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 8L * 1024 * 1024;
+
+    private static final int MAGIC = 0x4A45464A; // "JEFJ"
+    private static final int VERSION = 1;
+    /** Magic number, version, and generation. */
+    private static final int HEADER_SIZE = 16;
+
+    private static final byte RECORD_STATUS = 1;
+    private static final byte RECORD_TOUCH = 2;
+
+    private String suiteId;
+    private Path statusDir;
+    private long compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+    private StatusDurability durability = StatusDurability.PAGE_CACHE;
+    private long syncInterval = PeriodicSync.DEFAULT_SYNC_INTERVAL;
+    private PeriodicSync periodicSync;
+
+    /** Latest status records, keyed by job id. */
+    private final Map<String, Record> records = new HashMap<>();
+    private boolean loaded;
+    /** Journal generation, incremented on each compaction. */
+    private long generation;
+    /** Journal position up to which records were replayed. */
+    private long replayedOffset;
+    private FileChannel journal;
+    private final JobStatusCodec codec = new JobStatusCodec();
+
+    public JournalJobStatusStore() {
+        super();
+    }
+
+    /**
+     * Gets the journal size in bytes triggering a compaction.
+     * @return compaction threshold
+     */
+    public long getCompactionThreshold() {
+        return compactionThreshold;
+    }
+    /**
+     * Sets the journal size in bytes triggering a compaction.
+     * Zero or less never compacts the journal.
+     * @param compactionThreshold compaction threshold
+     */
+    public void setCompactionThreshold(long compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    public String getSuiteId() {
+        return suiteId;
+    }
+    public Path getStatusDir() {
+        return statusDir;
+    }
+    public Path getJournalFile() {
+        return statusDir.resolve(JOURNAL_FILENAME);
+    }
+    public Path getSnapshotFile() {
+        return statusDir.resolve(SNAPSHOT_FILENAME);
+    }
+
+    @Override
+    public synchronized void open(String suiteId, Path statusDir)
+            throws IOException {
+        Objects.requireNonNull(suiteId, "suiteId");
+        Objects.requireNonNull(statusDir, "statusDir");
+        close();
+        this.suiteId = suiteId;
+        this.statusDir = statusDir;
+        reset();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (periodicSync != null) {
+            periodicSync.stop();
+        }
+        if (journal != null) {
+            try {
+                if (durability != StatusDurability.PAGE_CACHE) {
+                    journal.force(false);
+                }
+            } finally {
+                journal.close();
+                journal = null;
+            }
+        }
+    }
+
+    @Override
+    public StatusDurability getDurability() {
+        return durability;
+    }
+    /**
+     * Sets how journal writes are forced to disk:
+     * never ({@link StatusDurability#PAGE_CACHE}, default),
+     * once per sync interval ({@link StatusDurability#BATCHED}),
+     * or after each status write ({@link StatusDurability#STRICT}).
+     * Heartbeats alone never trigger a sync.
+     * @param durability status durability
+     */
+    public void setDurability(StatusDurability durability) {
+        Objects.requireNonNull(durability, "durability");
+        if (durability == StatusDurability.EPHEMERAL) {
+            throw new IllegalArgumentException(
+                    "File-based status store cannot be ephemeral.");
+        }
+        this.durability = durability;
+    }
+    /**
+     * Gets milliseconds between batched syncs.
+     * @return sync interval
+     */
+    public long getSyncInterval() {
+        return syncInterval;
+    }
+    /**
+     * Sets milliseconds between batched syncs. Only applies to
+     * {@link StatusDurability#BATCHED} durability.
+     * @param syncInterval sync interval
+     */
+    public void setSyncInterval(long syncInterval) {
+        this.syncInterval = syncInterval;
+    }
+
+    @Override
+    public synchronized void write(JobStatus status) throws IOException {
+        Record record = new Record(RECORD_STATUS, status.getJobId());
+        record.attempt = 0;
+        record.data.setProgress(status.getProgress());
+        record.data.setNote(status.getNote());
+        record.data.setStartTime(status.getStartTime());
+        record.data.setEndTime(status.getEndTime());
+        record.data.setStopRequested(status.isStopRequested());
+        record.data.setRecordedState(status.getRecordedState());
+        for (Entry<String, List<String>> entry
+                : status.getProperties().entrySet()) {
+            record.data.getProperties().put(
+                    entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        // Writing a status is a sign of activity.
+        record.data.setLastActivity(Instant.now());
+        append(record);
+        syncAfterWrite();
+    }
+
+    @Override
+    public synchronized void writeAttempt(
+            String jobId, int attemptNo, JobStatusData attempt)
+            throws IOException {
+        Record record = new Record(RECORD_STATUS, jobId);
+        record.attempt = attemptNo;
+        copy(attempt, record.data);
+        append(record);
+        syncAfterWrite();
+    }
+
+    private void syncAfterWrite() throws IOException {
+        if (durability == StatusDurability.STRICT) {
+            journal.force(false);
+        } else if (durability == StatusDurability.BATCHED) {
+            periodicSync().markDirty();
+        }
+    }
+
+    @Override
+    public synchronized JobStatus read(String jobId) throws IOException {
+        if (jobId == null) {
+            return null;
+        }
+        refresh();
+        Record record = records.get(jobId);
+        if (record == null) {
+            return new JobStatus(jobId, null);
+        }
+        JobStatus status = new JobStatus(jobId, record.attempts);
+        copy(record.data, status);
+        return status;
+    }
+
+    /**
+     * Reads every status recorded for a job since the journal was last
+     * compacted, oldest first. Heartbeats are not part of the timeline.
+     * @param jobId job unique identifier
+     * @return job status timeline (never <code>null</code>)
+     * @throws IOException problem reading the journal
+     */
+    public synchronized List<JobStatusData> readTimeline(String jobId)
+            throws IOException {
+        List<JobStatusData> timeline = new ArrayList<>();
+        Path file = getJournalFile();
+        if (jobId == null || !file.toFile().exists()) {
+            return timeline;
+        }
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            RecordReader reader = new RecordReader(channel, codec);
+            reader.readHeader(file);
+            Record record;
+            while ((record = reader.next()) != null) {
+                if (record.type == RECORD_STATUS
+                        && record.attempt == 0
+                        && jobId.equals(record.jobId)) {
+                    timeline.add(record.data);
+                }
+            }
+        }
+        return timeline;
+    }
+
+    @Override
+    public synchronized Instant touch(String jobId) throws IOException {
+        Record record = new Record(RECORD_TOUCH, jobId);
+        Instant now = Instant.now();
+        record.data.setLastActivity(now);
+        append(record);
+        return now;
+    }
+    @Override
+    public synchronized Instant touch(Collection<String> jobIds)
+            throws IOException {
+        Instant now = Instant.now();
+        List<Record> batch = new ArrayList<>(jobIds.size());
+        for (String jobId : jobIds) {
+            Record record = new Record(RECORD_TOUCH, jobId);
+            record.data.setLastActivity(now);
+            batch.add(record);
+        }
+        append(batch);
+        return now;
+    }
+
+    @Override
+    public synchronized void delete() throws IOException {
+        close();
+        reset();
+        FileUtils.deleteDirectory(statusDir.toFile());
+    }
+
+    @Override
+    public synchronized void backup(Path backupDir) throws IOException {
+        Objects.requireNonNull(backupDir, "backupDir");
+        close();
+        reset();
+        LOG.debug("Moving {} to {}", statusDir, backupDir);
+        try {
+            FileUtils.moveDirectory(statusDir.toFile(), backupDir.toFile());
+        } catch (FileExistsException e) {
+            LOG.error("Target backup directory already exists: {}", backupDir);
+            throw e;
+        }
+    }
+
+    //--- Replay ---------------------------------------------------------------
+
+    private void reset() {
+        records.clear();
+        loaded = false;
+        generation = 0;
+        replayedOffset = 0;
+    }
+
+    // Loads statuses written since last time, possibly by another process.
+    private void refresh() throws IOException {
+        if (journal != null) {
+            // We are the writer, nothing new to load.
+            return;
+        }
+        Path file = getJournalFile();
+        if (loaded && file.toFile().exists()
+                && Files.size(file) >= replayedOffset
+                && readGeneration(file) == generation) {
+            replayJournal(file, replayedOffset);
+            return;
+        }
+        // First load or the journal was compacted since.
+        reset();
+        Path snapshot = getSnapshotFile();
+        if (snapshot.toFile().exists()) {
+            try (FileChannel channel = FileChannel.open(snapshot, READ)) {
+                RecordReader reader = new RecordReader(channel, codec);
+                generation = reader.readHeader(snapshot);
+                Record record;
+                while ((record = reader.next()) != null) {
+                    apply(record);
+                }
+            }
+        }
+        if (file.toFile().exists()) {
+            generation = Math.max(generation, readGeneration(file));
+            replayJournal(file, 0);
+        }
+        loaded = true;
+    }
+
+    private void replayJournal(Path file, long fromOffset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            long offset = Math.max(fromOffset, HEADER_SIZE);
+            if (channel.size() < offset) {
+                replayedOffset = channel.size();
+                return;
+            }
+            channel.position(offset);
+            RecordReader reader = new RecordReader(channel, codec);
+            Record record;
+            while ((record = reader.next()) != null) {
+                apply(record);
+            }
+            // Stops before an incomplete record (e.g., being written).
+            replayedOffset = offset + reader.consumed;
+        }
+    }
+
+    private void apply(Record record) {
+        Record current = records.get(record.jobId);
+        if (record.type == RECORD_TOUCH) {
+            if (current == null) {
+                current = new Record(RECORD_STATUS, record.jobId);
+                records.put(record.jobId, current);
+            }
+            current.data.setLastActivity(record.data.getLastActivity());
+        } else if (record.attempt > 0) {
+            if (current == null) {
+                current = new Record(RECORD_STATUS, record.jobId);
+                records.put(record.jobId, current);
+            }
+            current.attempts.add(record.data);
+        } else {
+            if (current != null) {
+                record.attempts.addAll(current.attempts);
+            }
+            records.put(record.jobId, record);
+        }
+    }
+
+    //--- Append ---------------------------------------------------------------
+
+    private void append(Record record) throws IOException {
+        ensureJournal();
+        writeFully(journal, encode(record));
+        replayedOffset = journal.position();
+        apply(record);
+        compactIfNeeded();
+    }
+    // Appends records with a single write.
+    private void append(List<Record> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        ensureJournal();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Record record : batch) {
+            ByteBuffer buf = encode(record);
+            out.write(buf.array(),
+                    buf.arrayOffset() + buf.position(), buf.remaining());
+        }
+        writeFully(journal, ByteBuffer.wrap(out.toByteArray()));
+        replayedOffset = journal.position();
+        batch.forEach(this::apply);
+        compactIfNeeded();
+    }
+    private void compactIfNeeded() throws IOException {
+        if (compactionThreshold > 0 && journal.size() > compactionThreshold) {
+            compact();
+        }
+    }
+
+    private synchronized void syncJournal() throws IOException {
+        if (journal != null) {
+            journal.force(false);
+        }
+    }
+    private PeriodicSync periodicSync() {
+        if (periodicSync == null) {
+            periodicSync = new PeriodicSync(
+                    "JEF Journal Sync", syncInterval, this::syncJournal);
+        }
+        return periodicSync;
+    }
+
+    private void ensureJournal() throws IOException {
+        if (journal != null) {
+            return;
+        }
+        // Bring ourselves up to date before becoming the writer.
+        refresh();
+        Files.createDirectories(statusDir);
+        Path file = getJournalFile();
+        if (file.toFile().exists() && Files.size(file) >= HEADER_SIZE) {
+            journal = FileChannel.open(file, READ, WRITE);
+            // Discard a record left incomplete by an abrupt termination.
+            if (journal.size() > replayedOffset) {
+                LOG.warn("Discarding incomplete record at end of journal: {}",
+                        file);
+                journal.truncate(Math.max(replayedOffset, HEADER_SIZE));
+            }
+            journal.position(journal.size());
+        } else {
+            journal = FileChannel.open(file, CREATE, TRUNCATE_EXISTING, WRITE);
+            writeHeader(journal, generation);
+        }
+    }
+
+    /**
+     * Writes the latest status of each job to a new snapshot and empties
+     * the journal.
+     * @throws IOException problem compacting the journal
+     */
+    public synchronized void compact() throws IOException {
+        ensureJournal();
+        long newGeneration = generation + 1;
+        Path snapshot = getSnapshotFile();
+        Path tmpSnapshot = snapshot.resolveSibling(SNAPSHOT_FILENAME + ".tmp");
+        LOG.debug("Compacting status journal: {}", getJournalFile());
+        try (FileChannel channel = FileChannel.open(
+                tmpSnapshot, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            writeHeader(channel, newGeneration);
+            for (Record record : records.values()) {
+                for (JobStatusData attempt : record.attempts) {
+                    Record attemptRecord =
+                            new Record(RECORD_STATUS, record.jobId);
+                    attemptRecord.attempt = 1;
+                    attemptRecord.data = attempt;
+                    writeFully(channel, encode(attemptRecord));
+                }
+                writeFully(channel, encode(record));
+            }
+            channel.force(true);
+        }
+        Files.move(tmpSnapshot, snapshot, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        journal.truncate(0);
+        journal.position(0);
+        writeHeader(journal, newGeneration);
+        generation = newGeneration;
+        replayedOffset = HEADER_SIZE;
+    }
+
+    //--- Encoding -------------------------------------------------------------
+
+    private static void writeHeader(FileChannel channel, long generation)
+            throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE);
+        buf.putInt(MAGIC);
+        buf.putInt(VERSION);
+        buf.putLong(generation);
+        buf.flip();
+        writeFully(channel, buf);
+    }
+    private static long readHeader(ByteBuffer buf, Path file)
+            throws IOException {
+        if (buf.remaining() < HEADER_SIZE || buf.getInt() != MAGIC) {
+            throw new IOException("Not a JEF status journal: " + file);
+        }
+        if (buf.getInt() > VERSION) {
+            throw new IOException("Unsupported JEF status journal version "
+                    + "(upgrade JEF to read it): " + file);
+        }
+        return buf.getLong();
+    }
+    private long readGeneration(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return -1;
+            }
+            return new RecordReader(channel, codec).readHeader(file);
+        }
+    }
+
+    // Record: int length, byte type, string job id, then either
+    // the last activity (touch) or the attempt number and status data.
+    private ByteBuffer encode(Record record) {
+        codec.begin()
+                .putInt(0)
+                .putByte(record.type)
+                .putString(record.jobId);
+        if (record.type == RECORD_TOUCH) {
+            codec.putInstant(record.data.getLastActivity());
+        } else {
+            codec.putInt(record.attempt).putData(record.data);
+        }
+        ByteBuffer buf = codec.end();
+        buf.putInt(0, buf.remaining() - 4);
+        return buf;
+    }
+    private static Record decode(ByteBuffer in, JobStatusCodec codec) {
+        byte type = in.get();
+        Record record = new Record(type, codec.getString(in));
+        if (type == RECORD_TOUCH) {
+            record.data.setLastActivity(codec.getInstant(in));
+        } else {
+            record.attempt = in.getInt();
+            codec.getData(in, record.data);
+        }
+        return record;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf)
+            throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    private static void copy(JobStatusData source, JobStatusData target) {
+        target.setProgress(source.getProgress());
+        target.setNote(source.getNote());
+        target.setStartTime(source.getStartTime());
+        target.setEndTime(source.getEndTime());
+        target.setLastActivity(source.getLastActivity());
+        target.setStopRequested(source.isStopRequested());
+        target.setRecordedState(source.getRecordedState());
+        target.getProperties().putAll(source.getProperties());
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof JournalJobStatusStore)) {
+            return false;
+        }
+        JournalJobStatusStore castOther = (JournalJobStatusStore) other;
+        return new EqualsBuilder()
+                .append(statusDir, castOther.statusDir)
+                .append(suiteId, castOther.suiteId)
+                .append(durability, castOther.durability)
+                .append(syncInterval, castOther.syncInterval)
+                .append(compactionThreshold, castOther.compactionThreshold)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(statusDir)
+                .append(suiteId)
+                .append(durability)
+                .append(syncInterval)
+                .append(compactionThreshold)
+                .toHashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("statusDir", statusDir)
+                .append("suiteId", suiteId)
+                .append("durability", durability)
+                .append("syncInterval", syncInterval)
+                .append("compactionThreshold", compactionThreshold)
+                .toString();
+    }
+
+    private static class Record {
+        private final byte type;
+        private final String jobId;
+        /** Zero for the current attempt, else a resumed attempt. */
+        private int attempt;
+        private JobStatusData data = new JobStatusData();
+        private final Set<JobStatusData> attempts = new TreeSet<>();
+        Record(byte type, String jobId) {
+            this.type = type;
+            this.jobId = jobId;
+        }
+    }
+
+    // Reads records sequentially from a channel current position.
+    private static class RecordReader {
+        private final FileChannel channel;
+        private final JobStatusCodec codec;
+        private ByteBuffer buffer = ByteBuffer.allocate(8192);
+        /** Bytes of complete records (and header) read so far. */
+        private long consumed;
+        RecordReader(FileChannel channel, JobStatusCodec codec) {
+            this.channel = channel;
+            this.codec = codec;
+            buffer.flip();
+        }
+        long readHeader(Path file) throws IOException {
+            fill(HEADER_SIZE);
+            long generation = JournalJobStatusStore.readHeader(buffer, file);
+            consumed += HEADER_SIZE;
+            return generation;
+        }
+        // Returns null at end of channel or on an incomplete record
+        Record next() throws IOException {
+            if (!fill(4)) {
+                return null;
+            }
+            int length = buffer.getInt(buffer.position());
+            if (length <= 0 || length > channel.size() || !fill(4 + length)) {
+                return null;
+            }
+            buffer.getInt();
+            int end = buffer.position() + length;
+            Record record = decode(buffer, codec);
+            buffer.position(end);
+            consumed += 4 + length;
+            return record;
+        }
+        private boolean fill(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return true;
+            }
+            if (buffer.capacity() < bytes) {
+                ByteBuffer newBuffer = ByteBuffer.allocate(
+                        Math.max(buffer.capacity() * 2, bytes));
+                newBuffer.put(buffer);
+                buffer = newBuffer;
+            } else {
+                buffer.compact();
+            }
+            while (buffer.position() < bytes && channel.read(buffer) != -1) {
+                // keep reading
+            }
+            buffer.flip();
+            return buffer.remaining() >= bytes;
+        }
+    }
+}
@@ -0,0 +1,764 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status.store.impl;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileExistsException;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusData;
+import com.norconex.jef5.status.store.IJobStatusStore;
+import com.norconex.jef5.status.store.JobStatusCodec;
+import com.norconex.jef5.status.store.PeriodicSync;
+import com.norconex.jef5.status.store.StatusDurability;
+
+/**
+ * <p>
+ * Status store keeping all job statuses of a suite in a single
+ * memory-mapped ledger file (<code>status.ledger</code>), under the
+ * suite status directory. Each job gets a fixed-size binary slot
+ * holding its progress, start/end times, last activity, and flags.
+ * Notes and properties are appended to a variable-length data region
+ * following the slots, only when they change.  Writing a status
+ * is therefore mostly a matter of storing a few values in memory,
+ * left to the operating system to write to disk.
+ * </p>
+ * <p>
+ * The file layout is meant to be read by external tools without parsing
+ * (all values are big-endian):
+ * </p>
+ * <pre>
+ * Header (64 bytes):
+ *   0  int  magic number (0x4A45464C, "JEFL")
+ *   4  int  format version
+ *   8  int  slot size (64)
+ *   12 int  slot capacity
+ *   16 int  slot count (slots in use)
+ *   20 int  data region start offset
+ *   24 int  data region end offset (next free byte)
+ *   28 int  relocated flag (1 when the ledger was replaced by a new
+ *           file and readers should reopen it)
+ * Slots (starting at offset 64, one per job and previous attempt):
+ *   0  int    sequence (odd while being written)
+ *   4  int    flags (same as status flags of JobStatusCodec)
+ *   8  int    attempt number (0 for current attempt)
+ *   12 int    job id offset (UTF-8 bytes in data region)
+ *   16 int    job id length
+ *   20 int    note/properties offset (in data region)
+ *   24 int    note/properties length
+ *   32 double progress
+ *   40 long   start time (epoch milliseconds, Long.MIN_VALUE if none)
+ *   48 long   end time (same as above)
+ *   56 long   last activity (same as above)
+ * </pre>
+ * <p>
+ * Slots are assigned as jobs are first written or touched.
+ * When slots or data region are full, the ledger is rewritten
+ * to a new, larger file (discarding obsolete notes and properties).
+ * Readers can detect consistent slot values by reading the sequence
+ * number before and after reading a slot.
+ * </p>
+ * <p>
+ * By default, the ledger is only forced to disk when closed
+ * (see {@link #setDurability(StatusDurability)}).
+ * </p>
+ * @author Pascal Essiembre
+ */
+public class MappedJobStatusStore implements IJobStatusStore {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(MappedJobStatusStore.class);
+
+    public static final String LEDGER_FILENAME = "status.ledger";
+    public static final int DEFAULT_INITIAL_CAPACITY = 1024;
+
+    private static final int MAGIC = 0x4A45464C;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_SLOT_SIZE = 8;
+    private static final int H_SLOT_CAPACITY = 12;
+    private static final int H_SLOT_COUNT = 16;
+    private static final int H_DATA_START = 20;
+    private static final int H_DATA_END = 24;
+    private static final int H_RELOCATED = 28;
+
+    private static final int SLOT_SIZE = 64;
+    private static final int S_SEQUENCE = 0;
+    private static final int S_FLAGS = 4;
+    private static final int S_ATTEMPT = 8;
+    private static final int S_ID_OFFSET = 12;
+    private static final int S_ID_LENGTH = 16;
+    private static final int S_DATA_OFFSET = 20;
+    private static final int S_DATA_LENGTH = 24;
+    private static final int S_PROGRESS = 32;
+    private static final int S_START_TIME = 40;
+    private static final int S_END_TIME = 48;
+    private static final int S_LAST_ACTIVITY = 56;
+
+    private static final int FLAG_STOP_REQUESTED = 1;
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final int MIN_DATA_CAPACITY = 256 * 1024;
+    private static final int AVG_DATA_PER_SLOT = 256;
+    // Mapped buffers are limited to 2GB.
+    private static final long MAX_LEDGER_SIZE = Integer.MAX_VALUE;
+    // How long a slot can remain being written before giving up on it.
+    private static final long MAX_SLOT_WRITE_MILLIS = 1000;
+
+    private String suiteId;
+    private Path statusDir;
+    private int initialCapacity = DEFAULT_INITIAL_CAPACITY;
+    private StatusDurability durability = StatusDurability.PAGE_CACHE;
+    private long syncInterval = PeriodicSync.DEFAULT_SYNC_INTERVAL;
+    private PeriodicSync periodicSync;
+    // Only changed by tests, to reach the limit without a 2GB file.
+    private long maxLedgerSize = MAX_LEDGER_SIZE;
+
+    private MappedByteBuffer buffer;
+    /** Slot index of each job, keyed by job id (and attempt number). */
+    private final Map<String, Integer> slots = new HashMap<>();
+    /** Number of previous attempts of each job having some. */
+    private final Map<String, Integer> attemptCounts = new HashMap<>();
+    private final JobStatusCodec codec = new JobStatusCodec();
+
+    public MappedJobStatusStore() {
+        super();
+    }
+
+    /**
+     * Gets the number of job slots to allocate when creating a new ledger.
+     * @return initial capacity
+     */
+    public int getInitialCapacity() {
+        return initialCapacity;
+    }
+    /**
+     * Sets the number of job slots to allocate when creating a new ledger.
+     * The ledger grows as needed, but setting it close to the number of
+     * jobs in a suite avoids rewriting the ledger while running.
+     * @param initialCapacity initial capacity
+     */
+    public void setInitialCapacity(int initialCapacity) {
+        this.initialCapacity = initialCapacity;
+    }
+
+    public String getSuiteId() {
+        return suiteId;
+    }
+    public Path getStatusDir() {
+        return statusDir;
+    }
+    public Path getLedgerFile() {
+        return statusDir.resolve(LEDGER_FILENAME);
+    }
+
+    @Override
+    public synchronized void open(String suiteId, Path statusDir) {
+        Objects.requireNonNull(suiteId, "suiteId");
+        Objects.requireNonNull(statusDir, "statusDir");
+        unmap();
+        this.suiteId = suiteId;
+        this.statusDir = statusDir;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (periodicSync != null) {
+            periodicSync.stop();
+        }
+        if (buffer != null && durability != StatusDurability.PAGE_CACHE) {
+            buffer.force();
+        }
+        unmap();
+    }
+
+    @Override
+    public StatusDurability getDurability() {
+        return durability;
+    }
+    /**
+     * Sets how ledger writes are forced to disk:
+     * never ({@link StatusDurability#PAGE_CACHE}, default),
+     * once per sync interval ({@link StatusDurability#BATCHED}),
+     * or after each status write ({@link StatusDurability#STRICT}).
+     * Heartbeats alone never trigger a sync.
+     * @param durability status durability
+     */
+    public void setDurability(StatusDurability durability) {
+        Objects.requireNonNull(durability, "durability");
+        if (durability == StatusDurability.EPHEMERAL) {
+            throw new IllegalArgumentException(
+                    "File-based status store cannot be ephemeral.");
+        }
+        this.durability = durability;
+    }
+    /**
+     * Gets milliseconds between batched syncs.
+     * @return sync interval
+     */
+    public long getSyncInterval() {
+        return syncInterval;
+    }
+    /**
+     * Sets milliseconds between batched syncs. Only applies to
+     * {@link StatusDurability#BATCHED} durability.
+     * @param syncInterval sync interval
+     */
+    public void setSyncInterval(long syncInterval) {
+        this.syncInterval = syncInterval;
+    }
+
+    @Override
+    public synchronized void write(JobStatus status) throws IOException {
+        ensureMapped(true);
+        // Writing a status is a sign of activity.
+        writeSlot(resolveSlot(status.getJobId(), 0, true),
+                status, System.currentTimeMillis());
+        syncAfterWrite();
+    }
+
+    @Override
+    public synchronized void writeAttempt(
+            String jobId, int attemptNo, JobStatusData attempt)
+            throws IOException {
+        ensureMapped(true);
+        writeSlot(resolveSlot(jobId, attemptNo, true),
+                attempt, toMillis(attempt.getLastActivity()));
+        syncAfterWrite();
+    }
+
+    private void writeSlot(int slot, JobStatusData status, long lastActivity)
+            throws IOException {
+        int base = slotOffset(slot);
+        ByteBuffer data = codec.begin()
+                .putString(status.getNote())
+                .putProperties(status.getProperties())
+                .end();
+        // Only append note and properties when they changed.
+        if (isDataUnchanged(base, data)) {
+            data = null;
+        } else {
+            ensureDataSpace(data.remaining());
+        }
+
+        int flags = JobStatusCodec.toFlags(status);
+        beginSlotWrite(base);
+        buffer.putInt(base + S_FLAGS, flags);
+        buffer.putDouble(base + S_PROGRESS, status.getProgress());
+        buffer.putLong(base + S_START_TIME, toMillis(status.getStartTime()));
+        buffer.putLong(base + S_END_TIME, toMillis(status.getEndTime()));
+        buffer.putLong(base + S_LAST_ACTIVITY, lastActivity);
+        if (data != null) {
+            int length = data.remaining();
+            buffer.putInt(base + S_DATA_OFFSET, appendData(data));
+            buffer.putInt(base + S_DATA_LENGTH, length);
+        }
+        endSlotWrite(base);
+    }
+
+    private void syncAfterWrite() {
+        if (durability == StatusDurability.STRICT) {
+            buffer.force();
+        } else if (durability == StatusDurability.BATCHED) {
+            periodicSync().markDirty();
+        }
+    }
+
+    private synchronized void syncLedger() {
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+    private PeriodicSync periodicSync() {
+        if (periodicSync == null) {
+            periodicSync = new PeriodicSync(
+                    "JEF Ledger Sync", syncInterval, this::syncLedger);
+        }
+        return periodicSync;
+    }
+
+    @Override
+    public synchronized JobStatus read(String jobId) throws IOException {
+        if (jobId == null) {
+            return null;
+        }
+        if (!ensureMapped(false)) {
+            return new JobStatus(jobId, null);
+        }
+        Integer slot = resolveSlot(jobId, 0, false);
+        if (slot == null) {
+            return new JobStatus(jobId, null);
+        }
+        Set<JobStatusData> attempts = new TreeSet<>();
+        int attemptCount = attemptCounts.getOrDefault(jobId, 0);
+        for (int attemptNo = 1; attemptNo <= attemptCount; attemptNo++) {
+            Integer attemptSlot = resolveSlot(jobId, attemptNo, false);
+            if (attemptSlot != null) {
+                JobStatusData attempt = new JobStatusData();
+                readStableSlot(slotOffset(attemptSlot), attempt);
+                attempts.add(attempt);
+            }
+        }
+        JobStatus status = new JobStatus(jobId, attempts);
+        readStableSlot(slotOffset(slot), status);
+        return status;
+    }
+
+    // Retries until a stable (not being written) slot was read.
+    private void readStableSlot(int base, JobStatusData status)
+            throws IOException {
+        long deadline = System.currentTimeMillis() + MAX_SLOT_WRITE_MILLIS;
+        do {
+            int seq = buffer.getInt(base + S_SEQUENCE);
+            if ((seq & 1) == 0) {
+                readSlot(base, status);
+                if (buffer.getInt(base + S_SEQUENCE) == seq) {
+                    return;
+                }
+            }
+            Thread.yield();
+        } while (System.currentTimeMillis() < deadline);
+        throw new IOException("Job status slot still being written after "
+                + MAX_SLOT_WRITE_MILLIS + " ms: " + getLedgerFile());
+    }
+
+    @Override
+    public synchronized Instant touch(String jobId) throws IOException {
+        ensureMapped(true);
+        int base = slotOffset(resolveSlot(jobId, 0, true));
+        Instant now = Instant.now();
+        beginSlotWrite(base);
+        buffer.putLong(base + S_LAST_ACTIVITY, now.toEpochMilli());
+        endSlotWrite(base);
+        return now;
+    }
+    @Override
+    public synchronized Instant touch(Collection<String> jobIds)
+            throws IOException {
+        ensureMapped(true);
+        Instant now = Instant.now();
+        for (String jobId : jobIds) {
+            int base = slotOffset(resolveSlot(jobId, 0, true));
+            beginSlotWrite(base);
+            buffer.putLong(base + S_LAST_ACTIVITY, now.toEpochMilli());
+            endSlotWrite(base);
+        }
+        return now;
+    }
+
+    @Override
+    public synchronized void delete() throws IOException {
+        unmap();
+        FileUtils.deleteDirectory(statusDir.toFile());
+    }
+
+    @Override
+    public synchronized void backup(Path backupDir) throws IOException {
+        Objects.requireNonNull(backupDir, "backupDir");
+        close();
+        LOG.debug("Moving {} to {}", statusDir, backupDir);
+        try {
+            FileUtils.moveDirectory(statusDir.toFile(), backupDir.toFile());
+        } catch (FileExistsException e) {
+            LOG.error("Target backup directory already exists: {}", backupDir);
+            throw e;
+        }
+    }
+
+    //--- Mapping --------------------------------------------------------------
+
+    // Returns false if the ledger does not exist and create is false
+    private boolean ensureMapped(boolean create) throws IOException {
+        if (buffer != null && buffer.getInt(H_RELOCATED) == 0) {
+            return true;
+        }
+        unmap();
+        Path file = getLedgerFile();
+        if (!file.toFile().exists()) {
+            if (!create) {
+                return false;
+            }
+            Files.createDirectories(statusDir);
+            int capacity = Math.max(1, initialCapacity);
+            writeLedger(file, capacity, Math.max(MIN_DATA_CAPACITY,
+                    capacity * AVG_DATA_PER_SLOT), new ArrayList<>());
+        }
+        map(file);
+        return true;
+    }
+
+    private void map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ, WRITE)) {
+            buffer = channel.map(MapMode.READ_WRITE, 0, channel.size());
+        }
+        if (buffer.capacity() < HEADER_SIZE
+                || buffer.getInt(H_MAGIC) != MAGIC) {
+            buffer = null;
+            throw new IOException("Not a JEF status ledger: " + file);
+        }
+        if (buffer.getInt(H_VERSION) > VERSION) {
+            buffer = null;
+            throw new IOException("Unsupported JEF status ledger version "
+                    + "(upgrade JEF to read it): " + file);
+        }
+        slots.clear();
+        attemptCounts.clear();
+        indexNewSlots();
+        repairSlots();
+    }
+
+    // A process dying while writing a slot leaves it being written
+    // forever. Slots still being written after a while are marked
+    // consistent, like when the ledger is rebuilt.
+    private void repairSlots() {
+        int count = buffer.getInt(H_SLOT_COUNT);
+        for (int slot = 0; slot < count; slot++) {
+            int base = slotOffset(slot);
+            int seq = buffer.getInt(base + S_SEQUENCE);
+            if ((seq & 1) != 0 && !awaitSlotWrite(base, seq)) {
+                LOG.warn("Job status slot {} was left being written, "
+                        + "marking it consistent: {}", slot, getLedgerFile());
+                buffer.putInt(base + S_SEQUENCE, seq + 1);
+            }
+        }
+    }
+    // Whether the slot sequence changed (write ended) in time.
+    private boolean awaitSlotWrite(int base, int seq) {
+        long deadline = System.currentTimeMillis() + MAX_SLOT_WRITE_MILLIS;
+        while (buffer.getInt(base + S_SEQUENCE) == seq) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            Thread.yield();
+        }
+        return true;
+    }
+
+    private void unmap() {
+        // Mapped buffers cannot be explicitly released before Java 9.
+        // They are released when garbage collected.
+        buffer = null;
+        slots.clear();
+        attemptCounts.clear();
+    }
+
+    // Picks up slots added since last indexed (e.g., by another process).
+    private void indexNewSlots() {
+        int count = buffer.getInt(H_SLOT_COUNT);
+        for (int slot = slots.size(); slot < count; slot++) {
+            int base = slotOffset(slot);
+            String jobId = readString(buffer,
+                    buffer.getInt(base + S_ID_OFFSET),
+                    buffer.getInt(base + S_ID_LENGTH));
+            int attemptNo = buffer.getInt(base + S_ATTEMPT);
+            slots.put(toSlotKey(jobId, attemptNo), slot);
+            if (attemptNo > 0) {
+                attemptCounts.merge(jobId, attemptNo, Math::max);
+            }
+        }
+    }
+
+    //--- Slots ----------------------------------------------------------------
+
+    // Attempt zero is the current attempt, others are previous ones.
+    private Integer resolveSlot(String jobId, int attemptNo, boolean create)
+            throws IOException {
+        String key = toSlotKey(jobId, attemptNo);
+        Integer slot = slots.get(key);
+        if (slot == null && slots.size() < buffer.getInt(H_SLOT_COUNT)) {
+            indexNewSlots();
+            slot = slots.get(key);
+        }
+        if (slot != null || !create) {
+            return slot;
+        }
+
+        byte[] id = jobId.getBytes(StandardCharsets.UTF_8);
+        int count = buffer.getInt(H_SLOT_COUNT);
+        if (count >= buffer.getInt(H_SLOT_CAPACITY)) {
+            rebuild(count * 2, id.length);
+        } else {
+            ensureDataSpace(id.length);
+        }
+        slot = count;
+        int base = slotOffset(slot);
+        buffer.putInt(base + S_ID_OFFSET, appendData(id));
+        buffer.putInt(base + S_ID_LENGTH, id.length);
+        buffer.putInt(base + S_ATTEMPT, attemptNo);
+        buffer.putLong(base + S_START_TIME, NO_TIME);
+        buffer.putLong(base + S_END_TIME, NO_TIME);
+        buffer.putLong(base + S_LAST_ACTIVITY, NO_TIME);
+        buffer.putInt(H_SLOT_COUNT, count + 1);
+        slots.put(key, slot);
+        if (attemptNo > 0) {
+            attemptCounts.merge(jobId, attemptNo, Math::max);
+        }
+        return slot;
+    }
+    private static String toSlotKey(String jobId, int attemptNo) {
+        if (attemptNo == 0) {
+            return jobId;
+        }
+        return jobId + '\0' + attemptNo;
+    }
+
+    private void readSlot(int base, JobStatusData status)
+            throws IOException {
+        int flags = buffer.getInt(base + S_FLAGS);
+        status.setStopRequested((flags & FLAG_STOP_REQUESTED) != 0);
+        status.setRecordedState(JobStatusCodec.toState(flags));
+        status.setProgress(buffer.getDouble(base + S_PROGRESS));
+        status.setStartTime(toInstant(buffer.getLong(base + S_START_TIME)));
+        status.setEndTime(toInstant(buffer.getLong(base + S_END_TIME)));
+        status.setLastActivity(
+                toInstant(buffer.getLong(base + S_LAST_ACTIVITY)));
+        int length = buffer.getInt(base + S_DATA_LENGTH);
+        status.setNote(null);
+        status.getProperties().clear();
+        if (length > 0) {
+            ByteBuffer in = buffer.duplicate();
+            in.position(buffer.getInt(base + S_DATA_OFFSET));
+            status.setNote(codec.getString(in));
+            codec.getProperties(in, status.getProperties());
+        }
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+    private void beginSlotWrite(int base) {
+        buffer.putInt(base + S_SEQUENCE, buffer.getInt(base + S_SEQUENCE) + 1);
+    }
+    private void endSlotWrite(int base) {
+        // Even, even if marked consistent by another process meanwhile.
+        buffer.putInt(base + S_SEQUENCE,
+                (buffer.getInt(base + S_SEQUENCE) | 1) + 1);
+    }
+
+    //--- Data region ----------------------------------------------------------
+
+    private void ensureDataSpace(int length) throws IOException {
+        if (buffer.getInt(H_DATA_END) + length > buffer.capacity()) {
+            rebuild(buffer.getInt(H_SLOT_CAPACITY), length);
+        }
+    }
+
+    // Compares with the note and properties last written to a slot.
+    private boolean isDataUnchanged(int base, ByteBuffer data) {
+        int length = buffer.getInt(base + S_DATA_LENGTH);
+        if (length != data.remaining()) {
+            return false;
+        }
+        ByteBuffer current = buffer.duplicate();
+        int offset = buffer.getInt(base + S_DATA_OFFSET);
+        current.position(offset);
+        current.limit(offset + length);
+        return current.equals(data);
+    }
+
+    private int appendData(byte[] bytes) {
+        return appendData(ByteBuffer.wrap(bytes));
+    }
+    private int appendData(ByteBuffer bytes) {
+        int offset = buffer.getInt(H_DATA_END);
+        int length = bytes.remaining();
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(offset);
+        dup.put(bytes);
+        buffer.putInt(H_DATA_END, offset + length);
+        return offset;
+    }
+
+    /*default*/ void setMaxLedgerSize(long maxLedgerSize) {
+        this.maxLedgerSize = maxLedgerSize;
+    }
+
+    // Rewrites the ledger to a new file, with only current data.
+    private void rebuild(int slotCapacity, int extraData) throws IOException {
+        int count = buffer.getInt(H_SLOT_COUNT);
+        List<byte[]> slotBytes = new ArrayList<>(count);
+        List<byte[]> ids = new ArrayList<>(count);
+        List<byte[]> datas = new ArrayList<>(count);
+        long liveData = 0;
+        for (int slot = 0; slot < count; slot++) {
+            int base = slotOffset(slot);
+            slotBytes.add(readBytes(buffer, base, SLOT_SIZE));
+            byte[] id = readBytes(buffer, buffer.getInt(base + S_ID_OFFSET),
+                    buffer.getInt(base + S_ID_LENGTH));
+            byte[] data = readBytes(buffer,
+                    buffer.getInt(base + S_DATA_OFFSET),
+                    buffer.getInt(base + S_DATA_LENGTH));
+            ids.add(id);
+            datas.add(data);
+            liveData += id.length + data.length;
+        }
+        long dataCapacity = Math.max(Math.max(MIN_DATA_CAPACITY,
+                (long) slotCapacity * AVG_DATA_PER_SLOT),
+                (liveData + extraData) * 2);
+        if (HEADER_SIZE + (long) slotCapacity * SLOT_SIZE
+                + dataCapacity > maxLedgerSize) {
+            throw new IOException("JEF status ledger cannot grow beyond "
+                    + maxLedgerSize + " bytes: " + getLedgerFile());
+        }
+
+        Path file = getLedgerFile();
+        Path tmpFile = file.resolveSibling(LEDGER_FILENAME + ".tmp");
+        LOG.debug("Rewriting status ledger with {} slots: {}",
+                slotCapacity, file);
+        List<Object[]> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(new Object[] {
+                    slotBytes.get(i), ids.get(i), datas.get(i) });
+        }
+        writeLedger(tmpFile, slotCapacity, (int) dataCapacity, entries);
+
+        // Tell readers of the current file to reopen it.
+        buffer.putInt(H_RELOCATED, 1);
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        map(file);
+    }
+
+    // Each entry is: slot bytes, job id bytes, data bytes
+    private static void writeLedger(Path file, int slotCapacity,
+            int dataCapacity, List<Object[]> entries) throws IOException {
+        int dataStart = HEADER_SIZE + slotCapacity * SLOT_SIZE;
+        try (FileChannel channel = FileChannel.open(
+                file, CREATE, TRUNCATE_EXISTING, READ, WRITE)) {
+            MappedByteBuffer b = channel.map(
+                    MapMode.READ_WRITE, 0, dataStart + (long) dataCapacity);
+            b.putInt(H_MAGIC, MAGIC);
+            b.putInt(H_VERSION, VERSION);
+            b.putInt(H_SLOT_SIZE, SLOT_SIZE);
+            b.putInt(H_SLOT_CAPACITY, slotCapacity);
+            b.putInt(H_DATA_START, dataStart);
+            int dataEnd = dataStart;
+            int slot = 0;
+            for (Object[] entry : entries) {
+                byte[] slotBytes = (byte[]) entry[0];
+                byte[] id = (byte[]) entry[1];
+                byte[] data = (byte[]) entry[2];
+                int base = slotOffset(slot++);
+                putBytes(b, base, slotBytes);
+                // A slot being written when copied is marked consistent.
+                b.putInt(base + S_SEQUENCE, b.getInt(base + S_SEQUENCE) & ~1);
+                putBytes(b, dataEnd, id);
+                b.putInt(base + S_ID_OFFSET, dataEnd);
+                dataEnd += id.length;
+                putBytes(b, dataEnd, data);
+                b.putInt(base + S_DATA_OFFSET, dataEnd);
+                dataEnd += data.length;
+            }
+            b.putInt(H_SLOT_COUNT, entries.size());
+            b.putInt(H_DATA_END, dataEnd);
+            b.force();
+        }
+    }
+
+    //--- Encoding -------------------------------------------------------------
+
+    private static String readString(ByteBuffer b, int offset, int length) {
+        return new String(readBytes(b, offset, length), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(ByteBuffer b, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer dup = b.duplicate();
+        dup.position(offset);
+        dup.get(bytes);
+        return bytes;
+    }
+    private static void putBytes(ByteBuffer b, int offset, byte[] bytes) {
+        ByteBuffer dup = b.duplicate();
+        dup.position(offset);
+        dup.put(bytes);
+    }
+
+    private static long toMillis(Instant instant) {
+        return instant == null ? NO_TIME : instant.toEpochMilli();
+    }
+    private static Instant toInstant(long millis) {
+        return millis == NO_TIME ? null : Instant.ofEpochMilli(millis);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof MappedJobStatusStore)) {
+            return false;
+        }
+        MappedJobStatusStore castOther = (MappedJobStatusStore) other;
+        return new EqualsBuilder()
+                .append(statusDir, castOther.statusDir)
+                .append(suiteId, castOther.suiteId)
+                .append(durability, castOther.durability)
+                .append(syncInterval, castOther.syncInterval)
+                .append(initialCapacity, castOther.initialCapacity)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(statusDir)
+                .append(suiteId)
+                .append(durability)
+                .append(syncInterval)
+                .append(initialCapacity)
+                .toHashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("statusDir", statusDir)
+                .append("suiteId", suiteId)
+                .append("durability", durability)
+                .append("syncInterval", syncInterval)
+                .append("initialCapacity", initialCapacity)
+                .toString();
+    }
+}
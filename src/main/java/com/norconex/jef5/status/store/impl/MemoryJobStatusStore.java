@@ -0,0 +1,176 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status.store.impl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.store.IJobStatusStore;
+import com.norconex.jef5.status.store.StatusDurability;
+
+/**
+ * <p>
+ * Status store keeping job statuses in memory only. Meant for
+ * short-lived suites that will never be resumed, and for testing.
+ * Statuses are lost when the JVM exits and cannot be read from
+ * another process.
+ * </p>
+ * <p>
+ * The suite status directory is only touched when deleting or backing up
+ * statuses, to clean up files other than statuses the suite may
+ * have created there (e.g., the suite index).
+ * </p>
+ * @author Pascal Essiembre
+ */
+public class MemoryJobStatusStore implements IJobStatusStore {
+
+    private String suiteId;
+    private Path statusDir;
+    private final Map<String, JobStatus> statuses = new ConcurrentHashMap<>();
+
+    public MemoryJobStatusStore() {
+        super();
+    }
+
+    public String getSuiteId() {
+        return suiteId;
+    }
+    public Path getStatusDir() {
+        return statusDir;
+    }
+
+    @Override
+    public void open(String suiteId, Path statusDir) {
+        Objects.requireNonNull(suiteId, "suiteId");
+        Objects.requireNonNull(statusDir, "statusDir");
+        this.suiteId = suiteId;
+        this.statusDir = statusDir;
+    }
+
+    @Override
+    public void close() {
+        //NOOP: statuses remain available until deleted.
+    }
+
+    @Override
+    public StatusDurability getDurability() {
+        return StatusDurability.EPHEMERAL;
+    }
+
+    @Override
+    public void write(JobStatus status) {
+        JobStatus copy = copy(status);
+        // Writing a status is a sign of activity.
+        copy.setLastActivity(Instant.now());
+        statuses.put(status.getJobId(), copy);
+    }
+
+    @Override
+    public JobStatus read(String jobId) {
+        if (jobId == null) {
+            return null;
+        }
+        JobStatus status = statuses.get(jobId);
+        if (status == null) {
+            return new JobStatus(jobId, null);
+        }
+        return copy(status);
+    }
+
+    @Override
+    public Instant touch(String jobId) {
+        Instant now = Instant.now();
+        statuses.computeIfAbsent(
+                jobId, id -> new JobStatus(id, null)).setLastActivity(now);
+        return now;
+    }
+
+    @Override
+    public void delete() throws IOException {
+        statuses.clear();
+        if (statusDir.toFile().exists()) {
+            FileUtils.deleteDirectory(statusDir.toFile());
+        }
+    }
+
+    @Override
+    public void backup(Path backupDir) throws IOException {
+        Objects.requireNonNull(backupDir, "backupDir");
+        statuses.clear();
+        if (statusDir.toFile().exists()) {
+            FileUtils.moveDirectory(statusDir.toFile(), backupDir.toFile());
+        }
+    }
+
+    private static JobStatus copy(JobStatus source) {
+        JobStatus target = new JobStatus(
+                source.getJobId(), source.getResumedAttempts());
+        target.setProgress(source.getProgress());
+        target.setNote(source.getNote());
+        target.setStartTime(source.getStartTime());
+        target.setEndTime(source.getEndTime());
+        target.setLastActivity(source.getLastActivity());
+        target.setStopRequested(source.isStopRequested());
+        target.setRecordedState(source.getRecordedState());
+        for (Entry<String, List<String>> entry
+                : source.getProperties().entrySet()) {
+            target.getProperties().put(
+                    entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        return target;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (!(other instanceof MemoryJobStatusStore)) {
+            return false;
+        }
+        MemoryJobStatusStore castOther = (MemoryJobStatusStore) other;
+        return new EqualsBuilder()
+                .append(statusDir, castOther.statusDir)
+                .append(suiteId, castOther.suiteId)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(statusDir)
+                .append(suiteId)
+                .toHashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE)
+                .append("statusDir", statusDir)
+                .append("suiteId", suiteId)
+                .toString();
+    }
+}
@@ -0,0 +1,122 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.suite;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.norconex.jef5.status.JobState;
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobSuiteStatus;
+
+/**
+ * How long jobs took in previous executions of a suite, read from its
+ * status backups. Only jobs that completed are considered, averaged
+ * over the most recent executions.
+ * @author Pascal Essiembre
+ */
+class JobDurationHistory {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(JobDurationHistory.class);
+
+    /** Number of most recent executions considered. */
+    static final int MAX_EXECUTIONS = 3;
+
+    private final Map<String, Duration> durations;
+
+    private JobDurationHistory(Map<String, Duration> durations) {
+        super();
+        this.durations = durations;
+    }
+
+    /**
+     * Gets the average duration of a job, including resumed attempts.
+     * @param jobId job identifier
+     * @return duration or <code>null</code> if unknown
+     */
+    Duration getDuration(String jobId) {
+        return durations.get(jobId);
+    }
+
+    /**
+     * Reads job durations from suite status backups. Backups that
+     * cannot be read are ignored.
+     * @param backupDir suite status backup directory
+     * @return job duration history
+     */
+    static JobDurationHistory load(Path backupDir) {
+        Map<String, Duration> totals = new HashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        for (Path index : latestIndices(backupDir)) {
+            try {
+                JobSuiteStatus suiteStatus = JobSuiteStatus.getInstance(index);
+                if (suiteStatus == null) {
+                    continue;
+                }
+                try {
+                    for (JobStatus status : suiteStatus.getAllStatuses()) {
+                        if (status.getState() == JobState.COMPLETED) {
+                            totals.merge(status.getJobId(),
+                                    status.getSessionEffectiveDuration(),
+                                    Duration::plus);
+                            counts.merge(status.getJobId(), 1, Integer::sum);
+                        }
+                    }
+                } finally {
+                    suiteStatus.close();
+                }
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Could not read job durations from: {}", index, e);
+            }
+        }
+        Map<String, Duration> averages = new HashMap<>();
+        totals.forEach((jobId, total) ->
+                averages.put(jobId, total.dividedBy(counts.get(jobId))));
+        LOG.debug("Historical duration known for {} jobs.", averages.size());
+        return new JobDurationHistory(averages);
+    }
+
+    // Backups are in date directories (yyyy/MM/dd/HH-mm-ss), so sorting
+    // paths sorts them by date.
+    private static List<Path> latestIndices(Path backupDir) {
+        if (!backupDir.toFile().isDirectory()) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> paths = Files.walk(backupDir, 5)) {
+            return paths
+                    .filter(p -> JobSuite.INDEX_FILENAME.equals(
+                            p.getFileName().toString()))
+                    .sorted(Comparator.comparing(Path::toString).reversed())
+                    .limit(MAX_EXECUTIONS)
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            LOG.warn("Could not list status backups: {}", backupDir, e);
+            return Collections.emptyList();
+        }
+    }
+}
@@ -15,6 +15,9 @@
 package com.norconex.jef5.suite;
 
 import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
@@ -24,35 +27,80 @@ import com.norconex.jef5.status.JobStatus;
 
 public class JobHeartbeatGenerator extends Thread {
 
-    //TODO have a isRunning method on JobSessionFacade instead?
-    public static final long HEARTBEAT_INTERVAL = 5000;
-    
+    /**
+     * With adaptive heartbeat, number of running jobs for which
+     * the interval is increased by one heartbeat interval.
+     */
+    public static final int ADAPTIVE_STEP_JOBS = 500;
+
     private final Queue<JobStatus> statuses = 
             new ConcurrentLinkedQueue<>();
     private final JobSuite suite;
+    private final long interval;
+    private final boolean adaptive;
     
     private boolean terminate = false;
     
     public JobHeartbeatGenerator(JobSuite suite) {
+        this(suite, JobSuiteConfig.DEFAULT_HEARTBEAT_INTERVAL, false);
+    }
+    /**
+     * Creates a heartbeat generator.
+     * @param suite job suite
+     * @param interval milliseconds between heartbeats
+     * @param adaptive whether to increase the interval with the number
+     *        of running jobs (up to half the suite activity timeout)
+     */
+    public JobHeartbeatGenerator(
+            JobSuite suite, long interval, boolean adaptive) {
         super();
         this.suite = suite;
+        this.interval = interval;
+        this.adaptive = adaptive;
     }
 
     @Override
     public void run() {
         try {
             while(!terminate) {
-                for (JobStatus status : statuses) {
-                    status.setLastActivity(suite.getJobSuiteStatusDAO().touch(
-                            status.getJobId()));
-                }
-                Sleeper.sleepMillis(HEARTBEAT_INTERVAL);
+                beat();
+                Sleeper.sleepMillis(getCurrentInterval());
             }
         } catch (IOException e) {
             throw new JefException("Cannot update status heartbeat.", e);
         }
     }
 
+    /**
+     * Gets the milliseconds until the next heartbeat, given how many
+     * jobs are currently running.
+     * @return current heartbeat interval
+     */
+    public long getCurrentInterval() {
+        if (!adaptive) {
+            return interval;
+        }
+        long adapted = interval * (1 + statuses.size() / ADAPTIVE_STEP_JOBS);
+        return Math.max(interval,
+                Math.min(adapted, suite.getActivityTimeout() / 2));
+    }
+
+    // Touches all registered jobs at once.
+    private void beat() throws IOException {
+        List<JobStatus> alive = new ArrayList<>(statuses);
+        if (alive.isEmpty()) {
+            return;
+        }
+        List<String> jobIds = new ArrayList<>(alive.size());
+        for (JobStatus status : alive) {
+            jobIds.add(status.getJobId());
+        }
+        Instant now = suite.getJobStatusStore().touch(jobIds);
+        for (JobStatus status : alive) {
+            status.setLastActivity(now);
+        }
+    }
+
     public void register(JobStatus status) {
         statuses.add(status);
     }
@@ -0,0 +1,38 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.suite;
+
+/**
+ * How running a job ended
+ * (see {@link JobSuite#runJob(com.norconex.jef5.job.IJob, Runnable)}).
+ * @author Pascal Essiembre
+ * @since 5.0.0
+ */
+public enum JobRunResult {
+
+    /**
+     * The job ran without error, or was skipped since already completed.
+     */
+    SUCCEEDED,
+    /**
+     * The job ended in error and is not retried.
+     */
+    FAILED,
+    /**
+     * The job ended in error and is released until it is due to be
+     * retried, when the retry handler is invoked.
+     */
+    RETRY_SCHEDULED
+}
@@ -0,0 +1,187 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.suite;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.norconex.jef5.JefException;
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.store.IJobStatusStore;
+
+/**
+ * Persists job status updates. When no flush interval is set, every
+ * update is written right away (write-through). Otherwise, updates are
+ * kept in memory and coalesced per job by a background thread, which
+ * writes them when the flush interval elapses or when the number of
+ * jobs with pending updates reaches the flush threshold (write-behind).
+ * @author Pascal Essiembre
+ */
+class JobStatusWriter {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(JobStatusWriter.class);
+
+    private final IJobStatusStore store;
+    private final long flushInterval;
+    private final int flushThreshold;
+
+    /** Latest unsaved status for each job, keyed by job id. */
+    private final Map<String, JobStatus> pending = new ConcurrentHashMap<>();
+    private final Object flushSignal = new Object();
+
+    private Thread flusher;
+    private volatile boolean terminate;
+
+    JobStatusWriter(
+            IJobStatusStore store, long flushInterval, int flushThreshold) {
+        super();
+        this.store = store;
+        this.flushInterval = flushInterval;
+        this.flushThreshold = flushThreshold;
+    }
+
+    boolean isWriteBehind() {
+        return flushInterval > 0;
+    }
+
+    void start() {
+        if (!isWriteBehind()) {
+            return;
+        }
+        terminate = false;
+        flusher = new Thread(this::flushPeriodically, "JEF Status Writer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Persists a status update, right away or later depending on
+     * whether write-behind is enabled.
+     * @param status job status
+     */
+    void write(JobStatus status) {
+        if (!isWriteBehind()) {
+            persist(status);
+            return;
+        }
+        pending.put(status.getJobId(), status);
+        if (flushThreshold > 0 && pending.size() >= flushThreshold) {
+            synchronized (flushSignal) {
+                flushSignal.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Synchronously persists a job status, discarding any pending
+     * update for the same job.
+     * @param status job status
+     */
+    void flush(JobStatus status) {
+        pending.remove(status.getJobId());
+        persist(status);
+    }
+
+    /**
+     * Synchronously persists all pending status updates.
+     */
+    void flushAll() {
+        flushPending(false);
+    }
+
+    /**
+     * Stops background flushing and persists any pending status updates.
+     */
+    void close() {
+        terminate = true;
+        if (flusher != null) {
+            synchronized (flushSignal) {
+                flushSignal.notifyAll();
+            }
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flusher = null;
+        }
+        flushAll();
+    }
+
+    private void flushPeriodically() {
+        while (!terminate) {
+            synchronized (flushSignal) {
+                if (!terminate && (flushThreshold <= 0
+                        || pending.size() < flushThreshold)) {
+                    try {
+                        flushSignal.wait(flushInterval);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+            // Failing to write some statuses must not stop
+            // writing others.
+            try {
+                flushPending(true);
+            } catch (RuntimeException e) {
+                LOG.error("Could not flush job statuses.", e);
+            }
+        }
+    }
+
+    private void flushPending(boolean background) {
+        for (String jobId : new ArrayList<>(pending.keySet())) {
+            JobStatus status = pending.remove(jobId);
+            if (status == null) {
+                continue;
+            }
+            try {
+                persist(status);
+            } catch (RuntimeException e) {
+                if (!background) {
+                    throw e;
+                }
+                // Keep it for next round unless a newer update came in.
+                pending.putIfAbsent(jobId, status);
+                LOG.error("Could not flush status for job: {}", jobId, e);
+            }
+        }
+    }
+
+    private void persist(JobStatus status) {
+        // The same status may be flushed from different threads.
+        // Snapshots are taken under the lock so an older one
+        // is never written after a newer one.
+        synchronized (status) {
+            // Jobs keep updating their status while it is written.
+            JobStatus snapshot = status.snapshot();
+            try {
+                store.write(snapshot);
+            } catch (IOException e) {
+                throw new JefException(
+                        "Cannot persist status update for job: "
+                                + status.getJobId(), e);
+            }
+        }
+    }
+}
@@ -14,17 +14,27 @@
  */
 package com.norconex.jef5.suite;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -35,8 +45,11 @@ import com.norconex.commons.lang.file.FileUtil;
 import com.norconex.commons.lang.time.DateUtil;
 import com.norconex.jef5.JefException;
 import com.norconex.jef5.event.JefEvent;
+import com.norconex.jef5.job.AbstractResumableJob;
 import com.norconex.jef5.job.IJob;
 import com.norconex.jef5.job.IJobVisitor;
+import com.norconex.jef5.job.RateLimiter;
+import com.norconex.jef5.job.RetryPolicy;
 import com.norconex.jef5.job.group.IJobGroup;
 import com.norconex.jef5.shutdown.IShutdownHook;
 import com.norconex.jef5.shutdown.ShutdownException;
@@ -44,9 +57,12 @@ import com.norconex.jef5.shutdown.impl.FileShutdownHook;
 import com.norconex.jef5.status.IJobStatusVisitor;
 import com.norconex.jef5.status.JobState;
 import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusData;
 import com.norconex.jef5.status.JobStatusUpdater;
 import com.norconex.jef5.status.JobSuiteStatus;
 import com.norconex.jef5.status.JobSuiteStatusDAO;
+import com.norconex.jef5.status.store.IJobStatusStore;
+import com.norconex.jef5.status.store.StatusDurability;
 
 
 //TODO rename JobExecutor and move to root package?
@@ -67,16 +83,32 @@ public final class JobSuite {
     public static final String STATUS_SUBDIR = "status";
     public static final String STATUS_BACKUP_SUBDIR = "backups/status";
     public static final String INDEX_FILENAME = "suite.index";
+    public static final String LOCK_FILENAME = "suite.lck";
+
+    // How often a job waiting to be retried checks for stop requests.
+    private static final long RETRY_STOP_CHECK_INTERVAL = 1000;
 
     /** Associates job id with current thread. */
     private static final ThreadLocal<String> CURRENT_JOB_ID =
             new InheritableThreadLocal<>();
 
-    private final Map<String, IJob> jobs = new HashMap<>();
+    /** Creates virtual threads, <code>null</code> if not supported. */
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY =
+            createVirtualThreadFactory();
+
+    private final Map<String, IJob> jobs = new ConcurrentHashMap<>();
     private final IJob rootJob;
 //    private final JobSuiteConfig config;
     private final Path workdir;
     private final boolean backupDisabled;
+    private final int statusLoadThreads;
+    private final int maxParallelism;
+    private final JobThreadMode threadMode;
+    private final long heartbeatInterval;
+    private final long activityTimeout;
+    private final RetryPolicy retryPolicy;
+    private final long timeout;
+    private final RateLimiter rateLimiter;
     //TODO rename JobEvent* to just Event*
 
     private final EventManager eventManager;
@@ -86,7 +118,21 @@ public final class JobSuite {
 //    private JobSessionFacade jobSessionFacade;
 //    private final IJobSessionStore jobSessionStore;
     private JobSuiteStatus suiteStatus;
-    private final JobSuiteStatusDAO suiteStatusDAO;
+    private final IJobStatusStore statusStore;
+    private final JobStatusWriter statusWriter;
+    private final JobSuiteLock suiteLock;
+    private ForkJoinPool jobExecutor;
+    private Semaphore jobPermits;
+    private ScheduledExecutorService retryScheduler;
+    private JobDurationHistory durationHistory;
+    /** Watches job timeouts, by job id. */
+    private final JobWatchdog watchdog = new JobWatchdog();
+    /** Threads of jobs being run, including job groups. */
+    private final Map<String, Thread> jobThreads = new ConcurrentHashMap<>();
+    /** Attempts made by jobs released until they are retried. */
+    private final Map<String, Integer> retries = new ConcurrentHashMap<>();
+    /** Jobs paced by their group, not to be paced again when run. */
+    private final Set<String> pacedJobs = ConcurrentHashMap.newKeySet();
 
     //TODO consider making configurable?
     //TODO have it optinally implement JefEventListener instead of
@@ -120,15 +166,52 @@ public final class JobSuite {
         //TODO have a reset/clean method so a new execute can start fresh?
 
         this.workdir = resolveWorkdir(cfg.getWorkdir());
-        this.suiteStatusDAO =
-                new JobSuiteStatusDAO(rootJob.getId(), getStatusDir());
+        this.suiteLock = new JobSuiteLock(getLockFile());
+        this.statusStore = ObjectUtils.defaultIfNull(
+                cfg.getStatusStore(), new JobSuiteStatusDAO());
+        try {
+            this.statusStore.open(rootJob.getId(), getStatusDir());
+        } catch (IOException e) {
+            throw new JefException("Cannot open job status store.", e);
+        }
 //        try {
 //            this.suiteSession = JobSuiteStatus.getInstance(this);
 //        } catch (IOException e) {
 //            throw new JefException("Cannot create JEF suite session.", e);
 //        }
-        this.heartbeatGenerator = new JobHeartbeatGenerator(this);
+        // No point delaying writes to a store that does not persist them.
+        long flushInterval = cfg.getStatusFlushInterval();
+        if (statusStore.getDurability() == StatusDurability.EPHEMERAL) {
+            flushInterval = 0;
+        }
+        this.statusWriter = new JobStatusWriter(statusStore,
+                flushInterval, cfg.getStatusFlushThreshold());
+        this.heartbeatInterval = cfg.getHeartbeatInterval();
+        this.activityTimeout = cfg.getActivityTimeout();
+        if (activityTimeout <= heartbeatInterval) {
+            LOG.warn("Activity timeout ({}) should be greater than the "
+                    + "heartbeat interval ({}), or running jobs will "
+                    + "be reported as not running.",
+                    activityTimeout, heartbeatInterval);
+        }
+        this.heartbeatGenerator = new JobHeartbeatGenerator(
+                this, heartbeatInterval, cfg.isAdaptiveHeartbeat());
         this.backupDisabled = cfg.isBackupDisabled();
+        this.retryPolicy = cfg.getRetryPolicy();
+        this.timeout = cfg.getTimeout();
+        this.rateLimiter = cfg.getRateLimiter();
+        this.statusLoadThreads = cfg.getStatusLoadThreads();
+        this.maxParallelism = cfg.getMaxParallelism() > 0
+                ? cfg.getMaxParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        JobThreadMode mode = ObjectUtils.defaultIfNull(
+                cfg.getThreadMode(), JobThreadMode.PLATFORM);
+        if (mode == JobThreadMode.VIRTUAL && !isVirtualThreadSupported()) {
+            LOG.warn("Virtual threads require Java 21 or higher. "
+                    + "Using platform threads instead.");
+            mode = JobThreadMode.PLATFORM;
+        }
+        this.threadMode = mode;
 
         accept((job, jobStatus) -> jobs.put(job.getId(), job));
 
@@ -147,6 +230,20 @@ public final class JobSuite {
                 FileUtil.toSafeFileName(suiteId), STATUS_SUBDIR));
     }
 
+    /**
+     * Gets the file locked while this suite executes, preventing
+     * concurrent executions. It is not under the status directory
+     * so backing up or deleting statuses does not affect it.
+     * @return lock file
+     */
+    public Path getLockFile() {
+        return getLockFile(workdir, getId());
+    }
+    public static Path getLockFile(Path suiteWorkdir, String suiteId) {
+        return suiteWorkdir.resolve(Paths.get(
+                FileUtil.toSafeFileName(suiteId), LOCK_FILENAME));
+    }
+
     public Path getStatusBackupDir(Instant date) {
         return getStatusBackupDir(workdir, getId(), date);
     }
@@ -180,8 +277,201 @@ public final class JobSuite {
     }
 
     // make package visibility?
-    public JobSuiteStatusDAO getJobSuiteStatusDAO() {
-        return suiteStatusDAO;
+    public IJobStatusStore getJobStatusStore() {
+        return statusStore;
+    }
+
+    /**
+     * Gets the minimum interval in milliseconds at which running jobs
+     * record they are still alive.
+     * @return heartbeat interval
+     */
+    public long getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+    /**
+     * Gets the number of milliseconds without activity after which
+     * a job is no longer considered running.
+     * @return activity timeout
+     */
+    public long getActivityTimeout() {
+        return activityTimeout;
+    }
+
+    /**
+     * Gets the number of jobs this suite aims to execute concurrently
+     * across all job groups (see
+     * {@link JobSuiteConfig#setMaxParallelism(int)}).
+     * @return maximum parallelism
+     */
+    public int getMaxParallelism() {
+        return maxParallelism;
+    }
+
+    /**
+     * Gets the work-stealing executor shared by all job groups of this
+     * suite running jobs concurrently. Groups submit their jobs to it
+     * and help execute pending jobs while waiting for their own,
+     * so nested groups do not each hold threads of their own.
+     * Its parallelism is the suite maximum parallelism, exceeded only
+     * to compensate for blocked jobs.
+     * It is shut down when the suite execution ends.
+     * @return job executor
+     */
+    public synchronized ForkJoinPool getJobExecutor() {
+        if (jobExecutor == null) {
+            jobExecutor = new ForkJoinPool(maxParallelism, pool -> {
+                ForkJoinWorkerThread t = ForkJoinPool
+                        .defaultForkJoinWorkerThreadFactory.newThread(pool);
+                t.setName("JEF Worker-" + t.getPoolIndex());
+                return t;
+            }, null, false);
+        }
+        return jobExecutor;
+    }
+
+    /**
+     * Gets the kind of threads used by job groups running jobs
+     * concurrently, unless they specify their own.
+     * @return thread mode
+     */
+    public JobThreadMode getThreadMode() {
+        return threadMode;
+    }
+
+    /**
+     * Gets whether virtual threads are supported by the running
+     * Java version (21 or higher).
+     * @return <code>true</code> if supported
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+    /**
+     * Gets a factory of virtual threads.
+     * @return thread factory or <code>null</code> if virtual threads
+     *         are not supported
+     */
+    public static ThreadFactory getVirtualThreadFactory() {
+        return VIRTUAL_THREAD_FACTORY;
+    }
+    /**
+     * Gets permits shared by all job groups of this suite running jobs
+     * on virtual threads. There are as many as the maximum parallelism.
+     * Job groups do not need one, since they mostly wait on their jobs.
+     * @return job permits
+     */
+    public synchronized Semaphore getJobPermits() {
+        if (jobPermits == null) {
+            jobPermits = new Semaphore(maxParallelism);
+        }
+        return jobPermits;
+    }
+
+    /**
+     * Gets the rate limiter shared by all jobs of this suite.
+     * @return rate limiter or <code>null</code> if none
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Acquires permits from the rate limiters applying to the given job,
+     * waiting as needed: those of the groups it is part of (see
+     * {@link IJobGroup#getRateLimiter()}) and the suite one (see
+     * {@link JobSuiteConfig#setRateLimiter(RateLimiter)}).
+     * Meant for jobs pacing their own work (e.g., one permit per request
+     * made to a remote system). Returns right away when no rate limiter
+     * applies.
+     * @param job the job acquiring permits
+     * @param permits number of permits
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquirePermits(IJob job, int permits)
+            throws InterruptedException {
+        for (RateLimiter limiter : resolveRateLimiters(job)) {
+            limiter.acquire(permits);
+        }
+    }
+
+    /**
+     * Waits until a job of the given group can start, according to the
+     * rate limiters of the group, of the groups it is part of, and of
+     * the suite. Meant for job groups, to pace their jobs before they
+     * take a suite permit (see {@link #getJobPermits()}), so jobs waiting
+     * to start do not prevent others from running. A job paced this way
+     * is not paced again by {@link #runJob(IJob, Runnable)}.
+     * Job groups and jobs already completed (which are skipped)
+     * are not paced. If interrupted while waiting, returns right away
+     * with the thread interrupted status set.
+     * @param group the group running the job
+     * @param job the job about to start
+     */
+    public void paceJob(IJobGroup group, IJob job) {
+        if (job instanceof IJobGroup) {
+            return;
+        }
+        JobStatus status = suiteStatus.getStatus(job);
+        if (status != null && status.getState() == JobState.COMPLETED) {
+            return;
+        }
+        List<RateLimiter> limiters = resolveRateLimiters(group);
+        if (limiters.isEmpty()) {
+            return;
+        }
+        try {
+            for (RateLimiter limiter : limiters) {
+                limiter.acquire();
+            }
+            pacedJobs.add(job.getId());
+        } catch (InterruptedException e) {
+            // Fails when run.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets how long a job took on average in the last few executions
+     * of this suite where it completed, read from status backups
+     * the first time this method is called. Includes resumed attempts.
+     * @param jobId job identifier
+     * @return duration or <code>null</code> if unknown
+     */
+    public synchronized Duration getHistoricalDuration(String jobId) {
+        if (durationHistory == null) {
+            durationHistory = JobDurationHistory.load(workdir.resolve(
+                    Paths.get(FileUtil.toSafeFileName(getId()),
+                            STATUS_BACKUP_SUBDIR)));
+        }
+        return durationHistory.getDuration(jobId);
+    }
+
+    // Invokes retry handlers, see runJob(IJob, Runnable).
+    private synchronized ScheduledExecutorService getRetryScheduler() {
+        if (retryScheduler == null) {
+            retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "JEF Retry Scheduler");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return retryScheduler;
+    }
+
+    /*default*/ JobWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    private synchronized void shutdownJobExecutor() {
+        if (jobExecutor != null) {
+            jobExecutor.shutdown();
+            jobExecutor = null;
+        }
+        if (retryScheduler != null) {
+            retryScheduler.shutdownNow();
+            retryScheduler = null;
+        }
     }
 
 
@@ -197,7 +487,14 @@ public final class JobSuite {
         //TODO why catching exception here??? should we report it with status
         //instead?
         try {
-            success = doExecute(resumeIfIncomplete);
+            // Held until done, released by the OS if the process dies.
+            suiteLock.acquire();
+            try {
+                success = doExecute(resumeIfIncomplete);
+            } finally {
+                shutdownJobExecutor();
+                suiteLock.release();
+            }
         } catch (Throwable e) {
             LOG.error("Job suite execution failed: {}", getId(), e);
         }
@@ -216,6 +513,7 @@ public final class JobSuite {
         suiteStatus = resolveSuiteStatus(resumeIfIncomplete);
 
         heartbeatGenerator.start();
+        statusWriter.start();
 
         shutdownHook.setup(this);
 //        StopRequestMonitor stopMonitor = new StopRequestMonitor(this);
@@ -223,11 +521,22 @@ public final class JobSuite {
 
         LOG.info("Starting execution.");
         fire(JefEvent.SUITE_STARTED, null, this);
+        if (timeout > 0) {
+            watchdog.watch(this, timeout, () -> {
+                LOG.warn("Job suite {} timed out after {} ms.",
+                        getId(), timeout);
+                timeOut(getRootJob());
+            });
+        }
         try {
             success = runJob(getRootJob());
         } finally {
+            watchdog.close();
+            // Paced jobs not run since their group was stopped
+            pacedJobs.clear();
 //            stopMonitor.stopMonitoring();
             shutdownHook.destroy();
+            statusWriter.close();
             JobState jobState = suiteStatus.getRootStatus().getState();
             if (success) {
                 if (jobState == JobState.COMPLETED) {
@@ -240,6 +549,7 @@ public final class JobSuite {
                 }
             }
             heartbeatGenerator.terminate();
+            statusStore.close();
         }
         return success;
     }
@@ -261,57 +571,69 @@ public final class JobSuite {
     private JobSuiteStatus resolveSuiteStatus(boolean resumeIfIncomplete)
             throws IOException {
 
-        // Use a a lock file while initializing to fix
-        // https://github.com/Norconex/collector-http/issues/634
-
-        File indexFile = getStatusIndex().toFile();
-        File lockFile = new File(indexFile.getAbsolutePath() + ".lck");
-        // If file is not older than 5 seconds, we assume it is already running.
-        if (lockFile.exists()) {
-            if (FileUtils.isFileNewer(lockFile, System.currentTimeMillis()
-                    - JobHeartbeatGenerator.HEARTBEAT_INTERVAL)) {
-                throw new JefException("JOB SUITE ALREADY RUNNING. Wait for "
-                        + "previous execution to complete, or stop it.");
-            }
-            // Delete old lock file
-            lockFile.delete();
-        }
+        // Concurrent executions are prevented by the suite lock, held
+        // since before we got here (fixes
+        // https://github.com/Norconex/collector-http/issues/634).
 
         JobSuiteStatus status = null;
-//        FileUtils.touch(lockFile);
-//        try (RandomAccessFile raf = new RandomAccessFile(lockFile, "rws");
-//                FileChannel channel = raf.getChannel()) {
-//
-//            FileLock lock = channel.tryLock();
-//            if (lock == null) {
-//                throw new JefException("JOB SUITE ALREADY STARTED. Wait for "
-//                        + "previous execution to complete, or stop it.");
-//            }
+        JobStatus previousRoot = null;
+        boolean layoutChanged = false;
+
+            statusStore.recover();
 
-            status = JobSuiteStatus.getInstance(getStatusIndex());
+            // Only read from, so closed before statuses are moved
+            // or written.
+            JobSuiteStatus previous =
+                    JobSuiteStatus.getInstance(getStatusIndex());
+            if (previous != null) {
+                try {
+                    previousRoot = previous.getRootStatus();
+                    // Status files may have a different layout than
+                    // currently configured.
+                    layoutChanged =
+                            isLayoutChanged(previous.getJobStatusStore());
+                } finally {
+                    previous.close();
+                }
+            }
     //        JobSessionFacade facade = JobSessionFacade.get(getSuiteIndexFile());
 
-            if (status != null) {
+            if (previousRoot != null) {
                 LOG.info("Previous execution detected.");
-                JobStatus rootStatus = status.getRootStatus();
-                JobState state = rootStatus.getState();
-                ensureValidExecutionState(state);
+                JobState state = previousRoot.getState();
+                // Held lock: it ended without recording it (e.g., killed),
+                // even if its last activity is recent.
+                if (state.isOneOf(JobState.RUNNING, JobState.STOPPING)) {
+                    LOG.warn("Previous execution did not end properly "
+                            + "({}), considering it aborted.", state);
+                    state = JobState.ABORTED;
+                }
                 if (resumeIfIncomplete && !state.isOneOf(
                         JobState.COMPLETED, JobState.UNCOMPLETED)) {
                     LOG.info("Resuming from previous execution.");
-    //TODO fix this:                prepareStatusTreeForResume(statusTree);
+                    if (layoutChanged) {
+                        ((JobSuiteStatusDAO) statusStore).migrateLayout();
+                    }
+                    // Live instance, bootstrapped from previous statuses.
+                    status = JobSuiteStatus.getInstance(this);
+                    status.toXML(getStatusIndex());
+                    status.preloadStatuses(statusLoadThreads);
+                    // Stop requests were for the previous execution.
+                    for (JobStatus jobStatus : status.getAllStatuses()) {
+                        jobStatus.setStopRequested(false);
+                    }
                 } else {
                     // Back-up so we can start clean
                     //TODO only backup if backup dir set...
-                    if (backupDisabled) {
+                    if (backupDisabled || statusStore.getDurability()
+                            == StatusDurability.EPHEMERAL) {
                         LOG.info("Deleting previous execution status.");
-                        suiteStatusDAO.delete();
+                        statusStore.delete();
                         //deleteSuite(facade);
                     } else {
                         LOG.info("Backing up previous execution status.");
-                        backupSuite(status);
+                        backupSuite(previousRoot);
                     }
-                    status = null;
                 }
             } else {
                 LOG.info("No previous execution detected.");
@@ -322,12 +644,6 @@ public final class JobSuite {
     //            writeJobSuiteIndex();
     //            facade = JobSessionFacade.get(getSuiteIndexFile());
             }
-//            lock.release();
-//        } catch (OverlappingFileLockException e) {
-//            throw new JefException(
-//                    "JOB SUITE ALREADY STARTED by another process.");
-//        }
-//        lockFile.deleteOnExit();
         return status;
     }
 
@@ -404,6 +720,69 @@ public final class JobSuite {
         }
     }
 
+    /**
+     * Adds a job to this suite while it is executing, as a child of the
+     * given job group. Meant for groups creating their jobs as they run
+     * them, instead of having them all upfront
+     * (e.g., {@link com.norconex.jef5.job.group.StreamJobGroup}).
+     * The job can then be run with {@link #runJob(IJob)}.
+     * It is not part of the suite index and is not visited by
+     * {@link #accept(IJobVisitor)}.
+     * @param parent the group running the job
+     * @param job the job to add (can be a job group)
+     * @throws JefException if the job, or one of its children, has the
+     *         same id as another job of this suite
+     */
+    public void addJob(IJobGroup parent, IJob job) {
+        Objects.requireNonNull(parent, "parent");
+        Objects.requireNonNull(job, "job");
+        Map<String, IJob> addedJobs = new HashMap<>();
+        collectJobs(job, addedJobs);
+        synchronized (jobs) {
+            for (String id : addedJobs.keySet()) {
+                if (jobs.containsKey(id)) {
+                    throw duplicateJobId(id);
+                }
+            }
+            suiteStatus.addJob(parent.getId(), job);
+            jobs.putAll(addedJobs);
+        }
+    }
+    private void collectJobs(IJob job, Map<String, IJob> addedJobs) {
+        if (addedJobs.putIfAbsent(job.getId(), job) != null) {
+            throw duplicateJobId(job.getId());
+        }
+        if (job instanceof IJobGroup) {
+            for (IJob child : ((IJobGroup) job).getJobs()) {
+                collectJobs(child, addedJobs);
+            }
+        }
+    }
+    private JefException duplicateJobId(String jobId) {
+        return new JefException("Cannot add job. Job id is not unique "
+                + "within suite \"" + getId() + "\": " + jobId);
+    }
+    /**
+     * Removes a job added with {@link #addJob(IJobGroup, IJob)} once
+     * it ran, so it no longer uses memory. Its status remains
+     * in the status store.
+     * @param job the job to remove (can be a job group)
+     */
+    public void removeJob(IJob job) {
+        synchronized (jobs) {
+            suiteStatus.removeJob(job.getId());
+            removeJobs(job);
+        }
+    }
+    private void removeJobs(IJob job) {
+        jobs.remove(job.getId());
+        if (job instanceof IJobGroup) {
+            for (IJob child : ((IJobGroup) job).getJobs()) {
+                removeJobs(child);
+            }
+        }
+    }
+
     /**
      * Gets the job identifier representing the currently running job for the
      * current thread.
@@ -473,6 +852,24 @@ public final class JobSuite {
     //TODO document this is not a public method?
     //TODO Wrap this logic in a JobRunner class, passing it to job groups?
     public boolean runJob(final IJob job) {
+        return runJob(job, null) == JobRunResult.SUCCEEDED;
+    }
+
+    /**
+     * Runs a job like {@link #runJob(IJob)}, except that a failed job to
+     * be retried is not waited for on the current thread. It is released
+     * instead, {@link JobRunResult#RETRY_SCHEDULED} is returned, and
+     * the retry handler is invoked from a scheduler thread once the
+     * retry is due (or the job is asked to stop). The handler is
+     * expected to run the job again with this method, without blocking
+     * (e.g., by queuing the job until its group can run it).
+     * @param job the job to run
+     * @param retryHandler invoked when a retry is due, or
+     *        <code>null</code> to wait for retries on the current thread
+     * @return how running the job ended
+     * @since 5.0.0
+     */
+    public JobRunResult runJob(final IJob job, final Runnable retryHandler) {
         if (job == null) {
             throw new IllegalArgumentException("Job cannot be null.");
         }
@@ -480,21 +877,145 @@ public final class JobSuite {
             throw new IllegalArgumentException("Job id cannot be blank.");
         }
 
-        boolean success = false;
         Thread.currentThread().setName(job.getId());
         setCurrentJobId(job.getId());
 
         JobStatus jobStatus = suiteStatus.getStatus(job);
+        // Not null when retried
+        Integer attemptCount = retries.remove(job.getId());
+        boolean paced = pacedJobs.remove(job.getId());
 
-        if (jobStatus.getState() == JobState.COMPLETED) {
+        if (attemptCount == null
+                && jobStatus.getState() == JobState.COMPLETED) {
             LOG.info("Job skipped: " + job.getId() + " (already completed)");
             fire(JefEvent.JOB_SKIPPED, jobStatus, job);
-            return true;
+            // Counts as completed in the progress of its group.
+            notifyParentGroup(jobStatus);
+            return JobRunResult.SUCCEEDED;
+        }
+        if (attemptCount != null && jobStatus.isStopRequested()) {
+            LOG.info("Job not retried, it was stopped: {}", job.getId());
+            jobStatus.markEnded();
+            endRetries(jobStatus);
+            return JobRunResult.FAILED;
+        }
+
+        // Groups only wait on their jobs, which are paced instead.
+        if (!(job instanceof IJobGroup)
+                && !acquireStartPermit(job, paced)) {
+            if (attemptCount != null) {
+                endRetries(jobStatus);
+            }
+            return JobRunResult.FAILED;
+        }
+
+        if (!jobStatus.markRunning()) {
+            LOG.error("Job not executed, it is already running: {}",
+                    job.getId());
+            return JobRunResult.FAILED;
+        }
+        // Stopped before it could start (e.g., by its group failing
+        // fast), checked once running so later requests stop the job.
+        if (attemptCount == null && jobStatus.isStopRequested()) {
+            LOG.info("Job not executed, it was stopped: {}", job.getId());
+            jobStatus.markEnded();
+            statusWriter.flush(jobStatus);
+            return JobRunResult.SUCCEEDED;
+        }
+
+        jobThreads.put(job.getId(), Thread.currentThread());
+        // Retries are watched since the first attempt.
+        if (attemptCount == null && job.getTimeout() > 0) {
+            watchdog.watch(job.getId(), job.getTimeout(), () -> {
+                LOG.warn("Job {} timed out after {} ms.",
+                        job.getId(), job.getTimeout());
+                timeOut(job);
+            });
+        }
+        JobRunResult result = JobRunResult.FAILED;
+        try {
+            result = runJobAttempts(job, jobStatus,
+                    attemptCount == null ? 0 : attemptCount, retryHandler);
+            return result;
+        } finally {
+            if (result != JobRunResult.RETRY_SCHEDULED) {
+                watchdog.unwatch(jobStatus.getJobId());
+            }
+            // A retry may already run on another thread.
+            jobThreads.remove(job.getId(), Thread.currentThread());
+            if (jobStatus.isStopRequested()) {
+                // Not to interrupt whatever runs next on this thread.
+                Thread.interrupted();
+            }
+        }
+    }
+
+    // Runs a job until it succeeds or it shall no longer be retried,
+    // or until it is released to be retried later.
+    private JobRunResult runJobAttempts(final IJob job,
+            final JobStatus jobStatus, int attemptCount,
+            Runnable retryHandler) {
+        int attemptNo = attemptCount + 1;
+        boolean success = runJobAttempt(job, jobStatus, attemptNo);
+        RetryPolicy policy = resolveRetryPolicy(job);
+        while (!success && policy != null && policy.shouldRetry(attemptNo)
+                && !jobStatus.isStopRequested()) {
+            long delay = policy.getDelay(attemptNo);
+            LOG.warn("Job {} failed. Retrying in {} ms (attempt {} of {}).",
+                    job.getId(), delay, attemptNo + 1,
+                    policy.getMaxAttempts());
+            fire(JefEvent.JOB_RETRYING, jobStatus, job);
+            archiveAttempt(jobStatus);
+            if (retryHandler != null) {
+                retries.put(job.getId(), attemptNo);
+                scheduleRetry(jobStatus,
+                        System.currentTimeMillis() + delay, retryHandler);
+                return JobRunResult.RETRY_SCHEDULED;
+            }
+            if (!waitBeforeRetry(jobStatus, delay)) {
+                // Stopped while waiting
+                jobStatus.markEnded();
+                endRetries(jobStatus);
+                break;
+            }
+            if (!jobStatus.markRunning()) {
+                break;
+            }
+            attemptNo++;
+            success = runJobAttempt(job, jobStatus, attemptNo);
+        }
+        return success ? JobRunResult.SUCCEEDED : JobRunResult.FAILED;
+    }
+
+    // Saves the status of a job no longer retried.
+    private void endRetries(JobStatus jobStatus) {
+        watchdog.unwatch(jobStatus.getJobId());
+        try {
+            statusWriter.flush(jobStatus);
+        } catch (JefException e) {
+            LOG.error("Cannot save final status.", e);
         }
+    }
 
+    // Runs a job once, from a status already marked as running.
+    private boolean runJobAttempt(
+            final IJob job, final JobStatus jobStatus, int attemptNo) {
+        boolean success = false;
         boolean errorHandled = false;
         try {
-            if (!jobStatus.isResumed()) {
+            if (attemptNo > 1) {
+                // Starts over, unless the job resumes its own work.
+                jobStatus.setStartTime(Instant.now());
+                jobStatus.setEndTime(null);
+                jobStatus.setNote("");
+                if (!(job instanceof AbstractResumableJob)) {
+                    jobStatus.setProgress(0);
+                    jobStatus.getProperties().clear();
+                }
+                LOG.info("Running {}: RETRY {} ({})",
+                        job.getId(), attemptNo, Instant.now());
+                fire(JefEvent.JOB_STARTED, jobStatus, job);
+            } else if (!jobStatus.isResumed()) {
                 jobStatus.setStartTime(Instant.now());
                 LOG.info("Running {}: START ({})",
                         job.getId(), Instant.now());
@@ -510,22 +1031,9 @@ public final class JobSuite {
             heartbeatGenerator.register(jobStatus);
             //--- Execute ---
             job.execute(new JobStatusUpdater(jobStatus, js -> {
-                try {
-                    suiteStatusDAO.write(js);
-                } catch (IOException e) {
-                    throw new JefException(
-                            "Cannot persist status update for job: "
-                                    + js.getJobId(), e);
-                }
+                statusWriter.write(js);
                 fire(JefEvent.JOB_PROGRESSED, js, job);
-                JobStatus parentStatus = suiteStatus.getParentStatus(js);
-                if (parentStatus != null) {
-                    IJobGroup jobGroup =
-                            (IJobGroup) jobs.get(parentStatus.getJobId());
-                    if (jobGroup != null) {
-                        jobGroup.groupProgressed(js);
-                    }
-                }
+                notifyParentGroup(js);
             }), this);
             success = true;
         } catch (Exception e) {
@@ -538,9 +1046,10 @@ public final class JobSuite {
         } finally {
             heartbeatGenerator.unregister(jobStatus);
             jobStatus.setEndTime(Instant.now());
+            JobState endState = jobStatus.markEnded();
             try {
-                suiteStatusDAO.write(jobStatus);
-            } catch (IOException e) {
+                statusWriter.flush(jobStatus);
+            } catch (JefException e) {
                 LOG.error("Cannot save final status.", e);
             }
             if (!success && !errorHandled) {
@@ -551,8 +1060,7 @@ public final class JobSuite {
 
             // If stopping or stopped, corresponding events will have been
             // fired already and we do not fire additional ones.
-            if (jobStatus.getState() != JobState.STOPPING
-                    && jobStatus.getState() != JobState.STOPPED) {
+            if (endState != JobState.STOPPED) {
                 if (success) {
                     fire(JefEvent.JOB_COMPLETED, jobStatus, job);
                 } else {
@@ -563,6 +1071,214 @@ public final class JobSuite {
         return success;
     }
 
+    private void notifyParentGroup(JobStatus jobStatus) {
+        String parentId = suiteStatus.getParentId(jobStatus);
+        if (parentId != null) {
+            IJobGroup jobGroup = (IJobGroup) jobs.get(parentId);
+            if (jobGroup != null) {
+                jobGroup.groupProgressed(jobStatus);
+            }
+        }
+    }
+
+    // Stops a job running for too long, along with the jobs it runs.
+    // Job stop methods are invoked on a separate thread so the
+    // watchdog is not held up, and leaf jobs are only interrupted
+    // after their stop events were fired.
+    private void timeOut(IJob job) {
+        List<IJob> stopped = new ArrayList<>();
+        timeOut(job, stopped);
+        if (stopped.isEmpty()) {
+            return;
+        }
+        new Thread(() -> {
+            for (IJob stoppedJob : stopped) {
+                JobStatus status = suiteStatus.getStatus(stoppedJob);
+                fire(stoppedJob == job
+                        ? JefEvent.JOB_TIMED_OUT : JefEvent.JOB_STOPPING,
+                        status, stoppedJob);
+                try {
+                    // Makes the stop request visible right away.
+                    statusWriter.flush(status);
+                    stoppedJob.stop(status, this);
+                } catch (RuntimeException e) {
+                    LOG.error("Could not stop job: " + stoppedJob.getId(), e);
+                } finally {
+                    interrupt(stoppedJob);
+                }
+            }
+        }, "JEF Timeout Stop").start();
+    }
+    private void timeOut(IJob job, List<IJob> stopped) {
+        if (!jobThreads.containsKey(job.getId())
+                && !retries.containsKey(job.getId())) {
+            // Not running, nor to be retried
+            return;
+        }
+        // Also ends retry waits. Stopped jobs are resumable.
+        suiteStatus.getStatus(job).markStopping();
+        stopped.add(job);
+        if (job instanceof IJobGroup) {
+            // Includes jobs added while running
+            for (String childId : suiteStatus.getChildIds(job.getId())) {
+                IJob child = jobs.get(childId);
+                if (child != null) {
+                    timeOut(child, stopped);
+                }
+            }
+        }
+    }
+    // Groups are left to end on their own once their jobs are
+    // stopped, leaf jobs are interrupted if blocked.
+    private void interrupt(IJob job) {
+        if (job instanceof IJobGroup) {
+            return;
+        }
+        jobThreads.computeIfPresent(job.getId(), (id, t) -> {
+            t.interrupt();
+            return t;
+        });
+    }
+
+    // The job policy first, then the closest parent group one, else
+    // the suite default one. Job groups are never retried.
+    private RetryPolicy resolveRetryPolicy(IJob job) {
+        if (job instanceof IJobGroup) {
+            return null;
+        }
+        if (job.getRetryPolicy() != null) {
+            return job.getRetryPolicy();
+        }
+        String parentId = suiteStatus.getParentId(job.getId());
+        while (parentId != null) {
+            IJob parent = jobs.get(parentId);
+            if (parent != null && parent.getRetryPolicy() != null) {
+                return parent.getRetryPolicy();
+            }
+            parentId = suiteStatus.getParentId(parentId);
+        }
+        return retryPolicy;
+    }
+
+    // Group limiters from the closest group, then the suite one.
+    private List<RateLimiter> resolveRateLimiters(IJob job) {
+        List<RateLimiter> limiters = new ArrayList<>();
+        IJob current = job;
+        while (current != null) {
+            if (current instanceof IJobGroup
+                    && ((IJobGroup) current).getRateLimiter() != null) {
+                limiters.add(((IJobGroup) current).getRateLimiter());
+            }
+            String parentId = suiteStatus == null
+                    ? null : suiteStatus.getParentId(current.getId());
+            current = parentId == null ? null : jobs.get(parentId);
+        }
+        if (rateLimiter != null) {
+            limiters.add(rateLimiter);
+        }
+        return limiters;
+    }
+
+    // Jobs not paced by their group yet (see paceJob) are paced
+    // while holding whatever they hold to run.
+    private boolean acquireStartPermit(IJob job, boolean paced) {
+        if (!paced) {
+            List<RateLimiter> limiters = resolveRateLimiters(job);
+            if (limiters.isEmpty()) {
+                return true;
+            }
+            try {
+                for (RateLimiter limiter : limiters) {
+                    limiter.acquire();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.error("{} interrupted before running.", job.getId());
+                return false;
+            }
+        }
+        // Its group may have been stopped while waiting.
+        String parentId = suiteStatus.getParentId(job.getId());
+        while (parentId != null) {
+            JobStatus parentStatus = suiteStatus.getStatus(parentId);
+            if (parentStatus != null
+                    && parentStatus.isState(JobState.STOPPING)) {
+                LOG.info("Job not executed, its group is stopping: {}",
+                        job.getId());
+                return false;
+            }
+            parentId = suiteStatus.getParentId(parentId);
+        }
+        return true;
+    }
+
+    // Keeps the failed attempt as a resumed attempt of the job.
+    private void archiveAttempt(JobStatus jobStatus) {
+        JobStatusData attempt = jobStatus.archiveAttempt();
+        try {
+            statusStore.writeAttempt(jobStatus.getJobId(),
+                    jobStatus.getResumedAttempts().size(), attempt);
+        } catch (IOException e) {
+            LOG.error("Cannot save failed attempt of job: "
+                    + jobStatus.getJobId(), e);
+        }
+    }
+
+    // Waits on the current thread, for callers not able to run the job
+    // again later (e.g., synchronous groups). Returns false if the job
+    // was stopped while waiting.
+    private boolean waitBeforeRetry(JobStatus jobStatus, long delay) {
+        long retryTime = System.currentTimeMillis() + delay;
+        try {
+            long remaining;
+            while (!jobStatus.isStopRequested() && (remaining =
+                    retryTime - System.currentTimeMillis()) > 0) {
+                Thread.sleep(Math.min(remaining, RETRY_STOP_CHECK_INTERVAL));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !jobStatus.isStopRequested();
+    }
+
+    // Invokes the retry handler once the retry is due or the job is
+    // asked to stop, without a thread waiting in between.
+    private void scheduleRetry(
+            JobStatus jobStatus, long retryTime, Runnable retryHandler) {
+        long wait = Math.min(RETRY_STOP_CHECK_INTERVAL,
+                Math.max(0, retryTime - System.currentTimeMillis()));
+        getRetryScheduler().schedule(() -> {
+            if (!jobStatus.isStopRequested()
+                    && System.currentTimeMillis() < retryTime) {
+                scheduleRetry(jobStatus, retryTime, retryHandler);
+                return;
+            }
+            try {
+                retryHandler.run();
+            } catch (RuntimeException e) {
+                LOG.error("Could not retry job: " + jobStatus.getJobId(), e);
+            }
+        }, wait, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Synchronously writes any job status updates not yet persisted.
+     * Only useful when status updates are written in the background
+     * (see {@link JobSuiteConfig#setStatusFlushInterval(long)}).
+     */
+    public void flushStatuses() {
+        statusWriter.flushAll();
+    }
+    /**
+     * Synchronously writes the given job status, as it is now, replacing
+     * any update of it not yet persisted.
+     * @param status job status
+     */
+    public void flushStatus(JobStatus status) {
+        statusWriter.flush(status);
+    }
+
     public void stop() throws ShutdownException {
         shutdownHook.shutdown(getStatusIndex());
 //        if (!getSuiteStopFile().createNewFile()) {
@@ -623,22 +1339,18 @@ public final class JobSuite {
 //        });
 //    }
 
-    private void ensureValidExecutionState(JobState state) {
-        if (state == JobState.RUNNING) {
-            throw new JefException("JOB SUITE ALREADY RUNNING. There is "
-                    + "already an instance of this job suite running. "
-                    + "Either stop it, or wait for it to complete.");
-        }
-        if (state == JobState.STOPPING) {
-            throw new JefException("JOB SUITE STOPPING. "
-                    + "There is an instance of this job suite currently "
-                    + "stopping.  Wait for it to stop, or terminate the "
-                    + "process.");
+    // Whether the layout recorded in the index of a previous execution
+    // differs from the one of the status store.
+    private boolean isLayoutChanged(IJobStatusStore previousStore) {
+        if (!(statusStore instanceof JobSuiteStatusDAO)
+                || !(previousStore instanceof JobSuiteStatusDAO)) {
+            return false;
         }
+        return ((JobSuiteStatusDAO) statusStore).isHashedLayout()
+                != ((JobSuiteStatusDAO) previousStore).isHashedLayout();
     }
 
-    private void backupSuite(JobSuiteStatus suiteStatus) { // throws IOException {
-        JobStatus jobStatus = suiteStatus.getRootStatus();
+    private void backupSuite(JobStatus jobStatus) { // throws IOException {
         Instant backupDate = jobStatus.getEndTime();
         if (backupDate == null) {
             backupDate = jobStatus.getLastActivity();
@@ -647,7 +1359,7 @@ public final class JobSuite {
             backupDate = Instant.now();
         }
         try {
-            suiteStatusDAO.backup(getStatusBackupDir(backupDate));
+            statusStore.backup(getStatusBackupDir(backupDate));
 
 //            // Backup status files
 //            jobSessionStore.backup(getId(), backupDate);
@@ -763,6 +1475,22 @@ public final class JobSuite {
         return dir;
     }
 
+    // Virtual threads are obtained by reflection since they only exist
+    // from Java 21.
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, "JEF Virtual Worker-", 0L);
+            return (ThreadFactory)
+                    builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.debug("Virtual threads not supported.", e);
+            return null;
+        }
+    }
+
 //    private IJobSessionStore resolveJobSessionStore(IJobSessionStore store) {
 //        IJobSessionStore s = store;
 //        if (s == null) {
@@ -25,14 +25,37 @@ import com.norconex.commons.lang.event.Event;
 import com.norconex.commons.lang.event.IEventListener;
 import com.norconex.commons.lang.xml.IXMLConfigurable;
 import com.norconex.commons.lang.xml.XML;
+import com.norconex.jef5.job.RateLimiter;
+import com.norconex.jef5.job.RetryPolicy;
+import com.norconex.jef5.status.JobStatusData;
+import com.norconex.jef5.status.store.IJobStatusStore;
 
 //TODO really have a config still??? given it contains so little, shall
 // we move these settings directly on JobSuite? Else, make IXMLConfigurable?
 
 public class JobSuiteConfig implements IXMLConfigurable {
 
+    public static final int DEFAULT_STATUS_FLUSH_THRESHOLD = 100;
+    public static final int DEFAULT_STATUS_LOAD_THREADS = 8;
+    public static final int DEFAULT_MAX_PARALLELISM = 64;
+    public static final long DEFAULT_HEARTBEAT_INTERVAL = 5000;
+    public static final long DEFAULT_ACTIVITY_TIMEOUT =
+            JobStatusData.DEFAULT_ACTIVITY_TIMEOUT;
+
     private Path workdir;
     private boolean backupDisabled;
+    private long statusFlushInterval;
+    private int statusFlushThreshold = DEFAULT_STATUS_FLUSH_THRESHOLD;
+    private int statusLoadThreads = DEFAULT_STATUS_LOAD_THREADS;
+    private int maxParallelism = DEFAULT_MAX_PARALLELISM;
+    private JobThreadMode threadMode;
+    private long heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+    private long activityTimeout = DEFAULT_ACTIVITY_TIMEOUT;
+    private boolean adaptiveHeartbeat;
+    private RetryPolicy retryPolicy;
+    private long timeout;
+    private RateLimiter rateLimiter;
+    private IJobStatusStore statusStore;
     private final List<IEventListener<Event>> eventListeners =
             new ArrayList<>();
 
@@ -54,6 +77,257 @@ public class JobSuiteConfig implements IXMLConfigurable {
         this.backupDisabled = backupDisabled;
     }
 
+    /**
+     * Gets the interval in milliseconds at which job status updates are
+     * written in the background. Zero or less (default) means status
+     * updates are written as soon as they happen.
+     * @return status flush interval
+     */
+    public long getStatusFlushInterval() {
+        return statusFlushInterval;
+    }
+    /**
+     * Sets the interval in milliseconds at which job status updates are
+     * written in the background. Updates made to a job status between
+     * flushes are coalesced into a single write. Statuses are always
+     * written right away when a job ends or the suite is stopped.
+     * Zero or less writes status updates as soon as they happen.
+     * @param statusFlushInterval status flush interval
+     */
+    public void setStatusFlushInterval(long statusFlushInterval) {
+        this.statusFlushInterval = statusFlushInterval;
+    }
+
+    /**
+     * Gets the number of jobs with pending status updates that triggers
+     * a background flush before the flush interval has elapsed.
+     * @return status flush threshold
+     */
+    public int getStatusFlushThreshold() {
+        return statusFlushThreshold;
+    }
+    /**
+     * Sets the number of jobs with pending status updates that triggers
+     * a background flush before the flush interval has elapsed.
+     * Zero or less only flushes on interval.
+     * Ignored when no status flush interval is set.
+     * @param statusFlushThreshold status flush threshold
+     */
+    public void setStatusFlushThreshold(int statusFlushThreshold) {
+        this.statusFlushThreshold = statusFlushThreshold;
+    }
+
+    /**
+     * Gets the maximum number of job statuses read concurrently when
+     * resuming a suite.
+     * @return status load threads
+     */
+    public int getStatusLoadThreads() {
+        return statusLoadThreads;
+    }
+    /**
+     * Sets the maximum number of job statuses read concurrently when
+     * resuming a suite. All statuses are read before execution starts.
+     * Reading many at once speeds up resuming large suites, especially
+     * when statuses are on a network file system.
+     * One or less reads them one after the other.
+     * @param statusLoadThreads status load threads
+     */
+    public void setStatusLoadThreads(int statusLoadThreads) {
+        this.statusLoadThreads = statusLoadThreads;
+    }
+
+    /**
+     * Gets the number of jobs the suite aims to execute concurrently
+     * across all asynchronous job groups of a suite.
+     * @return maximum parallelism
+     */
+    public int getMaxParallelism() {
+        return maxParallelism;
+    }
+    /**
+     * Sets the number of jobs the suite aims to execute concurrently
+     * across all asynchronous job groups of a suite, no matter how deeply
+     * they are nested. Groups share a single pool with that target
+     * parallelism, and each group still limits how many of its own jobs
+     * run at once. A group waiting for its jobs helps run pending ones
+     * instead of holding a thread.
+     * <p>
+     * With platform threads, this is a target rather than a hard limit:
+     * the pool starts extra threads while jobs are blocked waiting (e.g.,
+     * on other jobs, or on a rate limiter), so more jobs may briefly
+     * run at once. With virtual threads, it is a hard limit
+     * (see {@link #setThreadMode(JobThreadMode)}).
+     * </p>
+     * <p>
+     * Zero or less uses the number of available processors.
+     * Default is 64, which also caps how many jobs of a group with more
+     * threads than that (e.g., an asynchronous group of hundreds of jobs
+     * waiting on I/O) actually run at once. Increase it for such groups.
+     * </p>
+     * @param maxParallelism maximum parallelism
+     */
+    public void setMaxParallelism(int maxParallelism) {
+        this.maxParallelism = maxParallelism;
+    }
+
+    /**
+     * Gets the kind of threads used by job groups running jobs
+     * concurrently, unless they specify their own.
+     * @return thread mode or <code>null</code> if using platform threads
+     */
+    public JobThreadMode getThreadMode() {
+        return threadMode;
+    }
+    /**
+     * Sets the kind of threads used by job groups running jobs
+     * concurrently, unless they specify their own. With virtual threads,
+     * the maximum parallelism is enforced with permits rather than a
+     * pool size and can be set very high (e.g., thousands of jobs mostly
+     * waiting on I/O). Default (<code>null</code>) uses platform threads.
+     * @param threadMode thread mode
+     */
+    public void setThreadMode(JobThreadMode threadMode) {
+        this.threadMode = threadMode;
+    }
+
+    /**
+     * Gets the interval in milliseconds at which running jobs record
+     * they are still alive.
+     * @return heartbeat interval
+     */
+    public long getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+    /**
+     * Sets the interval in milliseconds at which running jobs record
+     * they are still alive. Shorter intervals detect dead jobs sooner
+     * (with a shorter activity timeout) at the cost of more writes.
+     * Default is 5 seconds.
+     * @param heartbeatInterval heartbeat interval
+     */
+    public void setHeartbeatInterval(long heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    /**
+     * Gets the number of milliseconds without activity after which
+     * a job is no longer considered running.
+     * @return activity timeout
+     */
+    public long getActivityTimeout() {
+        return activityTimeout;
+    }
+    /**
+     * Sets the number of milliseconds without activity after which
+     * a job is no longer considered running (e.g., it crashed).
+     * Must be greater than the heartbeat interval, ideally at least
+     * twice. It is recorded in the suite index so other processes
+     * reading the suite status use the same value.
+     * Default is 10 seconds.
+     * @param activityTimeout activity timeout
+     */
+    public void setActivityTimeout(long activityTimeout) {
+        this.activityTimeout = activityTimeout;
+    }
+
+    /**
+     * Gets whether the heartbeat interval grows with the number of
+     * running jobs.
+     * @return <code>true</code> if adaptive
+     */
+    public boolean isAdaptiveHeartbeat() {
+        return adaptiveHeartbeat;
+    }
+    /**
+     * Sets whether the heartbeat interval grows with the number of
+     * running jobs, to reduce heartbeat writes when very many jobs
+     * run at once. The heartbeat interval is then a minimum, and the
+     * interval never exceeds half the activity timeout. Raise the
+     * activity timeout to allow for less frequent heartbeats.
+     * @param adaptiveHeartbeat <code>true</code> to adapt the interval
+     */
+    public void setAdaptiveHeartbeat(boolean adaptiveHeartbeat) {
+        this.adaptiveHeartbeat = adaptiveHeartbeat;
+    }
+
+    /**
+     * Gets how failed jobs are retried, unless they or their parent
+     * groups specify their own policy.
+     * @return retry policy or <code>null</code> if never retrying
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+    /**
+     * Sets how failed jobs are retried, unless they or their parent
+     * groups specify their own policy (see
+     * {@link com.norconex.jef5.job.AbstractJob#setRetryPolicy(RetryPolicy)}).
+     * Default (<code>null</code>) never retries.
+     * @param retryPolicy retry policy
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Gets the maximum milliseconds the job suite can run.
+     * @return timeout or zero for none
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+    /**
+     * Sets the maximum milliseconds the job suite can run. Past this
+     * deadline, all running jobs are stopped and their threads are
+     * interrupted, leaving the suite resumable. Jobs can also have
+     * their own timeout
+     * (see {@link com.norconex.jef5.job.AbstractJob#setTimeout(long)}).
+     * Default is zero (no timeout).
+     * @param timeout timeout or zero for none
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Gets the rate limiter shared by all jobs of the suite.
+     * @return rate limiter or <code>null</code> if none
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+    /**
+     * Sets the rate limiter shared by all jobs of the suite. Each job
+     * takes a permit before starting, in addition to permits of the
+     * groups it is part of (see
+     * {@link com.norconex.jef5.job.group.AbstractJobGroup#setRateLimiter(
+     * RateLimiter)}), and can take more while executing (see
+     * {@link JobSuite#acquirePermits(com.norconex.jef5.job.IJob, int)}).
+     * Default (<code>null</code>) does not limit the rate.
+     * @param rateLimiter rate limiter
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Gets the store used to persist job statuses.
+     * @return status store or <code>null</code> if using the default one
+     */
+    public IJobStatusStore getStatusStore() {
+        return statusStore;
+    }
+    /**
+     * Sets the store used to persist job statuses. Default
+     * (<code>null</code>) stores each status in its own file
+     * (see {@link com.norconex.jef5.status.JobSuiteStatusDAO}).
+     * @param statusStore status store
+     */
+    public void setStatusStore(IJobStatusStore statusStore) {
+        this.statusStore = statusStore;
+    }
+
     public List<IEventListener<Event>> getEventListeners() {
         return Collections.unmodifiableList(eventListeners);
     }
@@ -0,0 +1,125 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.suite;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.norconex.jef5.JefException;
+
+/**
+ * Prevents a job suite from executing more than once at the same time,
+ * whether from the same or different processes. An exclusive operating
+ * system lock is held on a file for as long as the suite executes.
+ * The operating system releases it as soon as the process ends, so
+ * a suite that crashed can be restarted right away.
+ * The lock file is kept outside the status directory, since the later
+ * can be backed up or deleted while the lock is held. It is never
+ * deleted, as another process could be locking it.
+ * @author Pascal Essiembre
+ */
+class JobSuiteLock {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(JobSuiteLock.class);
+
+    private final Path lockFile;
+    private FileChannel channel;
+    private FileLock lock;
+
+    JobSuiteLock(Path lockFile) {
+        super();
+        this.lockFile = lockFile;
+    }
+
+    Path getLockFile() {
+        return lockFile;
+    }
+
+    /**
+     * Acquires the lock without waiting.
+     * @throws JefException if the suite is already running, or the lock
+     *         could not be acquired
+     */
+    synchronized void acquire() {
+        if (lock != null) {
+            throw alreadyRunning();
+        }
+        FileChannel ch = null;
+        try {
+            Files.createDirectories(lockFile.getParent());
+            ch = FileChannel.open(lockFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock l;
+            try {
+                l = ch.tryLock();
+            } catch (OverlappingFileLockException e) {
+                // Held by another suite instance in this JVM.
+                l = null;
+            }
+            if (l == null) {
+                throw alreadyRunning();
+            }
+            channel = ch;
+            lock = l;
+            LOG.debug("Job suite lock acquired: {}", lockFile);
+        } catch (IOException e) {
+            throw new JefException(
+                    "Could not lock job suite: " + lockFile, e);
+        } finally {
+            if (lock == null && ch != null) {
+                closeQuietly(ch);
+            }
+        }
+    }
+
+    synchronized void release() {
+        if (lock == null) {
+            return;
+        }
+        try {
+            lock.release();
+        } catch (IOException e) {
+            LOG.error("Could not release job suite lock: {}", lockFile, e);
+        } finally {
+            closeQuietly(channel);
+            lock = null;
+            channel = null;
+        }
+        LOG.debug("Job suite lock released: {}", lockFile);
+    }
+
+    private JefException alreadyRunning() {
+        return new JefException("JOB SUITE ALREADY RUNNING. Wait for "
+                + "previous execution to complete, or stop it. Lock file: "
+                + lockFile);
+    }
+
+    private static void closeQuietly(FileChannel ch) {
+        try {
+            ch.close();
+        } catch (IOException e) {
+            LOG.trace("Could not close job suite lock file.", e);
+        }
+    }
+}
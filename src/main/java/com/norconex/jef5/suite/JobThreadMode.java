@@ -0,0 +1,37 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.suite;
+
+/**
+ * Kind of threads jobs run on when executed concurrently
+ * (e.g., by an {@link com.norconex.jef5.job.group.AsyncJobGroup}).
+ * @author Pascal Essiembre
+ */
+public enum JobThreadMode {
+
+    /**
+     * Jobs run on the suite pool of platform threads
+     * (see {@link JobSuite#getJobExecutor()}).
+     */
+    PLATFORM,
+    /**
+     * Each job runs on its own virtual thread, which costs little
+     * memory while blocked on I/O. Best for many concurrent jobs
+     * mostly waiting (e.g., on network, database or processes).
+     * Requires Java 21 or higher. On older versions, platform threads
+     * are used instead.
+     */
+    VIRTUAL
+}
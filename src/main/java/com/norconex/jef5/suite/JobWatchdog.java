@@ -0,0 +1,143 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.suite;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs an action when a deadline expires (e.g., stopping a job running
+ * for too long), for any number of deadlines, from a single thread.
+ * The thread is only started when a first deadline is watched.
+ * Actions should return quickly, as they delay other expired deadlines.
+ * @author Pascal Essiembre
+ * @since 5.0.0
+ */
+/*default*/ class JobWatchdog {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(JobWatchdog.class);
+
+    private final Map<Object, Deadline> deadlines = new HashMap<>();
+    private final PriorityQueue<Deadline> queue = new PriorityQueue<>();
+    private Thread thread;
+
+    /**
+     * Runs the given action after the given timeout, unless unwatched
+     * before. Watching again the same key replaces its deadline.
+     * Keys must keep the same hash code while watched (e.g., a job id,
+     * not a job status).
+     * @param key what is watched
+     * @param timeout milliseconds before the action is run
+     * @param onExpiry action to run
+     */
+    public synchronized void watch(
+            Object key, long timeout, Runnable onExpiry) {
+        Deadline deadline = new Deadline(
+                key, System.currentTimeMillis() + timeout, onExpiry);
+        Deadline previous = deadlines.put(key, deadline);
+        if (previous != null) {
+            queue.remove(previous);
+        }
+        queue.add(deadline);
+        if (thread == null) {
+            thread = new Thread(this::run, "JEF Watchdog");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Stops watching the given key.
+     * @param key what is watched
+     * @return <code>false</code> if not watched (e.g., already expired)
+     */
+    public synchronized boolean unwatch(Object key) {
+        Deadline deadline = deadlines.remove(key);
+        if (deadline == null) {
+            return false;
+        }
+        queue.remove(deadline);
+        return true;
+    }
+
+    /**
+     * Gets how many keys are watched.
+     * @return watched key count
+     */
+    public synchronized int getWatchedCount() {
+        return deadlines.size();
+    }
+
+    /**
+     * Stops watching everything and terminates the watchdog thread.
+     */
+    public synchronized void close() {
+        deadlines.clear();
+        queue.clear();
+        thread = null;
+        notifyAll();
+    }
+
+    private synchronized void run() {
+        while (thread == Thread.currentThread()) {
+            Deadline next = queue.peek();
+            long wait = 0;
+            if (next != null) {
+                wait = next.time - System.currentTimeMillis();
+                if (wait <= 0) {
+                    queue.poll();
+                    deadlines.remove(next.key);
+                    expire(next);
+                    continue;
+                }
+            }
+            try {
+                wait(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    private void expire(Deadline deadline) {
+        try {
+            deadline.onExpiry.run();
+        } catch (RuntimeException e) {
+            LOG.error("Could not handle expired deadline for: {}",
+                    deadline.key, e);
+        }
+    }
+
+    private static class Deadline implements Comparable<Deadline> {
+        private final Object key;
+        private final long time;
+        private final Runnable onExpiry;
+        Deadline(Object key, long time, Runnable onExpiry) {
+            this.key = key;
+            this.time = time;
+            this.onExpiry = onExpiry;
+        }
+        @Override
+        public int compareTo(Deadline o) {
+            return Long.compare(time, o.time);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.job;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.jef5.JEFTestUtil;
+import com.norconex.jef5.JefException;
+import com.norconex.jef5.event.JefEvent;
+import com.norconex.jef5.status.JobState;
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.suite.JobSuite;
+import com.norconex.jef5.suite.JobSuiteConfig;
+
+public class AbstractPartitionedJobTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCheckpointThrottled() throws IOException {
+        AtomicInteger progressed = new AtomicInteger();
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        config.addEventListeners(e -> {
+            if (JefEvent.JOB_PROGRESSED.equals(e.getName())) {
+                progressed.incrementAndGet();
+            }
+        });
+        PartitionedJob job = new PartitionedJob(200);
+        JobSuite suite = new JobSuite(job, config);
+        Assert.assertTrue(suite.execute());
+        Assert.assertEquals(200, job.executed.size());
+
+        // Saved when first done and once all are done, not for
+        // every partition.
+        Assert.assertTrue("Too many checkpoints: " + progressed.get(),
+                progressed.get() < 20);
+        JobStatus status = suite.getRootStatus();
+        Assert.assertEquals(1d, status.getProgress(), 0d);
+        Assert.assertEquals(200, BitSet.valueOf(Base64.getDecoder().decode(
+                status.getProperties().getString(
+                        AbstractPartitionedJob.PROP_PARTITIONS_DONE)))
+                .cardinality());
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        // Partition 5 stops the job the first time.
+        PartitionedJob job = new PartitionedJob(16);
+        job.stopAt = 5;
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        JobSuite suite = new JobSuite(job, config);
+        suite.execute();
+        Assert.assertEquals(
+                JobState.STOPPED, suite.getRootStatus().getState());
+        Set<Integer> done = new HashSet<>(job.executed);
+        Assert.assertFalse(done.contains(5));
+
+        // Only partitions not done are executed.
+        job.stopAt = -1;
+        job.executed.clear();
+        suite = new JobSuite(job, config);
+        Assert.assertTrue(suite.execute(true));
+        Assert.assertEquals(
+                JobState.COMPLETED, suite.getRootStatus().getState());
+        Assert.assertTrue(job.executed.contains(5));
+        for (int i = 0; i < 16; i++) {
+            Assert.assertTrue("Partition " + i + " executed "
+                    + (done.contains(i) ? "again." : "never."),
+                    done.contains(i) != job.executed.contains(i));
+        }
+    }
+
+    @Test
+    public void testNoPartitions() throws IOException {
+        PartitionedJob job = new PartitionedJob(0);
+        JobSuite suite = new JobSuite(job, JEFTestUtil.newConfig(folder));
+        Assert.assertTrue(suite.execute());
+        JobStatus status = suite.getRootStatus();
+        Assert.assertEquals(JobState.COMPLETED, status.getState());
+        Assert.assertEquals(1d, status.getProgress(), 0d);
+    }
+
+    // Records partitions done.
+    private static class PartitionedJob extends AbstractPartitionedJob {
+        private final int count;
+        private final Set<Integer> executed = ConcurrentHashMap.newKeySet();
+        private volatile int stopAt = -1;
+        PartitionedJob(int count) {
+            super("partitioned");
+            this.count = count;
+        }
+        @Override
+        protected int getPartitionCount(JobSuite suite) {
+            return count;
+        }
+        @Override
+        protected void executePartition(int partition, JobSuite suite) {
+            if (partition == stopAt) {
+                suite.getRootStatus().setStopRequested(true);
+                stop(suite.getRootStatus(), suite);
+                throw new JefException("Stopped at " + partition + ".");
+            }
+            executed.add(partition);
+        }
+    }
+}
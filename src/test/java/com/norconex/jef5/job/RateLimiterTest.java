@@ -0,0 +1,41 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.job;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+    @Test
+    public void testBurst() {
+        RateLimiter limiter = new RateLimiter(1, 3);
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertTrue(limiter.tryAcquire(2));
+        Assert.assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testAcquireWaits() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(20);
+        long start = System.nanoTime();
+        // First one is immediate, the other four take 50ms each.
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire();
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        Assert.assertTrue("Elapsed: " + elapsedMillis, elapsedMillis >= 190);
+    }
+}
@@ -0,0 +1,48 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.job;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testDelay() {
+        RetryPolicy policy = new RetryPolicy(4);
+        policy.setInitialDelay(100);
+        policy.setMaxDelay(300);
+        policy.setJitter(0);
+        Assert.assertEquals(100, policy.getDelay(1));
+        Assert.assertEquals(200, policy.getDelay(2));
+        // Capped
+        Assert.assertEquals(300, policy.getDelay(3));
+
+        policy.setJitter(0.5);
+        for (int i = 0; i < 100; i++) {
+            long delay = policy.getDelay(2);
+            Assert.assertTrue(delay >= 100 && delay <= 200);
+        }
+    }
+
+    @Test
+    public void testShouldRetry() {
+        RetryPolicy policy = new RetryPolicy(3);
+        Assert.assertTrue(policy.shouldRetry(1));
+        Assert.assertTrue(policy.shouldRetry(2));
+        Assert.assertFalse(policy.shouldRetry(3));
+        Assert.assertFalse(new RetryPolicy(1).shouldRetry(1));
+    }
+}
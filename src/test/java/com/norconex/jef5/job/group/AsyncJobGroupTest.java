@@ -18,6 +18,17 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
@@ -26,10 +37,16 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import com.norconex.jef5.JEFTestUtil;
+import com.norconex.jef5.JefException;
 import com.norconex.jef5.job.IJob;
+import com.norconex.jef5.job.RateLimiter;
 import com.norconex.jef5.job.impl.SleepyJob;
+import com.norconex.jef5.status.JobState;
 import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusUpdater;
+import com.norconex.jef5.status.JobSuiteStatus;
 import com.norconex.jef5.suite.JobSuite;
+import com.norconex.jef5.suite.JobSuiteConfig;
 
 public class AsyncJobGroupTest {
 
@@ -60,6 +77,173 @@ public class AsyncJobGroupTest {
         assertStatus(suite.getJobStatus(rootJob));
     }
 
+    @Test
+    public void testNestedGroupsSharePool() throws IOException {
+        List<IJob> groups = new ArrayList<>();
+        List<IJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            List<IJob> groupJobs = new ArrayList<>();
+            for (int j = 0; j < 4; j++) {
+                groupJobs.add(new PoolCheckingJob("job " + i + "-" + j));
+            }
+            jobs.addAll(groupJobs);
+            groups.add(new AsyncJobGroup("group " + i, groupJobs));
+        }
+        IJob rootJob = new AsyncJobGroup("root", groups);
+
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder, tempFolder);
+        // Less than the number of groups waiting on their jobs.
+        config.setMaxParallelism(2);
+        JobSuite suite = new JobSuite(rootJob, config);
+        Assert.assertTrue("Suite failed.", suite.execute());
+        for (IJob job : jobs) {
+            assertStatus(suite.getJobStatus(job));
+            Assert.assertTrue(job.getId() + " did not run on the suite pool.",
+                    ((PoolCheckingJob) job).onSuitePool);
+        }
+        assertStatus(suite.getJobStatus(rootJob));
+    }
+
+    @Test
+    public void testRateLimitedStarts() throws IOException {
+        List<PoolCheckingJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            jobs.add(new PoolCheckingJob("job " + i));
+        }
+        AsyncJobGroup group = new AsyncJobGroup("limited", 3, jobs);
+        // One start every 100ms.
+        group.setRateLimiter(new RateLimiter(10));
+        JobSuite suite = new JobSuite(
+                group, JEFTestUtil.newConfig(folder, tempFolder));
+        Assert.assertTrue("Suite failed.", suite.execute());
+
+        long first = Long.MAX_VALUE;
+        long last = 0;
+        for (PoolCheckingJob job : jobs) {
+            first = Math.min(first, job.startTime);
+            last = Math.max(last, job.startTime);
+        }
+        // Paced once each, by the group.
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(last - first);
+        Assert.assertTrue("Too fast: " + elapsed, elapsed >= 350);
+        Assert.assertTrue("Too slow: " + elapsed, elapsed < 700);
+    }
+
+    @Test
+    public void testMaxFailures() throws IOException {
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        FailFastJob running = new FailFastJob("running", started);
+        running.untilStopped = true;
+        FailFastJob failing = new FailFastJob("failing", started);
+        failing.failing = true;
+        // Fails once the other one runs.
+        failing.waitFor = running;
+        AsyncJobGroup group = new AsyncJobGroup("group", 2, running, failing,
+                new FailFastJob("queued1", started),
+                new FailFastJob("queued2", started));
+        group.setMaxFailures(1);
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder, tempFolder);
+        // Enough for both lanes, one of them blocked.
+        config.setMaxParallelism(4);
+        JobSuite suite = new JobSuite(group, config);
+        Assert.assertFalse(suite.execute());
+
+        // The running sibling is stopped, queued jobs never start.
+        List<String> sorted = new ArrayList<>(started);
+        Collections.sort(sorted);
+        Assert.assertEquals(Arrays.asList("failing", "running"), sorted);
+        Assert.assertTrue(running.stopped);
+        assertResumable(suite, "running", JobState.STOPPED);
+        assertResumable(suite, "queued1", JobState.UNKNOWN);
+        assertResumable(suite, "queued2", JobState.UNKNOWN);
+        JobStatus status = suite.getJobStatus(group);
+        Assert.assertTrue(status.getNote(), status.getNote().contains(
+                "1 out of 4 jobs failed"));
+    }
+
+    @Test
+    public void testMaxFailureRatio() throws IOException {
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        FailFastJob failing1 = new FailFastJob("failing1", started);
+        failing1.failing = true;
+        FailFastJob failing2 = new FailFastJob("failing2", started);
+        failing2.failing = true;
+        AsyncJobGroup group = new AsyncJobGroup("group", 1, failing1,
+                new FailFastJob("ok", started), failing2,
+                new FailFastJob("queued1", started),
+                new FailFastJob("queued2", started),
+                new FailFastJob("queued3", started));
+        // Stops at 2 failures out of 6 jobs.
+        group.setMaxFailureRatio(0.3d);
+        JobSuite suite = new JobSuite(
+                group, JEFTestUtil.newConfig(folder, tempFolder));
+        Assert.assertFalse(suite.execute());
+
+        Assert.assertEquals(
+                Arrays.asList("failing1", "ok", "failing2"), started);
+        Assert.assertEquals(
+                JobState.COMPLETED, suite.getJobStatus("ok").getState());
+        assertResumable(suite, "queued1", JobState.UNKNOWN);
+        assertResumable(suite, "queued2", JobState.UNKNOWN);
+        assertResumable(suite, "queued3", JobState.UNKNOWN);
+    }
+
+    @Test
+    public void testLongestFirst() throws IOException {
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        List<IJob> jobs = new ArrayList<>();
+        for (String id : new String[] {"a", "b", "c", "d", "e"}) {
+            jobs.add(new FailFastJob(id, started));
+        }
+        AsyncJobGroup group = new AsyncJobGroup("group", 1, jobs);
+        group.setOrdering(JobOrdering.LONGEST_FIRST);
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder, tempFolder);
+
+        // Too old to count: "a" would be first.
+        backupExecution(group, config, "2020-01-01", "a", 1000);
+        // Averages are "b" 30, "c" 20 (longest last time), and "a" 10.
+        // "d" never completed and "e" never ran.
+        backupExecution(group, config, "2020-01-02", "a", 10, "b", 30, "c", 5);
+        backupExecution(group, config, "2020-01-03", "a", 10, "b", 30, "c", 5);
+        backupExecution(group, config, "2020-01-04",
+                "a", 10, "b", 30, "c", 50, "d", -100);
+
+        JobSuite suite = new JobSuite(group, config);
+        Assert.assertEquals(Duration.ofSeconds(20),
+                suite.getHistoricalDuration("c"));
+        Assert.assertNull(suite.getHistoricalDuration("d"));
+        Assert.assertTrue("Suite failed.", suite.execute());
+        Assert.assertEquals(Arrays.asList("b", "c", "a", "d", "e"), started);
+    }
+
+    // Backs up statuses of an execution on the given day. Jobs took
+    // the given seconds, negative for jobs that did not complete.
+    private void backupExecution(IJob rootJob, JobSuiteConfig config,
+            String day, Object... durations) throws IOException {
+        JobSuite suite = new JobSuite(rootJob, config);
+        JobSuiteStatus.getInstance(suite).toXML(suite.getStatusIndex());
+        Instant start = Instant.parse(day + "T00:00:00Z");
+        for (int i = 0; i < durations.length; i += 2) {
+            int seconds = (Integer) durations[i + 1];
+            JobStatus status = new JobStatus((String) durations[i], null);
+            status.setStartTime(start);
+            status.setEndTime(start.plusSeconds(Math.abs(seconds)));
+            status.setProgress(seconds < 0 ? 0.5d : 1d);
+            status.markRunning();
+            status.markEnded();
+            suite.getJobStatusStore().write(status);
+        }
+        suite.getJobStatusStore().backup(suite.getStatusBackupDir(start));
+    }
+
+    // Not started again, or not done, so run again on resume.
+    private void assertResumable(
+            JobSuite suite, String jobId, JobState state) {
+        JobStatus status = suite.getJobStatus(jobId);
+        Assert.assertEquals(jobId + " state.", state, status.getState());
+        Assert.assertTrue(jobId + " progress.", status.getProgress() < 1d);
+    }
+
     private void assertStatus(JobStatus status) {
         System.out.println("Status of \"" + status.getJobId() + "\": "
                 + status.getState() + " (" + status.getProgress() + ")");
@@ -67,6 +251,86 @@ public class AsyncJobGroupTest {
 //        assertTrue(status.getState() == JobState.COMPLETED);
     }
 
+    // Records whether it ran on the suite job executor.
+    private static class PoolCheckingJob implements IJob {
+        private final String id;
+        private volatile boolean onSuitePool;
+        private volatile long startTime;
+        PoolCheckingJob(String id) {
+            this.id = id;
+        }
+        @Override
+        public String getId() {
+            return id;
+        }
+        @Override
+        public void execute(JobStatusUpdater statusUpdater, JobSuite suite) {
+            startTime = System.nanoTime();
+            Thread thread = Thread.currentThread();
+            onSuitePool = thread instanceof ForkJoinWorkerThread
+                    && ((ForkJoinWorkerThread) thread).getPool()
+                            == suite.getJobExecutor();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            statusUpdater.setProgress(1d);
+        }
+        @Override
+        public void stop(JobStatus status, JobSuite suite) {
+            //NOOP
+        }
+    }
+
+    // Fails, or runs until stopped, when told to. Records when started.
+    private static class FailFastJob implements IJob {
+        private final String id;
+        private final List<String> started;
+        private final CountDownLatch startLatch = new CountDownLatch(1);
+        private final CountDownLatch stopLatch = new CountDownLatch(1);
+        private volatile FailFastJob waitFor;
+        private volatile boolean failing;
+        private volatile boolean untilStopped;
+        private volatile boolean stopped;
+        FailFastJob(String id, List<String> started) {
+            this.id = id;
+            this.started = started;
+        }
+        @Override
+        public String getId() {
+            return id;
+        }
+        @Override
+        public void execute(JobStatusUpdater statusUpdater, JobSuite suite) {
+            started.add(id);
+            startLatch.countDown();
+            if (waitFor != null) {
+                await(waitFor.startLatch);
+            }
+            if (failing) {
+                throw new JefException("Expected failure.");
+            }
+            if (untilStopped) {
+                await(stopLatch);
+                return;
+            }
+            statusUpdater.setProgress(1d);
+        }
+        @Override
+        public void stop(JobStatus status, JobSuite suite) {
+            stopped = true;
+            stopLatch.countDown();
+        }
+        private static void await(CountDownLatch latch) {
+            try {
+                latch.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     public static void main(String[] args) throws IOException {
         if (args.length < 1) {
             System.out.println("Usage: <app> workdir [sleepScale]");
@@ -0,0 +1,230 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.job.group;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.jef5.JEFTestUtil;
+import com.norconex.jef5.JefException;
+import com.norconex.jef5.job.IJob;
+import com.norconex.jef5.status.JobState;
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusUpdater;
+import com.norconex.jef5.suite.JobSuite;
+import com.norconex.jef5.suite.JobSuiteConfig;
+
+public class DagJobGroupTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> events =
+            Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void testDependencyOrder() throws IOException {
+        DagJobGroup group = new DagJobGroup("dag",
+                newJob("a"), newJob("b"), newJob("c"), newJob("d"))
+                .dependsOn("b", "a")
+                .dependsOn("c", "a")
+                .dependsOn("d", "b", "c");
+        Assert.assertTrue(execute(group).isState(JobState.COMPLETED));
+
+        Assert.assertEquals(8, events.size());
+        assertBefore("a ended", "b started");
+        assertBefore("a ended", "c started");
+        assertBefore("b ended", "d started");
+        assertBefore("c ended", "d started");
+    }
+
+    @Test
+    public void testCriticalPathLengths() {
+        DagJobGroup group = new DagJobGroup(
+                "dag", newJob("a"), newJob("b"), newJob("c"));
+        List<List<Integer>> dependents = Arrays.asList(
+                Arrays.asList(1), Arrays.asList(2), new ArrayList<>());
+        Assert.assertArrayEquals(new long[] {3, 2, 1},
+                group.criticalPathLengths(dependents, new long[] {1, 1, 1}));
+        Assert.assertArrayEquals(new long[] {60, 50, 30},
+                group.criticalPathLengths(
+                        dependents, new long[] {10, 20, 30}));
+
+        // "c" leads back to "b"
+        dependents = Arrays.asList(
+                Arrays.asList(1), Arrays.asList(2), Arrays.asList(1));
+        try {
+            group.criticalPathLengths(dependents, new long[] {1, 1, 1});
+            Assert.fail("Circular dependencies should be rejected.");
+        } catch (JefException e) {
+            Assert.assertTrue(e.getMessage(),
+                    e.getMessage().contains("Circular"));
+            Assert.assertTrue(e.getMessage(),
+                    e.getMessage().endsWith("[b, c]"));
+        }
+    }
+
+    @Test
+    public void testCriticalPathFirst() throws IOException {
+        // One thread: jobs start one at a time, longest chain first,
+        // then in order of declaration.
+        DagJobGroup group = new DagJobGroup("dag", 1, newJob("x"),
+                newJob("y"), newJob("a"), newJob("b"), newJob("c"))
+                .dependsOn("b", "a")
+                .dependsOn("c", "b");
+        Assert.assertTrue(execute(group).isState(JobState.COMPLETED));
+        Assert.assertEquals(Arrays.asList("a", "b", "x", "y", "c"),
+                startedJobs());
+    }
+
+    @Test
+    public void testFailedJobSkipsDependents() throws IOException {
+        DagJobGroup group = new DagJobGroup("dag", newFailingJob("a"),
+                newJob("b"), newJob("c"), newJob("d"))
+                .dependsOn("b", "a")
+                .dependsOn("c", "b");
+        JobStatus status = execute(group);
+        Assert.assertFalse(status.isState(JobState.COMPLETED));
+        Assert.assertTrue(status.getNote(), status.getNote().contains(
+                "1 out of 4 jobs failed (2 not run)"));
+        // "a" and "d" run in parallel.
+        List<String> started = startedJobs();
+        Collections.sort(started);
+        Assert.assertEquals(Arrays.asList("a", "d"), started);
+        Assert.assertTrue(events.contains("d ended"));
+    }
+
+    @Test
+    public void testFailFast() throws IOException {
+        DagJobGroup group = new DagJobGroup("dag", 1,
+                newFailingJob("a"), newJob("b"), newJob("c"));
+        group.setMaxFailures(1);
+        JobStatus status = execute(group);
+        Assert.assertFalse(status.isState(JobState.COMPLETED));
+        Assert.assertTrue(status.getNote(), status.getNote().contains(
+                "1 out of 3 jobs failed (2 not run)"));
+        Assert.assertEquals(Arrays.asList("a"), startedJobs());
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        // "b" stops the suite the first time, before "c" can start.
+        AtomicInteger bRuns = new AtomicInteger();
+        IJob b = new RecordingJob("b", events) {
+            @Override
+            public void execute(
+                    JobStatusUpdater statusUpdater, JobSuite suite) {
+                if (bRuns.incrementAndGet() == 1) {
+                    events.add("b started");
+                    suite.getRootStatus().setStopRequested(true);
+                    suite.getJobStatus(this).setStopRequested(true);
+                    return;
+                }
+                super.execute(statusUpdater, suite);
+            }
+        };
+        DagJobGroup group = new DagJobGroup("dag", newJob("a"), b, newJob("c"))
+                .dependsOn("b", "a")
+                .dependsOn("c", "b");
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        JobSuite suite = new JobSuite(group, config);
+        Assert.assertFalse(suite.execute());
+        Assert.assertEquals(JobState.STOPPED, suite.getRootStatus().getState());
+        Assert.assertEquals(Arrays.asList("a", "b"), startedJobs());
+
+        // "a" completed: it is skipped and "b" runs right away.
+        events.clear();
+        suite = new JobSuite(group, config);
+        Assert.assertTrue(suite.execute(true));
+        Assert.assertEquals(
+                JobState.COMPLETED, suite.getRootStatus().getState());
+        Assert.assertEquals(Arrays.asList("b", "c"), startedJobs());
+    }
+
+    private JobStatus execute(DagJobGroup group) throws IOException {
+        JobSuite suite = new JobSuite(group, JEFTestUtil.newConfig(folder));
+        suite.execute();
+        return suite.getJobStatus(group);
+    }
+
+    private void assertBefore(String event, String laterEvent) {
+        Assert.assertTrue(event + " should come before " + laterEvent,
+                events.indexOf(event) < events.indexOf(laterEvent));
+    }
+
+    private List<String> startedJobs() {
+        List<String> ids = new ArrayList<>();
+        synchronized (events) {
+            for (String event : events) {
+                if (event.endsWith(" started")) {
+                    ids.add(event.substring(0, event.indexOf(' ')));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private IJob newJob(String id) {
+        return new RecordingJob(id, events);
+    }
+    private IJob newFailingJob(String id) {
+        return new RecordingJob(id, events) {
+            @Override
+            public void execute(
+                    JobStatusUpdater statusUpdater, JobSuite suite) {
+                events.add(id + " started");
+                throw new JefException("Job " + id + " failed.");
+            }
+        };
+    }
+
+    // Records when it starts and ends.
+    private static class RecordingJob implements IJob {
+        private final String id;
+        private final List<String> events;
+        RecordingJob(String id, List<String> events) {
+            this.id = id;
+            this.events = events;
+        }
+        @Override
+        public String getId() {
+            return id;
+        }
+        @Override
+        public void execute(JobStatusUpdater statusUpdater, JobSuite suite) {
+            events.add(id + " started");
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add(id + " ended");
+            statusUpdater.setProgress(1d);
+        }
+        @Override
+        public void stop(JobStatus status, JobSuite suite) {
+            //NOOP
+        }
+    }
+}
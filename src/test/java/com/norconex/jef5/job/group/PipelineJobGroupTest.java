@@ -0,0 +1,341 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.job.group;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.jef5.JEFTestUtil;
+import com.norconex.jef5.JefException;
+import com.norconex.jef5.event.JefEvent;
+import com.norconex.jef5.job.IJob;
+import com.norconex.jef5.status.JobState;
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.suite.JobSuite;
+import com.norconex.jef5.suite.JobSuiteConfig;
+
+public class PipelineJobGroupTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> events = new CopyOnWriteArrayList<>();
+    private final List<Integer> loaded =
+            Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void testPipeline() throws IOException {
+        PipelineJobGroup group = new PipelineJobGroup("pipeline",
+                () -> range(100),
+                new TestStage("double", 3, i -> i * 2),
+                new TestStage("load", 2, this::load));
+        JobSuite suite = execute(group);
+        Assert.assertEquals(
+                JobState.COMPLETED, suite.getRootStatus().getState());
+
+        List<Integer> sorted = new ArrayList<>(loaded);
+        Collections.sort(sorted);
+        Assert.assertEquals(IntStream.range(0, 100).map(i -> i * 2)
+                .boxed().collect(Collectors.toList()), sorted);
+        for (String id : new String[] {"double", "load"}) {
+            JobStatus status = suite.getJobStatus(id);
+            Assert.assertEquals(JobState.COMPLETED, status.getState());
+            Assert.assertEquals("100 items processed.", status.getNote());
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws IOException {
+        // Source far ahead of the last stage would mean items pile up.
+        AtomicInteger produced = new AtomicInteger();
+        AtomicInteger maxAhead = new AtomicInteger();
+        Iterator<Integer> source = new Iterator<Integer>() {
+            @Override
+            public boolean hasNext() {
+                return produced.get() < 50;
+            }
+            @Override
+            public Integer next() {
+                maxAhead.accumulateAndGet(
+                        produced.get() - loaded.size(), Math::max);
+                return produced.getAndIncrement();
+            }
+        };
+        PipelineJobGroup group = new PipelineJobGroup("pipeline",
+                () -> source,
+                new TestStage("copy", 1, i -> i),
+                new TestStage("load", 1, i -> {
+                    sleep(5);
+                    return load(i);
+                }));
+        group.setChannelCapacity(2);
+        JobSuite suite = execute(group);
+        Assert.assertEquals(
+                JobState.COMPLETED, suite.getRootStatus().getState());
+        Assert.assertEquals(50, loaded.size());
+        // Two full channels, one item per stage, and one taken from the
+        // source, waiting to be added.
+        Assert.assertTrue("Too many items at once: " + maxAhead.get(),
+                maxAhead.get() <= 7);
+    }
+
+    @Test
+    public void testStageFailure() throws IOException {
+        AtomicInteger produced = new AtomicInteger();
+        PipelineJobGroup group = new PipelineJobGroup("pipeline",
+                () -> counting(range(10000), produced),
+                new TestStage("copy", 2, i -> i),
+                new TestStage("load", 1, i -> {
+                    if (i == 10) {
+                        throw new JefException("Expected failure.");
+                    }
+                    return load(i);
+                }));
+        group.setChannelCapacity(2);
+        JobSuite suite = execute(group);
+        JobStatus status = suite.getRootStatus();
+        Assert.assertEquals(JobState.UNCOMPLETED, status.getState());
+        Assert.assertTrue(status.getNote(), status.getNote().contains(
+                "1 out of 2 stages failed"));
+
+        // The source and other stages stopped soon after.
+        Assert.assertTrue(produced.get() < 100);
+        Assert.assertEquals(JobState.UNCOMPLETED,
+                suite.getJobStatus("load").getState());
+        assertStoppedEarly(suite, "copy");
+    }
+
+    @Test
+    public void testSourceFailure() throws IOException {
+        Iterator<Integer> items = range(100);
+        Iterator<Integer> source = new Iterator<Integer>() {
+            @Override
+            public boolean hasNext() {
+                return items.hasNext();
+            }
+            @Override
+            public Integer next() {
+                Integer item = items.next();
+                if (item == 20) {
+                    throw new JefException("Expected failure.");
+                }
+                return item;
+            }
+        };
+        PipelineJobGroup group = new PipelineJobGroup("pipeline",
+                () -> source,
+                new TestStage("copy", 1, i -> i),
+                new TestStage("load", 1, this::load));
+        JobSuite suite = execute(group);
+        JobStatus status = suite.getRootStatus();
+        Assert.assertEquals(JobState.UNCOMPLETED, status.getState());
+        Assert.assertTrue(status.getNote(), status.getNote().contains(
+                "Source failed"));
+        Assert.assertTrue(loaded.size() < 20);
+        // Stages may not have started yet when the source failed.
+        assertNotCompleted(suite, "copy");
+        assertNotCompleted(suite, "load");
+    }
+
+    @Test
+    public void testStop() throws IOException {
+        // Stopped the way the suite does, while items remain.
+        AtomicInteger produced = new AtomicInteger();
+        List<PipelineJobGroup> groups = new ArrayList<>(1);
+        PipelineJobGroup group = new PipelineJobGroup("pipeline",
+                () -> counting(range(10000), produced),
+                new TestStage("copy", 1, i -> i),
+                new TestStage("load", 1, i -> i),
+                new TestStage("stopper", 1, i -> i, (i, suite) -> {
+                    if (i == 10) {
+                        JobStatus status = suite.getJobStatus("pipeline");
+                        status.markStopping();
+                        groups.get(0).stop(status, suite);
+                    }
+                }));
+        groups.add(group);
+        group.setChannelCapacity(2);
+        JobSuite suite = execute(group);
+        Assert.assertEquals(
+                JobState.STOPPED, suite.getRootStatus().getState());
+        Assert.assertTrue(produced.get() < 100);
+        assertStoppedEarly(suite, "copy");
+        assertStoppedEarly(suite, "load");
+        assertStoppedEarly(suite, "stopper");
+    }
+
+    @Test
+    public void testStageProgress() throws IOException {
+        PipelineJobGroup group = new PipelineJobGroup("pipeline",
+                () -> range(150),
+                new TestStage("copy", 1, i -> i),
+                new TestStage("slow", 1, i -> {
+                    sleep(10);
+                    return i;
+                }));
+        group.setExpectedItemCount(150);
+        List<Double> slowProgress = new CopyOnWriteArrayList<>();
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        config.addEventListeners(e -> {
+            if (JefEvent.JOB_PROGRESSED.equals(e.getName())
+                    && e.getSource() instanceof IJob
+                    && "slow".equals(((IJob) e.getSource()).getId())) {
+                slowProgress.add(((JefEvent) e).getStatus().getProgress());
+            }
+        });
+        JobSuite suite = new JobSuite(group, config);
+        Assert.assertTrue(suite.execute());
+
+        // Reported while running, then complete.
+        Assert.assertTrue(slowProgress.toString(), slowProgress.stream()
+                .anyMatch(p -> p > 0d && p < 1d));
+        Assert.assertEquals(1d, suite.getJobStatus("copy").getProgress(), 0d);
+        Assert.assertEquals(1d, suite.getJobStatus("slow").getProgress(), 0d);
+        Assert.assertEquals(1d, suite.getRootStatus().getProgress(), 0d);
+    }
+
+    @Test
+    public void testChannel() throws InterruptedException {
+        PipelineChannel channel = new PipelineChannel(2);
+        Assert.assertTrue(channel.put("a"));
+        Assert.assertTrue(channel.put("b"));
+        // Full: waits until an item is taken.
+        Thread producer = new Thread(() -> {
+            try {
+                channel.put("c");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        producer.join(200);
+        Assert.assertTrue(producer.isAlive());
+        Assert.assertEquals("a", channel.take());
+        producer.join(5000);
+        Assert.assertFalse(producer.isAlive());
+
+        // Closed: remaining items can still be taken.
+        channel.close();
+        Assert.assertEquals("b", channel.take());
+        Assert.assertEquals("c", channel.take());
+        Assert.assertNull(channel.take());
+        Assert.assertEquals(3, channel.getAddedCount());
+
+        // Cancelled: waiting consumers are released, items are discarded.
+        PipelineChannel cancelled = new PipelineChannel(2);
+        cancelled.put("a");
+        cancelled.cancel();
+        Assert.assertNull(cancelled.take());
+        Assert.assertFalse(cancelled.put("b"));
+    }
+
+    private JobSuite execute(PipelineJobGroup group) throws IOException {
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        config.addEventListeners(e -> {
+            if (e.getSource() instanceof IJob) {
+                events.add(((IJob) e.getSource()).getId()
+                        + " " + e.getName());
+            }
+        });
+        JobSuite suite = new JobSuite(group, config);
+        suite.execute();
+        return suite;
+    }
+
+    // Stopped before all items were processed, so not completed.
+    private void assertStoppedEarly(JobSuite suite, String stageId) {
+        Assert.assertEquals(stageId + " state.", JobState.STOPPED,
+                suite.getJobStatus(stageId).getState());
+        assertNotCompleted(suite, stageId);
+    }
+    private void assertNotCompleted(JobSuite suite, String stageId) {
+        Assert.assertNotEquals(stageId + " state.", JobState.COMPLETED,
+                suite.getJobStatus(stageId).getState());
+        Assert.assertFalse(stageId + " completed.",
+                events.contains(stageId + " " + JefEvent.JOB_COMPLETED));
+    }
+
+    private Integer load(Integer item) {
+        loaded.add(item);
+        return item;
+    }
+
+    private static Iterator<Integer> range(int count) {
+        return IntStream.range(0, count).iterator();
+    }
+    private static Iterator<Integer> counting(
+            Iterator<Integer> items, AtomicInteger count) {
+        return new Iterator<Integer>() {
+            @Override
+            public boolean hasNext() {
+                return items.hasNext();
+            }
+            @Override
+            public Integer next() {
+                count.incrementAndGet();
+                return items.next();
+            }
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Passes on what the function returns.
+    private static class TestStage extends PipelineStage<Integer, Integer> {
+        private final Function<Integer, Integer> function;
+        private final StageHook hook;
+        TestStage(String id, int parallelism,
+                Function<Integer, Integer> function) {
+            this(id, parallelism, function, null);
+        }
+        TestStage(String id, int parallelism,
+                Function<Integer, Integer> function, StageHook hook) {
+            super(id, parallelism);
+            this.function = function;
+            this.hook = hook;
+        }
+        @Override
+        protected void process(Integer item,
+                Consumer<? super Integer> output, JobSuite suite) {
+            output.accept(function.apply(item));
+            if (hook != null) {
+                hook.processed(item, suite);
+            }
+        }
+    }
+    private interface StageHook {
+        void processed(Integer item, JobSuite suite);
+    }
+}
@@ -0,0 +1,200 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.job.group;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.jef5.JEFTestUtil;
+import com.norconex.jef5.job.IJob;
+import com.norconex.jef5.status.JobState;
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusUpdater;
+import com.norconex.jef5.status.JobSuiteStatusDAO;
+import com.norconex.jef5.suite.JobSuite;
+import com.norconex.jef5.suite.JobSuiteConfig;
+
+public class StreamJobGroupTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> started =
+            Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void testAddRunRemove() throws IOException {
+        StreamJobGroup group = new StreamJobGroup("stream", 2,
+                () -> newJobs(null, "a", "b", "c").iterator());
+        group.setExpectedJobCount(3);
+        JobSuite suite = new JobSuite(group, JEFTestUtil.newConfig(folder));
+        Assert.assertTrue(suite.execute());
+
+        List<String> sortedIds = new ArrayList<>(started);
+        Collections.sort(sortedIds);
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), sortedIds);
+        Assert.assertEquals(1d, suite.getRootStatus().getProgress(), 0d);
+        // Statuses remain in the store.
+        JobSuiteStatusDAO dao =
+                new JobSuiteStatusDAO(suite.getId(), suite.getStatusDir());
+        for (String id : sortedIds) {
+            Assert.assertEquals(JobState.COMPLETED, dao.read(id).getState());
+        }
+    }
+
+    @Test
+    public void testFlatMemory() throws IOException {
+        // Jobs are only created once they can run.
+        AtomicInteger live = new AtomicInteger();
+        AtomicInteger maxLive = new AtomicInteger();
+        Iterator<IJob> jobs = new Iterator<IJob>() {
+            private int count;
+            @Override
+            public boolean hasNext() {
+                return count < 50;
+            }
+            @Override
+            public IJob next() {
+                maxLive.accumulateAndGet(live.incrementAndGet(), Math::max);
+                return new RecordingJob("job" + count++, started,
+                        s -> live.decrementAndGet());
+            }
+        };
+        StreamJobGroup group = new StreamJobGroup("stream", 3, () -> jobs);
+        JobSuite suite = new JobSuite(group, JEFTestUtil.newConfig(folder));
+        Assert.assertTrue(suite.execute());
+        Assert.assertEquals(50, started.size());
+        Assert.assertTrue("Too many jobs at once: " + maxLive.get(),
+                maxLive.get() <= 3);
+    }
+
+    @Test
+    public void testIdReusableOnceRemoved() throws IOException {
+        // Same id, one after the other: the first one is removed when done.
+        StreamJobGroup group = new StreamJobGroup("stream", 1,
+                () -> newJobs(null, "a", "a").iterator());
+        JobSuite suite = new JobSuite(group, JEFTestUtil.newConfig(folder));
+        Assert.assertTrue(suite.execute());
+    }
+
+    @Test
+    public void testDuplicateId() throws IOException {
+        // Same id as a job of the suite tree.
+        StreamJobGroup group = new StreamJobGroup("stream", 1,
+                () -> newJobs(null, "a", "root", "b").iterator());
+        JobSuite suite = new JobSuite(new SyncJobGroup("root", group),
+                JEFTestUtil.newConfig(folder));
+        Assert.assertFalse(suite.execute());
+        Assert.assertEquals(Arrays.asList("a", "b"), started);
+        JobStatus status = suite.getJobStatus(group);
+        Assert.assertTrue(status.getNote(),
+                status.getNote().contains("1 out of 2 jobs failed"));
+
+        // Same id as a job of the same group still running.
+        started.clear();
+        group = new StreamJobGroup("stream", 2,
+                () -> newJobs(null, "slow", "slow").iterator());
+        suite = new JobSuite(group, JEFTestUtil.newConfig(folder));
+        Assert.assertFalse(suite.execute());
+        Assert.assertEquals(Arrays.asList("slow"), started);
+        Assert.assertEquals(JobState.COMPLETED,
+                new JobSuiteStatusDAO(suite.getId(), suite.getStatusDir())
+                        .read("slow").getState());
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        // "c" stops the suite the first time, before "d" can start.
+        AtomicInteger cRuns = new AtomicInteger();
+        Consumer<JobSuite> stopper = suite -> {
+            if (cRuns.incrementAndGet() == 1) {
+                suite.getRootStatus().setStopRequested(true);
+            }
+        };
+        StreamJobGroup group = new StreamJobGroup("stream", 1,
+                () -> newJobs(stopper, "a", "b", "c", "d").iterator());
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        JobSuite suite = new JobSuite(group, config);
+        suite.execute();
+        Assert.assertEquals(JobState.STOPPED, suite.getRootStatus().getState());
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), started);
+
+        // Completed jobs are skipped.
+        started.clear();
+        suite = new JobSuite(group, config);
+        Assert.assertTrue(suite.execute(true));
+        Assert.assertEquals(
+                JobState.COMPLETED, suite.getRootStatus().getState());
+        Assert.assertEquals(Arrays.asList("c", "d"), started);
+    }
+
+    // "c" gets the given hook
+    private List<IJob> newJobs(Consumer<JobSuite> cHook, String... ids) {
+        List<IJob> jobs = new ArrayList<>();
+        for (String id : ids) {
+            jobs.add(new RecordingJob(
+                    id, started, "c".equals(id) ? cHook : null));
+        }
+        return jobs;
+    }
+
+    // Records when it starts, and does not complete if the suite is
+    // asked to stop by the hook.
+    private static class RecordingJob implements IJob {
+        private final String id;
+        private final List<String> started;
+        private final Consumer<JobSuite> hook;
+        RecordingJob(String id, List<String> started,
+                Consumer<JobSuite> hook) {
+            this.id = id;
+            this.started = started;
+            this.hook = hook;
+        }
+        @Override
+        public String getId() {
+            return id;
+        }
+        @Override
+        public void execute(JobStatusUpdater statusUpdater, JobSuite suite) {
+            started.add(id);
+            try {
+                Thread.sleep("slow".equals(id) ? 300 : 5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (hook != null) {
+                hook.accept(suite);
+            }
+            if (!suite.getRootStatus().isStopRequested()) {
+                statusUpdater.setProgress(1d);
+            }
+        }
+        @Override
+        public void stop(JobStatus status, JobSuite suite) {
+            //NOOP
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JobStatusDataTest {
+
+    @Test
+    public void testStateTransitions() {
+        JobStatusData status = new JobStatusData();
+        Assert.assertEquals(JobState.UNKNOWN, status.getState());
+
+        Assert.assertTrue(status.markRunning());
+        Assert.assertFalse(status.markRunning());
+        // No heartbeat needed when running in this JVM.
+        Assert.assertEquals(JobState.RUNNING, status.getState());
+
+        Assert.assertTrue(status.markStopping());
+        Assert.assertEquals(JobState.STOPPING, status.getState());
+        Assert.assertEquals(JobState.STOPPED, status.markEnded());
+        Assert.assertFalse(status.markStopping());
+
+        status = new JobStatusData();
+        status.markRunning();
+        status.setProgress(1d);
+        Assert.assertEquals(JobState.COMPLETED, status.markEnded());
+
+        status = new JobStatusData();
+        status.markRunning();
+        Assert.assertEquals(JobState.UNCOMPLETED, status.markEnded());
+    }
+
+    @Test
+    public void testForeignState() {
+        // Running state recorded elsewhere without recent activity.
+        JobStatusData status = new JobStatusData();
+        status.setStartTime(Instant.now());
+        status.setRecordedState(JobState.RUNNING);
+        Assert.assertEquals(JobState.ABORTED, status.getState());
+
+        status.setLastActivity(Instant.now());
+        Assert.assertEquals(JobState.RUNNING, status.getState());
+    }
+
+    @Test
+    public void testDerivedState() {
+        // No recorded state (e.g., older status)
+        JobStatusData status = new JobStatusData();
+        status.setStartTime(Instant.now());
+        status.setEndTime(Instant.now());
+        Assert.assertEquals(JobState.UNCOMPLETED, status.getState());
+        status.setProgress(1d);
+        Assert.assertEquals(JobState.COMPLETED, status.getState());
+    }
+
+    @Test
+    public void testCopyWhileModified() throws InterruptedException {
+        // Job updating its properties without locking them.
+        JobStatusData status = new JobStatusData();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread job = new Thread(() -> {
+            int i = 0;
+            while (running.get()) {
+                status.getProperties().set("key" + (i % 100), i);
+                status.getProperties().remove("key" + ((i + 50) % 100));
+                i++;
+            }
+        });
+        job.start();
+        try {
+            long end = System.currentTimeMillis() + 300;
+            while (System.currentTimeMillis() < end) {
+                JobStatusData copy = new JobStatusData();
+                status.copyTo(copy);
+                for (String key : copy.getProperties().keySet()) {
+                    Assert.assertEquals(
+                            1, copy.getProperties().get(key).size());
+                }
+            }
+        } finally {
+            running.set(false);
+            job.join();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.jef5.status.store.StatusDurability;
+
+public class JobSuiteStatusDAOTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path statusDir;
+
+    @Before
+    public void setup() throws IOException {
+        statusDir = folder.newFolder("status").toPath();
+    }
+
+    @Test
+    public void testPageCacheDurability() throws IOException {
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO("suite", statusDir);
+        Assert.assertEquals(StatusDurability.PAGE_CACHE, dao.getDurability());
+        dao.write(newStatus("job", 0.5d));
+        Assert.assertTrue(Files.exists(statusDir.resolve("job.job")));
+        Assert.assertTrue(listTempFiles().isEmpty());
+        Assert.assertEquals(0.5d, dao.read("job").getProgress(), 0d);
+    }
+
+    @Test
+    public void testStrictDurability() throws IOException {
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO("suite", statusDir);
+        dao.setDurability(StatusDurability.STRICT);
+        dao.write(newStatus("job", 0.5d));
+        dao.writeAttempt("job", 1, newStatus("job", 0.25d));
+        Assert.assertTrue(listTempFiles().isEmpty());
+        JobStatus status =
+                new JobSuiteStatusDAO("suite", statusDir).read("job");
+        Assert.assertEquals(0.5d, status.getProgress(), 0d);
+        Assert.assertEquals(1, status.getResumedAttempts().size());
+    }
+
+    @Test
+    public void testBatchedDurability() throws IOException {
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO("suite", statusDir);
+        dao.setDurability(StatusDurability.BATCHED);
+        // Long enough that nothing is synced before closing.
+        dao.setSyncInterval(60 * 1000);
+        dao.write(newStatus("job", 0.25d));
+        dao.write(newStatus("job", 0.5d));
+
+        // Renames are pending, and superseded writes are discarded.
+        Assert.assertFalse(Files.exists(statusDir.resolve("job.job")));
+        Assert.assertEquals(1, listTempFiles().size());
+
+        dao.close();
+        Assert.assertTrue(listTempFiles().isEmpty());
+        Assert.assertEquals(0.5d, new JobSuiteStatusDAO(
+                "suite", statusDir).read("job").getProgress(), 0d);
+    }
+
+    @Test
+    public void testStaleTempFilesDeleted() throws IOException {
+        // Pending in this store.
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO("suite", statusDir);
+        dao.setDurability(StatusDurability.BATCHED);
+        dao.setSyncInterval(60 * 60 * 1000);
+        dao.write(newStatus("job", 0.5d));
+        Assert.assertEquals(1, listTempFiles().size());
+        Path pending = listTempFiles().get(0);
+        Path stale = Files.createFile(statusDir.resolve("job.job.12.tmp"));
+        // Not one of ours.
+        Path other = Files.createFile(statusDir.resolve("other.tmp"));
+
+        // Only deleted when recovering, not by readers.
+        new JobSuiteStatusDAO("suite", statusDir).read("job");
+        Assert.assertTrue(Files.exists(stale));
+        dao.recover();
+        Assert.assertFalse(Files.exists(stale));
+        Assert.assertTrue(Files.exists(other));
+        Assert.assertTrue(Files.exists(pending));
+        dao.close();
+    }
+
+    @Test
+    public void testHashedLayout() throws IOException {
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO("suite", statusDir);
+        dao.setHashedLayout(true);
+        dao.write(newStatus("job", 0.5d));
+        dao.writeAttempt("job", 1, newStatus("job", 0.25d));
+
+        List<Path> files = listJobFiles();
+        Assert.assertEquals(2, files.size());
+        for (Path file : files) {
+            // Two levels of hashed sub-directories.
+            Assert.assertEquals(statusDir,
+                    file.getParent().getParent().getParent());
+        }
+        JobSuiteStatusDAO reader = new JobSuiteStatusDAO("suite", statusDir);
+        reader.setHashedLayout(true);
+        JobStatus status = reader.read("job");
+        Assert.assertEquals(0.5d, status.getProgress(), 0d);
+        Assert.assertEquals(1, status.getResumedAttempts().size());
+    }
+
+    @Test
+    public void testMigrateLayout() throws IOException {
+        JobSuiteStatusDAO dao = new JobSuiteStatusDAO("suite", statusDir);
+        dao.write(newStatus("job1", 0.5d));
+        dao.writeAttempt("job1", 1, newStatus("job1", 0.25d));
+        dao.write(newStatus("job2", 1d));
+
+        dao.setHashedLayout(true);
+        Assert.assertEquals(3, dao.migrateLayout());
+        Assert.assertEquals(0, dao.migrateLayout());
+        for (Path file : listJobFiles()) {
+            Assert.assertNotEquals(statusDir, file.getParent());
+        }
+        Assert.assertEquals(0.5d, dao.read("job1").getProgress(), 0d);
+        Assert.assertEquals(
+                1, dao.read("job1").getResumedAttempts().size());
+
+        dao.setHashedLayout(false);
+        Assert.assertEquals(3, dao.migrateLayout());
+        for (Path file : listJobFiles()) {
+            Assert.assertEquals(statusDir, file.getParent());
+        }
+        // Emptied hashed sub-directories are removed.
+        try (Stream<Path> paths = Files.list(statusDir)) {
+            Assert.assertFalse(paths.anyMatch(Files::isDirectory));
+        }
+        Assert.assertEquals(1d, dao.read("job2").getProgress(), 0d);
+    }
+
+    private JobStatus newStatus(String jobId, double progress) {
+        JobStatus status = new JobStatus(jobId, null);
+        status.setProgress(progress);
+        return status;
+    }
+
+    private List<Path> listJobFiles() throws IOException {
+        try (Stream<Path> paths = Files.walk(statusDir)) {
+            return paths.filter(p -> p.getFileName().toString().matches(
+                    "job\\d?\\.job(\\.\\d+)?")).collect(Collectors.toList());
+        }
+    }
+    private List<Path> listTempFiles() throws IOException {
+        try (Stream<Path> paths = Files.walk(statusDir)) {
+            return paths.filter(p -> p.toString().endsWith(".tmp"))
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -18,14 +18,28 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.jef5.JEFTestUtil;
+import com.norconex.jef5.job.IJob;
+import com.norconex.jef5.job.group.AsyncJobGroup;
+import com.norconex.jef5.job.impl.SleepyJob;
+import com.norconex.jef5.status.store.IJobStatusStore;
+import com.norconex.jef5.suite.JobSuite;
 
 public class JobSuiteStatusTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void testLoadJobStatuses() throws IOException {
         JobSuiteStatus facade = JobSuiteStatus.getInstance(Paths.get("n/a"),
@@ -45,9 +59,57 @@ public class JobSuiteStatusTest {
                 "Job C");
 
         Assert.assertEquals(allJobIds, facade.getAllIds());
+        Assert.assertEquals(2000, facade.getHeartbeatInterval());
+        Assert.assertEquals(30000, facade.getActivityTimeout());
+        Assert.assertEquals(30000,
+                facade.getRootStatus().getActivityTimeout());
 //        System.out.println("facade:\n\n" + facade);
     }
 
+    @Test
+    public void testLiveStatusesAreShared() throws IOException {
+        JobSuite suite = new JobSuite(
+                new SleepyJob(1, 1), JEFTestUtil.newConfig(folder));
+        JobSuiteStatus suiteStatus = JobSuiteStatus.getInstance(suite);
+        JobStatus status = suiteStatus.getRootStatus();
+        status.setProgress(0.5d);
+        Assert.assertSame(status, suiteStatus.getStatus(suite.getId()));
+        Assert.assertEquals(0.5d,
+                suiteStatus.getAllStatuses().get(0).getProgress(), 0d);
+    }
+
+    @Test
+    public void testPreloadStatuses() throws IOException {
+        List<IJob> jobs = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            jobs.add(new SleepyJob(i, 1));
+        }
+        JobSuite suite = new JobSuite(new AsyncJobGroup("group", jobs),
+                JEFTestUtil.newConfig(folder));
+        IJobStatusStore store = suite.getJobStatusStore();
+        for (int i = 1; i <= 50; i++) {
+            String jobId = jobs.get(i - 1).getId();
+            JobStatus status = new JobStatus(jobId, null);
+            status.setProgress(i / 100d);
+            store.write(status);
+            // Some jobs have previous attempts.
+            for (int attemptNo = 1; attemptNo <= i % 3; attemptNo++) {
+                JobStatusData attempt = new JobStatusData();
+                attempt.setStartTime(Instant.ofEpochMilli(attemptNo));
+                store.writeAttempt(jobId, attemptNo, attempt);
+            }
+        }
+
+        JobSuiteStatus suiteStatus = JobSuiteStatus.getInstance(suite);
+        suiteStatus.preloadStatuses(8);
+        for (int i = 1; i <= 50; i++) {
+            JobStatus status = suiteStatus.getStatus(jobs.get(i - 1));
+            Assert.assertEquals(i / 100d, status.getProgress(), 0d);
+            Assert.assertEquals(
+                    i % 3, status.getResumedAttempts().size());
+        }
+    }
+
 //
 //    @Test
 //    public void testWriteRead() throws IOException {
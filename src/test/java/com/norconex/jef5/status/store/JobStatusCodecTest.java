@@ -0,0 +1,140 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.jef5.status.JobState;
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusData;
+import com.norconex.jef5.status.JobSuiteStatusDAO;
+
+public class JobStatusCodecTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEncodeDecode() throws IOException {
+        JobStatusData data = new JobStatusData();
+        data.setProgress(0.42d);
+        data.setNote("Café ☃ note");
+        data.setStartTime(Instant.ofEpochMilli(1000));
+        data.setEndTime(Instant.ofEpochMilli(2000));
+        data.setLastActivity(Instant.ofEpochMilli(3000));
+        data.setStopRequested(true);
+        data.setRecordedState(JobState.STOPPING);
+        data.getProperties().set("single", "value");
+        data.getProperties().set("multi", "a", "b", "c");
+        data.getProperties().set("large", StringUtils.repeat('x', 5000));
+
+        JobStatusCodec codec = new JobStatusCodec();
+        ByteBuffer encoded = codec.encode(data);
+        Assert.assertTrue(JobStatusCodec.isEncoded(encoded));
+
+        JobStatusData decoded = new JobStatusData();
+        decoded.getProperties().set("stale", "value");
+        codec.decode(encoded, decoded);
+        Assert.assertEquals(0.42d, decoded.getProgress(), 0d);
+        Assert.assertEquals("Café ☃ note", decoded.getNote());
+        Assert.assertEquals(Instant.ofEpochMilli(1000),
+                decoded.getStartTime());
+        Assert.assertEquals(Instant.ofEpochMilli(2000), decoded.getEndTime());
+        Assert.assertEquals(Instant.ofEpochMilli(3000),
+                decoded.getLastActivity());
+        Assert.assertTrue(decoded.isStopRequested());
+        Assert.assertEquals(JobState.STOPPING, decoded.getRecordedState());
+        Assert.assertEquals(data.getProperties(), decoded.getProperties());
+        Assert.assertEquals(Arrays.asList("a", "b", "c"),
+                decoded.getProperties().getStrings("multi"));
+    }
+
+    @Test
+    public void testEncodeDecodeEmpty() throws IOException {
+        JobStatusCodec codec = new JobStatusCodec();
+        JobStatusData decoded = new JobStatusData();
+        decoded.setNote("stale");
+        codec.decode(codec.encode(new JobStatusData()), decoded);
+        Assert.assertEquals(0d, decoded.getProgress(), 0d);
+        Assert.assertNull(decoded.getNote());
+        Assert.assertNull(decoded.getStartTime());
+        Assert.assertNull(decoded.getEndTime());
+        Assert.assertNull(decoded.getLastActivity());
+        Assert.assertFalse(decoded.isStopRequested());
+        Assert.assertNull(decoded.getRecordedState());
+        Assert.assertTrue(decoded.getProperties().isEmpty());
+    }
+
+    @Test
+    public void testHeader() throws IOException {
+        ByteBuffer text = ByteBuffer.wrap(
+                "progress=0.5\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertFalse(JobStatusCodec.isEncoded(text));
+        try {
+            new JobStatusCodec().decode(text, new JobStatusData());
+            Assert.fail("Should not decode text.");
+        } catch (IOException e) {
+            // expected
+        }
+
+        ByteBuffer newer = ByteBuffer.allocate(5);
+        newer.putInt(JobStatusCodec.MAGIC).put(
+                (byte) (JobStatusCodec.VERSION + 1));
+        newer.flip();
+        Assert.assertTrue(JobStatusCodec.isEncoded(newer));
+        try {
+            new JobStatusCodec().decode(newer, new JobStatusData());
+            Assert.fail("Should not decode a newer version.");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(),
+                    e.getMessage().contains("Unsupported"));
+        }
+    }
+
+    @Test
+    public void testTextFormatFallback() throws IOException {
+        Path statusDir = folder.newFolder("status").toPath();
+        JobStatus status = new JobStatus("job", null);
+        status.setProgress(0.5d);
+        status.setNote("Text note");
+        status.setStartTime(Instant.ofEpochMilli(1000));
+        status.setRecordedState(JobState.UNCOMPLETED);
+        status.getProperties().set("key", "value");
+
+        JobSuiteStatusDAO textDao = new JobSuiteStatusDAO("suite", statusDir);
+        textDao.setTextFormat(true);
+        textDao.write(status);
+
+        // Text statuses are read by stores writing the binary format.
+        JobStatus read =
+                new JobSuiteStatusDAO("suite", statusDir).read("job");
+        Assert.assertEquals(0.5d, read.getProgress(), 0d);
+        Assert.assertEquals("Text note", read.getNote());
+        Assert.assertEquals(Instant.ofEpochMilli(1000), read.getStartTime());
+        Assert.assertEquals(JobState.UNCOMPLETED, read.getRecordedState());
+        Assert.assertEquals("value", read.getProperties().getString("key"));
+    }
+}
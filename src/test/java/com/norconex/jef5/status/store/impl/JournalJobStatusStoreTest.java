@@ -0,0 +1,181 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status.store.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusData;
+
+public class JournalJobStatusStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path statusDir;
+    private JournalJobStatusStore store;
+
+    @Before
+    public void setup() throws IOException {
+        statusDir = folder.newFolder("status").toPath();
+        store = newStore();
+    }
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    public void testAppendReplay() throws IOException {
+        JobStatus status = new JobStatus("job", null);
+        status.setProgress(0.5d);
+        status.setNote("Half done.");
+        status.getProperties().set("key", "value");
+        store.write(status);
+        Instant touched = store.touch("job");
+        status.setProgress(1d);
+        store.write(status);
+        store.touch("other");
+
+        JournalJobStatusStore reader = newStore();
+        JobStatus read = reader.read("job");
+        Assert.assertEquals(1d, read.getProgress(), 0d);
+        Assert.assertEquals("Half done.", read.getNote());
+        Assert.assertEquals("value", read.getProperties().getString("key"));
+        Assert.assertFalse(read.getLastActivity().isBefore(touched));
+        Assert.assertNotNull(reader.read("other").getLastActivity());
+
+        List<JobStatusData> timeline = reader.readTimeline("job");
+        Assert.assertEquals(2, timeline.size());
+        Assert.assertEquals(0.5d, timeline.get(0).getProgress(), 0d);
+        Assert.assertEquals(1d, timeline.get(1).getProgress(), 0d);
+
+        // Records appended after a first read are picked up.
+        status.setNote("Done.");
+        store.write(status);
+        Assert.assertEquals("Done.", reader.read("job").getNote());
+        reader.close();
+    }
+
+    @Test
+    public void testTornTail() throws IOException {
+        JobStatus status = new JobStatus("job", null);
+        status.setProgress(0.5d);
+        store.write(status);
+        store.close();
+        long validSize = Files.size(store.getJournalFile());
+
+        // Record length announcing more bytes than were written.
+        try (FileChannel channel = FileChannel.open(
+                store.getJournalFile(), StandardOpenOption.APPEND)) {
+            ByteBuffer buf = ByteBuffer.allocate(7);
+            buf.putInt(100).put((byte) 1).put((byte) 0).put((byte) 3);
+            buf.flip();
+            channel.write(buf);
+        }
+        Assert.assertEquals(0.5d,
+                newStore().read("job").getProgress(), 0d);
+
+        // The incomplete record is discarded before appending.
+        store = newStore();
+        status.setProgress(1d);
+        store.write(status);
+        store.close();
+        Assert.assertTrue(Files.size(store.getJournalFile()) > validSize);
+        Assert.assertEquals(1d, newStore().read("job").getProgress(), 0d);
+        Assert.assertEquals(2, newStore().readTimeline("job").size());
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+        JobStatus status = new JobStatus("job", null);
+        status.setProgress(0.25d);
+        store.write(status);
+        JournalJobStatusStore reader = newStore();
+        Assert.assertEquals(0.25d, reader.read("job").getProgress(), 0d);
+
+        store.compact();
+        Assert.assertTrue(store.getSnapshotFile().toFile().exists());
+        Assert.assertTrue(store.readTimeline("job").isEmpty());
+        status.setProgress(0.75d);
+        store.write(status);
+
+        // The reader notices the new generation and reloads.
+        Assert.assertEquals(0.75d, reader.read("job").getProgress(), 0d);
+        Assert.assertEquals(1, reader.readTimeline("job").size());
+        reader.close();
+        Assert.assertEquals(0.75d, newStore().read("job").getProgress(), 0d);
+    }
+
+    @Test
+    public void testCompactionThreshold() throws IOException {
+        store.setCompactionThreshold(1024);
+        JobStatus status = new JobStatus("job", null);
+        for (int i = 1; i <= 100; i++) {
+            status.setProgress(i / 100d);
+            store.write(status);
+        }
+        Assert.assertTrue(store.getSnapshotFile().toFile().exists());
+        Assert.assertTrue(Files.size(store.getJournalFile()) <= 1024);
+        Assert.assertEquals(1d, newStore().read("job").getProgress(), 0d);
+    }
+
+    @Test
+    public void testAttempts() throws IOException {
+        for (int i = 1; i <= 2; i++) {
+            JobStatusData attempt = new JobStatusData();
+            attempt.setStartTime(Instant.ofEpochMilli(i * 1000));
+            attempt.setNote("Attempt " + i);
+            store.writeAttempt("job", i, attempt);
+        }
+        JobStatus status = new JobStatus("job", null);
+        status.setProgress(1d);
+        store.write(status);
+        assertAttempts(newStore().read("job"));
+
+        // Attempts survive compaction.
+        store.compact();
+        assertAttempts(newStore().read("job"));
+    }
+
+    private void assertAttempts(JobStatus status) {
+        Assert.assertEquals(1d, status.getProgress(), 0d);
+        Assert.assertEquals(2, status.getResumedAttempts().size());
+        Iterator<JobStatusData> it = status.getResumedAttempts().iterator();
+        Assert.assertEquals("Attempt 1", it.next().getNote());
+        Assert.assertEquals("Attempt 2", it.next().getNote());
+    }
+
+    private JournalJobStatusStore newStore() throws IOException {
+        JournalJobStatusStore s = new JournalJobStatusStore();
+        s.open("suite", statusDir);
+        return s;
+    }
+}
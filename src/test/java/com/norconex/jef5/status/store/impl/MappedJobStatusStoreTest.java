@@ -0,0 +1,228 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.status.store.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusData;
+
+public class MappedJobStatusStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path statusDir;
+    private MappedJobStatusStore store;
+
+    @Before
+    public void setup() throws IOException {
+        statusDir = folder.newFolder("status").toPath();
+        store = newStore();
+    }
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        JobStatus status = new JobStatus("job", null);
+        status.setProgress(0.5d);
+        status.setStartTime(Instant.ofEpochMilli(1000));
+        status.setNote("Half done.");
+        status.getProperties().set("key", "value");
+        store.write(status);
+
+        JobStatus read = newStore().read("job");
+        Assert.assertEquals(0.5d, read.getProgress(), 0d);
+        Assert.assertEquals(Instant.ofEpochMilli(1000), read.getStartTime());
+        Assert.assertNull(read.getEndTime());
+        Assert.assertEquals("Half done.", read.getNote());
+        Assert.assertEquals("value", read.getProperties().getString("key"));
+    }
+
+    @Test
+    public void testUnchangedDataNotAppended() throws IOException {
+        JobStatus status = new JobStatus("job", null);
+        status.setNote("Same note.");
+        store.write(status);
+        int dataEnd = readHeader(24);
+        status.setProgress(0.5d);
+        store.write(status);
+        Assert.assertEquals(dataEnd, readHeader(24));
+    }
+
+    @Test
+    public void testChangedDataWithSameHash() throws IOException {
+        // "Aa" and "BB" have the same hash code.
+        JobStatus status = new JobStatus("job", null);
+        status.setNote("Aa");
+        store.write(status);
+        status.setNote("BB");
+        store.write(status);
+        Assert.assertEquals("BB", newStore().read("job").getNote());
+    }
+
+    @Test
+    public void testAttempts() throws IOException {
+        JobStatusData attempt = new JobStatusData();
+        attempt.setProgress(0.25d);
+        attempt.setNote("First attempt.");
+        store.writeAttempt("job", 1, attempt);
+        JobStatus status = new JobStatus("job", null);
+        status.setProgress(1d);
+        store.write(status);
+
+        JobStatus read = newStore().read("job");
+        Assert.assertEquals(1d, read.getProgress(), 0d);
+        Assert.assertEquals(1, read.getResumedAttempts().size());
+        JobStatusData readAttempt = read.getResumedAttempts().iterator().next();
+        Assert.assertEquals(0.25d, readAttempt.getProgress(), 0d);
+        Assert.assertEquals("First attempt.", readAttempt.getNote());
+    }
+
+    @Test
+    public void testGrowth() throws IOException {
+        store.setInitialCapacity(2);
+        MappedJobStatusStore reader = newStore();
+        store.write(new JobStatus("job0", null));
+        // Mapped by the reader before the ledger is rewritten.
+        Assert.assertNotNull(reader.read("job0"));
+
+        for (int i = 0; i < 50; i++) {
+            JobStatus status = new JobStatus("job" + i, null);
+            status.setNote(StringUtils.repeat('x', 10000) + i);
+            status.setProgress(i / 100d);
+            store.write(status);
+        }
+        Assert.assertTrue(readHeader(12) >= 50);
+        for (int i = 0; i < 50; i++) {
+            JobStatus status = reader.read("job" + i);
+            Assert.assertEquals(i / 100d, status.getProgress(), 0d);
+            Assert.assertTrue(status.getNote().endsWith("x" + i));
+        }
+        reader.close();
+    }
+
+    @Test
+    public void testMaxSize() throws IOException {
+        store.setMaxLedgerSize(1024 * 1024);
+        try {
+            for (int i = 0; i < 100; i++) {
+                JobStatus status = new JobStatus("job" + i, null);
+                status.setNote(StringUtils.repeat('x', 100000));
+                store.write(status);
+            }
+            Assert.fail("Ledger should not have grown beyond its limit.");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage(),
+                    e.getMessage().contains("cannot grow beyond"));
+        }
+        // What was written before reaching the limit is kept.
+        Assert.assertNotNull(newStore().read("job0").getNote());
+    }
+
+    @Test
+    public void testConsistentReads() throws Exception {
+        JobStatus status = new JobStatus("job", null);
+        store.write(status);
+        MappedJobStatusStore reader = newStore();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 1; i <= 20000; i++) {
+                    status.setProgress(i / 20000d);
+                    status.setEndTime(Instant.ofEpochMilli(i));
+                    store.write(status);
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            JobStatus read = reader.read("job");
+            if (read.getEndTime() != null) {
+                // Progress and end time are always from the same write.
+                Assert.assertEquals(read.getEndTime().toEpochMilli(),
+                        Math.round(read.getProgress() * 20000d));
+            }
+        }
+        writer.join();
+        Assert.assertNull(failure.get());
+        reader.close();
+    }
+
+    @Test
+    public void testSlotLeftBeingWritten() throws IOException {
+        JobStatus status = new JobStatus("job", null);
+        status.setProgress(0.5d);
+        store.write(status);
+        store.close();
+
+        // Process died while writing the first slot.
+        int seq = readHeader(64);
+        writeInt(64, seq + 1);
+        store = newStore();
+        Assert.assertEquals(0.5d, store.read("job").getProgress(), 0d);
+        Assert.assertEquals(0, readHeader(64) & 1);
+
+        // Never done being written while mapped: reads give up.
+        writeInt(64, readHeader(64) + 1);
+        try {
+            store.read("job");
+            Assert.fail("Should not read a slot being written.");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private MappedJobStatusStore newStore() {
+        MappedJobStatusStore s = new MappedJobStatusStore();
+        s.open("suite", statusDir);
+        return s;
+    }
+
+    private int readHeader(int offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(store.getLedgerFile())) {
+            ByteBuffer b = ByteBuffer.allocate(4);
+            channel.read(b, offset);
+            return b.getInt(0);
+        }
+    }
+    private void writeInt(int offset, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(store.getLedgerFile(),
+                StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(4);
+            b.putInt(0, value);
+            channel.write(b, offset);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.suite;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.store.impl.MemoryJobStatusStore;
+
+public class JobStatusWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testBackgroundFlushSurvivesFailures()
+            throws IOException, InterruptedException {
+        AtomicInteger writes = new AtomicInteger();
+        MemoryJobStatusStore store = new MemoryJobStatusStore() {
+            @Override
+            public void write(JobStatus status) {
+                if (writes.incrementAndGet() == 1) {
+                    throw new IllegalStateException("Test failure.");
+                }
+                super.write(status);
+            }
+        };
+        store.open("suite", folder.newFolder().toPath());
+        JobStatusWriter writer = new JobStatusWriter(store, 10, 0);
+        writer.start();
+
+        JobStatus status = new JobStatus("job", null);
+        status.setProgress(0.5d);
+        writer.write(status);
+        Thread.sleep(200);
+        // Retried after the failure
+        Assert.assertEquals(0.5d, store.read("job").getProgress(), 0d);
+
+        status.setProgress(1d);
+        writer.write(status);
+        Thread.sleep(200);
+        Assert.assertEquals(1d, store.read("job").getProgress(), 0d);
+        writer.close();
+    }
+
+    @Test
+    public void testStatusModifiedWhileWritten()
+            throws IOException, InterruptedException {
+        // Slow encoding, for the job to modify the status meanwhile.
+        MemoryJobStatusStore store = new MemoryJobStatusStore() {
+            @Override
+            public void write(JobStatus status) {
+                for (String key : status.getProperties().keySet()) {
+                    Assert.assertNotNull(key);
+                    Thread.yield();
+                }
+                super.write(status);
+            }
+        };
+        store.open("suite", folder.newFolder().toPath());
+        JobStatusWriter writer = new JobStatusWriter(store, 1, 0);
+        writer.start();
+
+        JobStatus status = new JobStatus("job", null);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread job = new Thread(() -> {
+            int i = 0;
+            while (running.get()) {
+                status.getProperties().set("key" + (i % 100), i);
+                status.getProperties().remove("key" + ((i + 50) % 100));
+                writer.write(status);
+                i++;
+            }
+        });
+        job.start();
+        Thread.sleep(500);
+        running.set(false);
+        job.join();
+
+        // The background writer must still be writing.
+        status.setProgress(1d);
+        writer.write(status);
+        Thread.sleep(200);
+        Assert.assertEquals(1d, store.read("job").getProgress(), 0d);
+        writer.close();
+    }
+
+    @Test
+    public void testBackgroundAndFinalFlush()
+            throws IOException, InterruptedException {
+        MemoryJobStatusStore store = new MemoryJobStatusStore();
+        store.open("suite", folder.newFolder().toPath());
+        JobStatusWriter writer = new JobStatusWriter(store, 60000, 1);
+        writer.start();
+
+        JobStatus status = new JobStatus("job", null);
+        status.setProgress(0.5d);
+        synchronized (status) {
+            // Background flush waits while the final one is written.
+            writer.write(status);
+            waitForBlockedFlusher();
+            status.setProgress(1d);
+            writer.flush(status);
+        }
+        writer.close();
+        Assert.assertEquals(1d, store.read("job").getProgress(), 0d);
+    }
+
+    private void waitForBlockedFlusher() throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < timeout) {
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if ("JEF Status Writer".equals(thread.getName())
+                        && thread.getState() == Thread.State.BLOCKED
+                        && Arrays.stream(thread.getStackTrace()).anyMatch(
+                                e -> "persist".equals(e.getMethodName()))) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+        Assert.fail("Background flush never started.");
+    }
+}
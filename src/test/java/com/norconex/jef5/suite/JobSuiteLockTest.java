@@ -0,0 +1,154 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.suite;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.norconex.jef5.JEFTestUtil;
+import com.norconex.jef5.JefException;
+import com.norconex.jef5.job.IJob;
+import com.norconex.jef5.status.JobState;
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusUpdater;
+import com.norconex.jef5.status.JobSuiteStatus;
+
+public class JobSuiteLockTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAcquireRelease() throws IOException {
+        Path lockFile = folder.newFolder("lock").toPath().resolve("suite.lck");
+        JobSuiteLock lock = new JobSuiteLock(lockFile);
+        JobSuiteLock otherLock = new JobSuiteLock(lockFile);
+        lock.acquire();
+        assertAlreadyRunning(lock);
+        // Overlapping lock from the same JVM.
+        assertAlreadyRunning(otherLock);
+
+        lock.release();
+        otherLock.acquire();
+        assertAlreadyRunning(lock);
+        otherLock.release();
+        // Releasing twice does nothing.
+        otherLock.release();
+        lock.acquire();
+        lock.release();
+    }
+
+    @Test
+    public void testConcurrentExecution() throws Exception {
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        IJob job = new WaitingJob(started, release);
+
+        AtomicBoolean firstSuccess = new AtomicBoolean();
+        Thread first = new Thread(() -> firstSuccess.set(
+                new JobSuite(job, config).execute()));
+        first.start();
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // Same suite, same working directory.
+        Assert.assertFalse(new JobSuite(job, config).execute());
+
+        release.countDown();
+        first.join();
+        Assert.assertTrue(firstSuccess.get());
+
+        // The lock is released once the first execution is done.
+        JobSuite suite = new JobSuite(job, config);
+        Assert.assertTrue(suite.execute());
+    }
+
+    @Test
+    public void testRestartAfterCrash() throws IOException {
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        IJob job = new WaitingJob(
+                new CountDownLatch(1), new CountDownLatch(0));
+        for (boolean resume : new boolean[] {false, true}) {
+            // Killed while running, moments ago.
+            JobSuite crashed = new JobSuite(job, config);
+            JobSuiteStatus.getInstance(crashed).toXML(
+                    crashed.getStatusIndex());
+            JobStatus status = new JobStatus(job.getId(), null);
+            status.setStartTime(Instant.now());
+            status.setLastActivity(Instant.now());
+            status.markRunning();
+            crashed.getJobStatusStore().write(status);
+            crashed.getJobStatusStore().close();
+            JobSuiteStatus previous =
+                    JobSuiteStatus.getInstance(crashed.getStatusIndex());
+            Assert.assertEquals(
+                    JobState.RUNNING, previous.getRootStatus().getState());
+            previous.close();
+
+            // Restarted without waiting for it to be inactive.
+            JobSuite suite = new JobSuite(job, config);
+            Assert.assertTrue(suite.execute(resume));
+            Assert.assertEquals(
+                    JobState.COMPLETED, suite.getRootStatus().getState());
+        }
+    }
+
+    private void assertAlreadyRunning(JobSuiteLock lock) {
+        try {
+            lock.acquire();
+            Assert.fail("Lock should not have been acquired.");
+        } catch (JefException e) {
+            Assert.assertTrue(e.getMessage(),
+                    e.getMessage().contains("ALREADY RUNNING"));
+        }
+    }
+
+    // Runs until released.
+    private static class WaitingJob implements IJob {
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+        WaitingJob(CountDownLatch started, CountDownLatch release) {
+            this.started = started;
+            this.release = release;
+        }
+        @Override
+        public String getId() {
+            return "waiting";
+        }
+        @Override
+        public void execute(JobStatusUpdater statusUpdater, JobSuite suite) {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            statusUpdater.setProgress(1d);
+        }
+        @Override
+        public void stop(JobStatus status, JobSuite suite) {
+            //NOOP
+        }
+    }
+}
@@ -15,6 +15,15 @@
 package com.norconex.jef5.suite;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.Assert;
 import org.junit.Rule;
@@ -22,9 +31,20 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import com.norconex.jef5.JEFTestUtil;
+import com.norconex.jef5.JefException;
+import com.norconex.jef5.event.JefEvent;
 import com.norconex.jef5.job.IJob;
+import com.norconex.jef5.job.RetryPolicy;
+import com.norconex.jef5.job.group.AsyncJobGroup;
+import com.norconex.jef5.job.group.SyncJobGroup;
 import com.norconex.jef5.job.impl.SleepyJob;
+import com.norconex.jef5.status.JobState;
+import com.norconex.jef5.status.JobStatus;
+import com.norconex.jef5.status.JobStatusData;
+import com.norconex.jef5.status.JobStatusUpdater;
 import com.norconex.jef5.status.JobSuiteStatus;
+import com.norconex.jef5.status.JobSuiteStatusDAO;
+import com.norconex.jef5.status.store.impl.MemoryJobStatusStore;
 
 public class JobSuiteTest {
 
@@ -45,4 +65,283 @@ public class JobSuiteTest {
         Assert.assertEquals(1d, tree.getRootStatus().getProgress(), 0d);
     }
 
+    @Test
+    public void testWriteBehindStatus() throws IOException {
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        // Long enough that only the end-of-job flush persists status.
+        config.setStatusFlushInterval(60 * 1000);
+        IJob job = new SleepyJob(2, 1);
+        JobSuite suite = new JobSuite(job, config);
+        Assert.assertTrue("Execution returned false.", suite.execute());
+
+        JobSuiteStatus tree =
+                JobSuiteStatus.getInstance(suite.getStatusIndex());
+        Assert.assertEquals(1d, tree.getRootStatus().getProgress(), 0d);
+    }
+
+    @Test
+    public void testMemoryStatusStore() throws IOException {
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        config.setStatusStore(new MemoryJobStatusStore());
+        IJob job = new SleepyJob(2, 1);
+        JobSuite suite = new JobSuite(job, config);
+        Assert.assertTrue("Execution returned false.", suite.execute());
+        Assert.assertEquals(1d, suite.getRootStatus().getProgress(), 0d);
+        Assert.assertEquals(1d, suite.getJobStatusStore().read(
+                job.getId()).getProgress(), 0d);
+    }
+
+    @Test
+    public void testResumeMigratesChangedLayout() throws IOException {
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        IJob job = new StoppingJob("job");
+        config.setStatusStore(new CountingStatusDAO());
+        new JobSuite(job, config).execute();
+
+        // Same layout: no migration.
+        CountingStatusDAO.migrations.set(0);
+        JobSuite suite = new JobSuite(job, config);
+        suite.execute(true);
+        Assert.assertEquals(0, CountingStatusDAO.migrations.get());
+        Assert.assertEquals(
+                JobState.STOPPED, suite.getRootStatus().getState());
+
+        // Different layout: migrated before resuming.
+        CountingStatusDAO hashed = new CountingStatusDAO();
+        hashed.setHashedLayout(true);
+        config.setStatusStore(hashed);
+        suite = new JobSuite(job, config);
+        suite.execute(true);
+        Assert.assertEquals(1, CountingStatusDAO.migrations.get());
+        List<Path> jobFiles = listJobFiles(suite.getStatusDir());
+        Assert.assertEquals(1, jobFiles.size());
+        Assert.assertNotEquals(suite.getStatusDir(),
+                jobFiles.get(0).getParent());
+    }
+
+    @Test
+    public void testRetry() throws IOException {
+        List<String> events = new CopyOnWriteArrayList<>();
+        FlakyJob flaky = new FlakyJob(events);
+        IJob other = new IJob() {
+            @Override
+            public String getId() {
+                return "other";
+            }
+            @Override
+            public void execute(
+                    JobStatusUpdater statusUpdater, JobSuite suite) {
+                events.add("other ran");
+                statusUpdater.setProgress(1d);
+            }
+            @Override
+            public void stop(JobStatus status, JobSuite suite) {
+                //NOOP
+            }
+        };
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        config.addEventListeners(e -> {
+            if (e.getSource() == flaky) {
+                events.add(e.getName());
+            }
+        });
+        // One thread, not held while "flaky" waits to be retried.
+        JobSuite suite = new JobSuite(
+                new AsyncJobGroup("group", 1, flaky, other), config);
+        Assert.assertTrue("Execution returned false.", suite.execute());
+
+        Assert.assertEquals(Arrays.asList(
+                JefEvent.JOB_STARTED, "attempt 1", JefEvent.JOB_ERROR,
+                JefEvent.JOB_TERMINATED_PREMATURALY, JefEvent.JOB_RETRYING,
+                "other ran",
+                JefEvent.JOB_STARTED, "attempt 2", JefEvent.JOB_ERROR,
+                JefEvent.JOB_TERMINATED_PREMATURALY, JefEvent.JOB_RETRYING,
+                JefEvent.JOB_STARTED, "attempt 3", JefEvent.JOB_COMPLETED),
+                events.stream().filter(e -> !e.equals(
+                        JefEvent.JOB_PROGRESSED)).collect(
+                                Collectors.toList()));
+        // Retries start over.
+        Assert.assertEquals(Arrays.asList(0d, 0d, 0d), flaky.startProgress);
+        Assert.assertEquals(1d, suite.getJobStatus(flaky).getProgress(), 0d);
+
+        JobStatus status = new JobSuiteStatusDAO(
+                suite.getId(), suite.getStatusDir()).read(flaky.getId());
+        Assert.assertEquals(JobState.COMPLETED, status.getState());
+        Assert.assertEquals(2, status.getResumedAttempts().size());
+        for (JobStatusData attempt : status.getResumedAttempts()) {
+            Assert.assertEquals(0.5d, attempt.getProgress(), 0d);
+            Assert.assertEquals("value",
+                    attempt.getProperties().getString("partial"));
+            Assert.assertTrue(attempt.getNote().contains("failed"));
+        }
+    }
+
+    @Test
+    public void testTimeout() throws IOException {
+        List<String> events = new CopyOnWriteArrayList<>();
+        BlockingJob job = new BlockingJob("blocking", 300);
+        JobSuiteConfig config = JEFTestUtil.newConfig(folder);
+        config.addEventListeners(e -> events.add(e.getName()));
+        JobSuite suite = new JobSuite(job, config);
+        suite.execute();
+        Assert.assertTrue("Job was not interrupted.", job.interrupted);
+        Assert.assertTrue(events.contains(JefEvent.JOB_TIMED_OUT));
+        Assert.assertEquals(
+                JobState.STOPPED, suite.getRootStatus().getState());
+
+        // Stopped jobs are resumed.
+        job.block = false;
+        suite = new JobSuite(job, config);
+        Assert.assertTrue(suite.execute(true));
+        // Picks up where it was stopped.
+        Assert.assertEquals(0.5d, job.startProgress, 0d);
+        Assert.assertEquals(
+                JobState.COMPLETED, suite.getRootStatus().getState());
+    }
+
+    @Test
+    public void testTimeoutUnwatched() throws IOException {
+        // Its status changes while watched.
+        BlockingJob job = new BlockingJob("quick", 60 * 1000);
+        job.block = false;
+        AtomicInteger watched = new AtomicInteger(-1);
+        IJob check = new IJob() {
+            @Override
+            public String getId() {
+                return "check";
+            }
+            @Override
+            public void execute(
+                    JobStatusUpdater statusUpdater, JobSuite suite) {
+                watched.set(suite.getWatchdog().getWatchedCount());
+                statusUpdater.setProgress(1d);
+            }
+            @Override
+            public void stop(JobStatus status, JobSuite suite) {
+                //NOOP
+            }
+        };
+        JobSuite suite = new JobSuite(new SyncJobGroup("group", job, check),
+                JEFTestUtil.newConfig(folder));
+        Assert.assertTrue(suite.execute());
+        Assert.assertEquals(0, watched.get());
+    }
+
+    private static List<Path> listJobFiles(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            return paths.filter(p -> p.getFileName().toString().equals(
+                    "job.job")).collect(Collectors.toList());
+        }
+    }
+
+    // Stops itself, so its suite is resumed when executed again.
+    private static class StoppingJob implements IJob {
+        private final String id;
+        public StoppingJob(String id) {
+            this.id = id;
+        }
+        @Override
+        public String getId() {
+            return id;
+        }
+        @Override
+        public void execute(JobStatusUpdater statusUpdater, JobSuite suite) {
+            statusUpdater.setProgress(0.5d);
+            suite.getJobStatus(this).setStopRequested(true);
+        }
+        @Override
+        public void stop(JobStatus status, JobSuite suite) {
+            //NOOP
+        }
+    }
+
+    // Fails its first two attempts, after doing part of its work.
+    private static class FlakyJob implements IJob {
+        private final List<String> events;
+        private final List<Double> startProgress = new ArrayList<>();
+        private int attempts;
+        public FlakyJob(List<String> events) {
+            this.events = events;
+        }
+        @Override
+        public String getId() {
+            return "flaky";
+        }
+        @Override
+        public RetryPolicy getRetryPolicy() {
+            RetryPolicy policy = new RetryPolicy(3);
+            // Long enough for the other job to run meanwhile.
+            policy.setInitialDelay(200);
+            policy.setJitter(0);
+            return policy;
+        }
+        @Override
+        public void execute(JobStatusUpdater statusUpdater, JobSuite suite) {
+            attempts++;
+            events.add("attempt " + attempts);
+            JobStatus status = suite.getJobStatus(this);
+            startProgress.add(status.getProgress());
+            Assert.assertNull(status.getProperties().getString("partial"));
+            if (attempts < 3) {
+                status.getProperties().set("partial", "value");
+                statusUpdater.setProgress(0.5d);
+                throw new JefException("Attempt " + attempts + " failed.");
+            }
+            statusUpdater.setProgress(1d);
+        }
+        @Override
+        public void stop(JobStatus status, JobSuite suite) {
+            //NOOP
+        }
+    }
+
+    // Blocks until interrupted, unless told otherwise.
+    private static class BlockingJob implements IJob {
+        private final String id;
+        private final long timeout;
+        private volatile boolean block = true;
+        private volatile boolean interrupted;
+        private volatile double startProgress;
+        public BlockingJob(String id, long timeout) {
+            this.id = id;
+            this.timeout = timeout;
+        }
+        @Override
+        public String getId() {
+            return id;
+        }
+        @Override
+        public long getTimeout() {
+            return timeout;
+        }
+        @Override
+        public void execute(JobStatusUpdater statusUpdater, JobSuite suite) {
+            startProgress = suite.getJobStatus(this).getProgress();
+            statusUpdater.setProgress(0.5d);
+            statusUpdater.setNote("Half done.");
+            if (block) {
+                try {
+                    Thread.sleep(60 * 1000);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    return;
+                }
+            }
+            statusUpdater.setProgress(1d);
+        }
+        @Override
+        public void stop(JobStatus status, JobSuite suite) {
+            //NOOP
+        }
+    }
+
+    public static class CountingStatusDAO extends JobSuiteStatusDAO {
+        private static final long serialVersionUID = 1L;
+        private static final AtomicInteger migrations = new AtomicInteger();
+        @Override
+        public synchronized int migrateLayout() throws IOException {
+            migrations.incrementAndGet();
+            return super.migrateLayout();
+        }
+    }
 }
@@ -0,0 +1,97 @@
+/* Copyright 2020 Norconex Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.norconex.jef5.suite;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JobWatchdogTest {
+
+    private final JobWatchdog watchdog = new JobWatchdog();
+    private final List<String> expired = new CopyOnWriteArrayList<>();
+
+    @After
+    public void tearDown() {
+        watchdog.close();
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(2);
+        watchdog.watch("a", 200, () -> {
+            expired.add("a");
+            latch.countDown();
+        });
+        watchdog.watch("b", 50, () -> {
+            expired.add("b");
+            latch.countDown();
+        });
+        Assert.assertEquals(2, watchdog.getWatchedCount());
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        // Soonest deadline first
+        Assert.assertEquals(Arrays.asList("b", "a"), expired);
+        Assert.assertEquals(0, watchdog.getWatchedCount());
+        Assert.assertFalse(watchdog.unwatch("a"));
+    }
+
+    @Test
+    public void testUnwatch() throws InterruptedException {
+        watchdog.watch("a", 100, () -> expired.add("a"));
+        Assert.assertTrue(watchdog.unwatch("a"));
+        Assert.assertEquals(0, watchdog.getWatchedCount());
+        Thread.sleep(300);
+        Assert.assertTrue(expired.isEmpty());
+    }
+
+    @Test
+    public void testReplace() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        watchdog.watch("a", 50, () -> expired.add("first"));
+        watchdog.watch("a", 300, () -> {
+            expired.add("second");
+            latch.countDown();
+        });
+        Assert.assertEquals(1, watchdog.getWatchedCount());
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("second"), expired);
+    }
+
+    @Test
+    public void testFailingAction() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        watchdog.watch("a", 10, () -> {
+            throw new IllegalStateException("Expected.");
+        });
+        watchdog.watch("b", 50, latch::countDown);
+        // Other deadlines still expire.
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testClose() throws InterruptedException {
+        watchdog.watch("a", 50, () -> expired.add("a"));
+        watchdog.close();
+        Assert.assertEquals(0, watchdog.getWatchedCount());
+        Thread.sleep(200);
+        Assert.assertTrue(expired.isEmpty());
+    }
+}